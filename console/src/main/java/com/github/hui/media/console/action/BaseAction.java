@@ -8,6 +8,8 @@ import com.github.hui.media.console.validate.MediaValidate;
 import com.github.hui.quick.plugin.base.Base64Util;
 import com.github.hui.quick.plugin.base.ImageLoadUtil;
 import com.github.hui.quick.plugin.base.constants.MediaType;
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -15,11 +17,11 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 
-import javax.imageio.ImageIO;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -31,6 +33,19 @@ public class BaseAction {
     private static final String HTTP_PREFIX = "https://zbang.online/";
 
     protected BufferedImage getImg(HttpServletRequest request) {
+        return getImg(request, 0, 0);
+    }
+
+
+    /**
+     * 获取上传的图片，当图片只需要以较小的尺寸绘制时，解码时直接降采样，避免大图解码占用过多内存
+     *
+     * @param request
+     * @param maxW    最终绘制的宽，<=0 表示不限制
+     * @param maxH    最终绘制的高，<=0 表示不限制
+     * @return
+     */
+    protected BufferedImage getImg(HttpServletRequest request, int maxW, int maxH) {
         MultipartFile file = null;
         if (request instanceof MultipartHttpServletRequest) {
             file = ((MultipartHttpServletRequest) request).getFile("image");
@@ -43,7 +58,7 @@ public class BaseAction {
                 if (StringUtils.isNotBlank(image) && !image.startsWith("/") && !image.startsWith("http")) {
                     image = ImgGenHelper.TMP_UPLOAD_PATH + image;
                 }
-                return ImageLoadUtil.getImageByPath(image);
+                return ImageLoadUtil.getImageByPath(image, maxW, maxH);
             } catch (IOException e) {
                 log.error("load upload image error! e: {}", e);
                 throw new IllegalArgumentException("图片不能为空!");
@@ -59,7 +74,9 @@ public class BaseAction {
 
         // 获取BufferedImage对象
         try {
-            return ImageIO.read(file.getInputStream());
+            try (InputStream stream = file.getInputStream()) {
+                return ImageLoadUtil.getImageByStream(stream, maxW, maxH);
+            }
         } catch (IOException e) {
             log.error("WxImgCreateAction!Parse img from httpRequest to BuferedImage error! e: {}", e);
             throw new IllegalArgumentException("不支持的图片类型!");
@@ -96,7 +113,7 @@ public class BaseAction {
                         ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getResponse();
                 servletResponse.setContentType(mediaType.getMime());
                 OutputStream os = servletResponse.getOutputStream();
-                ImageIO.write(bf, mediaType.getExt(), os);
+                ImageEncoder.write(bf, EncodeOptions.of(mediaType.getExt()), os);
                 os.flush();
                 os.close();
                 return ResponseWrapper.successReturn(response);
@@ -108,7 +125,7 @@ public class BaseAction {
             }
         } else { // base64的图片返回
             try {
-                ans = Base64Util.encode(bf, "png");
+                ans = Base64Util.encode(bf, mediaType.getExt());
                 response.setBase64result(ans);
                 response.setPrefix(mediaType.getPrefix());
             } catch (IOException e) {
@@ -30,6 +30,11 @@ import java.awt.image.BufferedImage;
 @CrossOrigin(origins = "*")
 public class WxWaterMarkAction extends BaseAction {
 
+    /**
+     * 未指定logo高度时，logo与水印文字等高，这里取一个足够大的值作为解码的目标高度
+     */
+    private static final int DEFAULT_LOGO_HEIGHT = 64;
+
     @ValidateDot
     @RequestMapping(path = {"render"}, method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.OPTIONS})
     public ResponseWrapper<BaseResponse> markWater(HttpServletRequest httpServletRequest,
@@ -43,7 +48,11 @@ public class WxWaterMarkAction extends BaseAction {
         BufferedImage logo = null;
         try {
             if (StringUtils.isNotBlank(wxWaterMarkRequest.getLogo())) {
-                logo = ImageLoadUtil.getImageByPath(ImgGenHelper.TMP_UPLOAD_PATH + "/" + wxWaterMarkRequest.getLogo());
+                // logo 只会以较小的尺寸绘制，解码时直接降采样
+                int logoH = wxWaterMarkRequest.getLogoHeight() == null || wxWaterMarkRequest.getLogoHeight() <= 0 ?
+                        DEFAULT_LOGO_HEIGHT : wxWaterMarkRequest.getLogoHeight();
+                logo = ImageLoadUtil.getImageByPath(ImgGenHelper.TMP_UPLOAD_PATH + "/" + wxWaterMarkRequest.getLogo(), 0,
+                        logoH);
             }
         } catch (Exception e) {
             log.error("read logo from local disk error! path: {}, e", wxWaterMarkRequest.getLogo(), e);
@@ -3,9 +3,10 @@ package com.github.hui.media.console.helper;
 import com.github.hui.media.console.util.LocalDateTimeUtil;
 import com.github.hui.quick.plugin.base.FileWriteUtil;
 import com.github.hui.quick.plugin.base.ProcessUtil;
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -51,7 +52,7 @@ public class ImgGenHelper {
             String path = ImgGenHelper.genTmpImg("png");
             File file = new File(ImgGenHelper.ABS_TMP_PATH + path);
             FileWriteUtil.mkDir(file.getParentFile());
-            ImageIO.write(bf, "png", file);
+            ImageEncoder.write(bf, EncodeOptions.of("png"), file);
 
             ProcessUtil.instance().process("chmod -R 755 " + ABS_TMP_PATH + WEB_IMG_PATH);
             return path;
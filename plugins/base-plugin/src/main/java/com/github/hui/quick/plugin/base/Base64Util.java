@@ -1,5 +1,8 @@
 package com.github.hui.quick.plugin.base;
 
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
+
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
@@ -13,9 +16,7 @@ import java.util.Base64;
 public class Base64Util {
 
     public static String encode(BufferedImage bufferedImage, String imgType) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(bufferedImage, imgType, outputStream);
-        return encode(outputStream);
+        return ImageEncoder.toBase64(bufferedImage, EncodeOptions.of(imgType));
     }
 
     public static String encode(ByteArrayOutputStream outputStream) {
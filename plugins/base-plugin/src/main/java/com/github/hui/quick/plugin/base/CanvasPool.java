@@ -0,0 +1,220 @@
+package com.github.hui.quick.plugin.base;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 画布缓存池，按照 (宽, 高, 类型) 分桶缓存用完的 BufferedImage，避免频繁申请大块内存带来的GC压力
+ * <p>
+ * 使用方式:
+ * - lease: 从池中借出一个已清空的画布，池中没有时新建
+ * - release: 归还画布，归还之后调用方不能再持有或使用这个画布
+ * <p>
+ * 只有明确不会再被外部引用的中间画布才能归还，返回给用户的图片不要放入池中
+ * <p>
+ * Created by @author yihui in 14:20 26/10/18.
+ */
+public class CanvasPool {
+
+    /**
+     * 每个尺寸最多缓存的画布数
+     */
+    private static int maxBucketSize = 4;
+
+    /**
+     * 池中所有画布占用的内存上限，默认64M
+     */
+    private static long maxPoolBytes = 64L * 1024 * 1024;
+
+    private static boolean enable = true;
+
+    private static final Map<Key, Deque<BufferedImage>> pool = new HashMap<>();
+
+    private static long poolBytes = 0;
+
+    private static long hit = 0, miss = 0, recycle = 0, discard = 0;
+
+
+    /**
+     * 借出一个全透明（不透明类型时为全黑）的画布
+     *
+     * @param w    宽
+     * @param h    高
+     * @param type 图片类型，如 BufferedImage.TYPE_INT_ARGB
+     * @return
+     */
+    public static BufferedImage lease(int w, int h, int type) {
+        BufferedImage img = null;
+        if (enable) {
+            synchronized (pool) {
+                Key key = new Key(w, h, type);
+                Deque<BufferedImage> bucket = pool.get(key);
+                if (bucket != null && !bucket.isEmpty()) {
+                    img = bucket.pop();
+                    poolBytes -= bytes(img);
+                    ++hit;
+                    if (bucket.isEmpty()) {
+                        pool.remove(key);
+                    }
+                } else {
+                    ++miss;
+                }
+            }
+        }
+
+        if (img == null) {
+            return new BufferedImage(w, h, type);
+        }
+
+        clear(img);
+        return img;
+    }
+
+
+    /**
+     * 归还画布
+     *
+     * @param img
+     */
+    public static void release(BufferedImage img) {
+        if (!enable || img == null || img.getType() == BufferedImage.TYPE_CUSTOM) {
+            return;
+        }
+
+        long size = bytes(img);
+        Key key = new Key(img.getWidth(), img.getHeight(), img.getType());
+        synchronized (pool) {
+            Deque<BufferedImage> bucket = pool.get(key);
+            if (bucket != null && bucket.contains(img)) {
+                // 重复归还
+                return;
+            }
+
+            if ((bucket != null && bucket.size() >= maxBucketSize) || poolBytes + size > maxPoolBytes) {
+                ++discard;
+                return;
+            }
+
+            if (bucket == null) {
+                bucket = new ArrayDeque<>(maxBucketSize);
+                pool.put(key, bucket);
+            }
+            bucket.push(img);
+            poolBytes += size;
+            ++recycle;
+        }
+    }
+
+
+    /**
+     * 清空池中缓存的画布
+     */
+    public static void clear() {
+        synchronized (pool) {
+            pool.clear();
+            poolBytes = 0;
+        }
+    }
+
+
+    /**
+     * 命中率
+     *
+     * @return
+     */
+    public static double getHitRate() {
+        synchronized (pool) {
+            long total = hit + miss;
+            return total == 0 ? 0 : hit * 1.0 / total;
+        }
+    }
+
+
+    /**
+     * 池的使用统计信息
+     *
+     * @return
+     */
+    public static String stat() {
+        synchronized (pool) {
+            long total = hit + miss;
+            return String.format("CanvasPool{lease=%d, hit=%d, hitRate=%.2f%%, recycle=%d, discard=%d, buckets=%d, bytes=%d}",
+                    total, hit, total == 0 ? 0 : hit * 100.0 / total, recycle, discard, pool.size(), poolBytes);
+        }
+    }
+
+
+    public static void resetStat() {
+        synchronized (pool) {
+            hit = miss = recycle = discard = 0;
+        }
+    }
+
+
+    public static void setEnable(boolean enable) {
+        CanvasPool.enable = enable;
+        if (!enable) {
+            clear();
+        }
+    }
+
+
+    public static void setMaxBucketSize(int maxBucketSize) {
+        CanvasPool.maxBucketSize = maxBucketSize;
+    }
+
+
+    public static void setMaxPoolBytes(long maxPoolBytes) {
+        CanvasPool.maxPoolBytes = maxPoolBytes;
+    }
+
+
+    private static void clear(BufferedImage img) {
+        Graphics2D g2d = img.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g2d.dispose();
+    }
+
+
+    private static long bytes(BufferedImage img) {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+
+    private static class Key {
+        private final int w;
+        private final int h;
+        private final int type;
+
+        Key(int w, int h, int type) {
+            this.w = w;
+            this.h = h;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return w == key.w && h == key.h && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(w, h, type);
+        }
+    }
+}
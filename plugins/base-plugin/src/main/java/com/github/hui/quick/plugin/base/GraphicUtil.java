@@ -1,5 +1,7 @@
 package com.github.hui.quick.plugin.base;
 
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.Optional;
@@ -15,7 +17,7 @@ public class GraphicUtil {
 
 
     public static BufferedImage createImg(int w, int h, int offsetX, int offsetY, BufferedImage img) {
-        BufferedImage bf = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage bf = CanvasPool.lease(w, h, BufferedImage.TYPE_INT_ARGB);
         if (img == null) {
             return bf;
         }
@@ -31,17 +33,20 @@ public class GraphicUtil {
 
 
     public static Graphics2D getG2d(BufferedImage bf) {
-        Graphics2D g2d = Optional.ofNullable(bf).orElse(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)).createGraphics();
+        return getG2d(bf, RenderQuality.QUALITY);
+    }
 
-        g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-        g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
 
+    /**
+     * 获取指定渲染质量的画笔
+     *
+     * @param bf      画布
+     * @param quality 渲染质量，为null时采用 {@link RenderQuality#QUALITY}
+     * @return
+     */
+    public static Graphics2D getG2d(BufferedImage bf, RenderQuality quality) {
+        Graphics2D g2d = Optional.ofNullable(bf).orElse(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)).createGraphics();
+        Optional.ofNullable(quality).orElse(RenderQuality.QUALITY).apply(g2d);
         return g2d;
     }
 }
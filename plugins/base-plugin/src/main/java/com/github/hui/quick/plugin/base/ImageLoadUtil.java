@@ -4,9 +4,14 @@ import com.github.hui.quick.plugin.base.gif.GifDecoder;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 
 /**
  * Created by yihui on 2018/3/23.
@@ -29,6 +34,139 @@ public class ImageLoadUtil {
         return ImageIO.read(stream);
     }
 
+    /**
+     * 根据路径获取图片，并在解码时按整数倍降采样，用于只需要绘制小图的场景（如logo，水印，背景）
+     * <p>
+     * 解码后的图片在两个方向上都不会小于目标尺寸的两倍，保证后续缩放的效果；内存占用与目标尺寸相关，而不是原图尺寸
+     *
+     * @param path 本地路径 or 网络地址
+     * @param maxW 最终绘制的宽，<=0 表示不限制
+     * @param maxH 最终绘制的高，<=0 表示不限制
+     * @return 图片
+     * @throws IOException
+     */
+    public static BufferedImage getImageByPath(String path, int maxW, int maxH) throws IOException {
+        return getImageByPath(path, null, maxW, maxH);
+    }
+
+
+    /**
+     * 根据路径获取图片中的指定区域，只解码区域内的像素
+     *
+     * @param path   本地路径 or 网络地址
+     * @param region 需要的区域，为null表示整张图
+     * @param maxW   最终绘制的宽，<=0 表示不限制
+     * @param maxH   最终绘制的高，<=0 表示不限制
+     * @return 图片
+     * @throws IOException
+     */
+    public static BufferedImage getImageByPath(String path, Rectangle region, int maxW, int maxH) throws IOException {
+        if (StringUtils.isBlank(path)) {
+            return null;
+        }
+
+        try (InputStream stream = FileReadUtil.getStreamByFileName(path)) {
+            return getImageByStream(stream, region, maxW, maxH);
+        }
+    }
+
+
+    public static BufferedImage getImageByStream(InputStream stream, int maxW, int maxH) throws IOException {
+        return getImageByStream(stream, null, maxW, maxH);
+    }
+
+
+    /**
+     * 先读取图片头中的宽高，再通过 ImageReadParam 设置降采样和区域，直接解码出接近目标尺寸的图片
+     *
+     * @param stream 图片流，由调用方负责关闭
+     * @param region 需要的区域，为null表示整张图
+     * @param maxW   最终绘制的宽，<=0 表示不限制
+     * @param maxH   最终绘制的高，<=0 表示不限制
+     * @return 图片，不支持的图片格式时返回null（与 ImageIO.read 保持一致）
+     * @throws IOException
+     */
+    public static BufferedImage getImageByStream(InputStream stream, Rectangle region, int maxW, int maxH) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(stream)) {
+            ImageReader reader = getReader(input);
+            if (reader == null) {
+                return null;
+            }
+
+            try {
+                reader.setInput(input, true, true);
+                Rectangle area = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    area = area.intersection(region);
+                    if (area.isEmpty()) {
+                        throw new IllegalArgumentException("region " + region + " out of image bounds!");
+                    }
+                    param.setSourceRegion(area);
+                }
+
+                int sample = calSubsampling(area.width, area.height, maxW, maxH);
+                if (sample > 1) {
+                    param.setSourceSubsampling(sample, sample, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+
+    /**
+     * 只读取图片头，获取图片的宽高
+     *
+     * @param path 本地路径 or 网络地址
+     * @return 宽高，不支持的图片格式时返回null
+     * @throws IOException
+     */
+    public static Dimension getImageSize(String path) throws IOException {
+        if (StringUtils.isBlank(path)) {
+            return null;
+        }
+
+        try (InputStream stream = FileReadUtil.getStreamByFileName(path);
+             ImageInputStream input = ImageIO.createImageInputStream(stream)) {
+            ImageReader reader = getReader(input);
+            if (reader == null) {
+                return null;
+            }
+
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+
+    private static ImageReader getReader(ImageInputStream input) {
+        if (input == null) {
+            return null;
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+
+    /**
+     * 降采样的倍数，保证降采样之后的宽高不小于目标尺寸的两倍
+     */
+    private static int calSubsampling(int w, int h, int maxW, int maxH) {
+        int sampleW = maxW > 0 ? w / (maxW << 1) : Integer.MAX_VALUE;
+        int sampleH = maxH > 0 ? h / (maxH << 1) : Integer.MAX_VALUE;
+        int sample = Math.min(sampleW, sampleH);
+        return sample == Integer.MAX_VALUE ? 1 : Math.max(sample, 1);
+    }
+
+
     /**
      * 根据路径获取gif图片
      *
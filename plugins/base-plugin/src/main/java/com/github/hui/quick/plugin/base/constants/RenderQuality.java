@@ -0,0 +1,87 @@
+package com.github.hui.quick.plugin.base.constants;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 渲染质量配置，用于在绘制速度与输出效果之间做取舍
+ * <p>
+ * FAST:     最近邻插值，关闭抗锯齿，适用于缩略图、预览图
+ * BALANCED: 双线性插值，开启抗锯齿，其余采用平台默认值
+ * QUALITY:  全部采用高质量渲染参数（默认值，与之前的绘制效果保持一致）
+ * <p>
+ * Created by @author yihui in 10:12 26/10/18.
+ */
+public enum RenderQuality {
+    FAST(hints(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED,
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF,
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF,
+            RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED,
+            RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE,
+            RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF,
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+            RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED,
+            RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE)),
+
+    BALANCED(hints(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_DEFAULT,
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+            RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_DEFAULT,
+            RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DEFAULT,
+            RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF,
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR,
+            RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT,
+            RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE)),
+
+    QUALITY(hints(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY,
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
+            RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY,
+            RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE,
+            RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON,
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR,
+            RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY,
+            RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE));
+
+
+    private final Map<RenderingHints.Key, Object> hints;
+
+    RenderQuality(Map<RenderingHints.Key, Object> hints) {
+        this.hints = hints;
+    }
+
+    /**
+     * 将当前的渲染参数设置到画笔上
+     *
+     * @param g2d
+     */
+    public void apply(Graphics2D g2d) {
+        g2d.addRenderingHints(hints);
+    }
+
+    private static Map<RenderingHints.Key, Object> hints(Object... kv) {
+        Map<RenderingHints.Key, Object> map = new HashMap<>(kv.length);
+        for (int i = 0; i < kv.length; i += 2) {
+            map.put((RenderingHints.Key) kv[i], kv[i + 1]);
+        }
+        return map;
+    }
+
+
+    private static Map<String, RenderQuality> map = new HashMap<>();
+
+    static {
+        for (RenderQuality quality : values()) {
+            map.put(quality.name(), quality);
+        }
+    }
+
+    public static RenderQuality getQuality(String name) {
+        if (name == null) {
+            return QUALITY;
+        }
+
+        RenderQuality quality = map.get(name.toUpperCase());
+        return quality == null ? QUALITY : quality;
+    }
+}
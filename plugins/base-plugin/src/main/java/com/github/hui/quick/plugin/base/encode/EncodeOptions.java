@@ -0,0 +1,63 @@
+package com.github.hui.quick.plugin.base.encode;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.awt.*;
+
+/**
+ * 图片输出的编码参数
+ * <p>
+ * Created by @author yihui in 10:30 26/10/19.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EncodeOptions {
+
+    /**
+     * 自动选择输出格式：包含透明像素或颜色较少的图采用png，照片类的图采用有损压缩格式
+     */
+    public static final String AUTO = "auto";
+
+    /**
+     * 动图输出为apng，静态图时等同于png
+     */
+    public static final String APNG = "apng";
+
+    /**
+     * 输出格式 png, jpg, webp(需要引入对应的ImageIO插件) 或 auto
+     */
+    @Builder.Default
+    private String format = "png";
+
+    /**
+     * 有损压缩格式的压缩质量 [0, 1]，为null时采用编码器默认值
+     */
+    private Float quality;
+
+    /**
+     * png的deflate压缩等级 [0, 9]，0表示不压缩，为null时采用编码器默认值
+     * <p>
+     * jdk8自带的png编码器不支持设置压缩等级，此时忽略这个参数
+     */
+    private Integer deflateLevel;
+
+    /**
+     * 输出不支持透明度的格式(如jpg)时，透明区域填充的背景色
+     */
+    @Builder.Default
+    private Color bgColor = Color.WHITE;
+
+
+    public static EncodeOptions of(String format) {
+        return EncodeOptions.builder().format(format).build();
+    }
+
+    public static EncodeOptions of(String format, Float quality) {
+        return EncodeOptions.builder().format(format).quality(quality).build();
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.hui.quick.plugin.base.encode;
+
+import com.github.hui.quick.plugin.base.CanvasPool;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 统一的图片输出入口
+ * <p>
+ * - 每个线程缓存各格式的 ImageWriter，避免每次输出都走一遍SPI查找
+ * - 关闭ImageIO的磁盘缓存，输出直接写内存/目标文件
+ * - 支持指定有损压缩质量、png压缩等级，以及根据图片内容自动选择格式
+ * <p>
+ * Created by @author yihui in 10:45 26/10/19.
+ */
+public class ImageEncoder {
+
+    static {
+        ImageIO.setUseCache(false);
+    }
+
+    /**
+     * 照片类图片优先采用的有损格式，没有对应的编码器时依次降级
+     */
+    private static final String[] LOSSY_FORMATS = {"webp", "jpg"};
+
+    /**
+     * 采样颜色数超过这个值时，认为是照片类的图片
+     */
+    private static final int PHOTO_COLOR_THRESHOLD = 512;
+
+    /**
+     * 颜色采样的最大点数
+     */
+    private static final int MAX_SAMPLE = 64 * 64;
+
+    /**
+     * 不支持透明度的格式，jdk8中jpg编码器会把ARGB图按照四通道输出，导致大部分看图软件显示异常
+     */
+    private static final Set<String> OPAQUE_FORMATS = new HashSet<>(Arrays.asList("jpg", "jpeg", "bmp"));
+
+    private static final ThreadLocal<Map<String, ImageWriter>> writerCache = ThreadLocal.withInitial(HashMap::new);
+
+
+    public static byte[] toBytes(BufferedImage img, EncodeOptions options) throws IOException {
+        return toStream(img, options).toByteArray();
+    }
+
+
+    public static ByteArrayOutputStream toStream(BufferedImage img, EncodeOptions options) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(img, options, outputStream);
+        return outputStream;
+    }
+
+
+    public static String toBase64(BufferedImage img, EncodeOptions options) throws IOException {
+        return Base64.getEncoder().encodeToString(toBytes(img, options));
+    }
+
+
+    /**
+     * 输出到文件，文件已存在时覆盖
+     *
+     * @param img
+     * @param options
+     * @param file
+     * @throws IOException
+     */
+    public static void write(BufferedImage img, EncodeOptions options, File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("delete exists file error! file: " + file);
+        }
+
+        try (ImageOutputStream out = new FileImageOutputStream(file)) {
+            write(img, options, out);
+        }
+    }
+
+
+    /**
+     * 输出到流，不会关闭传入的流
+     *
+     * @param img
+     * @param options
+     * @param outputStream
+     * @throws IOException
+     */
+    public static void write(BufferedImage img, EncodeOptions options, OutputStream outputStream) throws IOException {
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(outputStream)) {
+            write(img, options, out);
+        }
+    }
+
+
+    private static void write(BufferedImage img, EncodeOptions options, ImageOutputStream out) throws IOException {
+        if (options == null) {
+            options = new EncodeOptions();
+        }
+
+        String format = chooseFormat(img, options);
+        ImageWriter writer = borrowWriter(format);
+        BufferedImage target = img;
+        try {
+            if ((img.getColorModel().hasAlpha() && OPAQUE_FORMATS.contains(format))
+                    || !writer.getOriginatingProvider().canEncodeImage(img)) {
+                // jpg等不支持透明度的格式，先铺上背景色
+                target = flatten(img, options.getBgColor());
+            }
+
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(target, null, null), buildParam(writer, format, options));
+            out.flush();
+        } finally {
+            if (target != img) {
+                CanvasPool.release(target);
+            }
+            writer.setOutput(null);
+            writer.reset();
+            writerCache.get().put(format, writer);
+        }
+    }
+
+
+    /**
+     * 从当前线程的缓存中取出对应格式的编码器，用完之后再放回，同一线程嵌套使用时不会拿到同一个实例
+     *
+     * @param format
+     * @return
+     * @throws IOException
+     */
+    private static ImageWriter borrowWriter(String format) throws IOException {
+        ImageWriter writer = writerCache.get().remove(format);
+        if (writer != null) {
+            return writer;
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("unsupported image format: " + format);
+        }
+        return writers.next();
+    }
+
+
+    private static ImageWriteParam buildParam(ImageWriter writer, String format, EncodeOptions options) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (!param.canWriteCompressed()) {
+            return param;
+        }
+
+        Float quality;
+        if (isPng(format)) {
+            // png编码器中 deflate level = 9 - round(9 * quality)
+            quality = options.getDeflateLevel() == null ? null :
+                    (9 - Math.max(0, Math.min(9, options.getDeflateLevel()))) / 9f;
+        } else {
+            quality = options.getQuality() == null ? null : Math.max(0f, Math.min(1f, options.getQuality()));
+        }
+
+        if (quality != null) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                param.setCompressionType(param.getCompressionTypes()[0]);
+            }
+            param.setCompressionQuality(quality);
+        }
+        return param;
+    }
+
+
+    /**
+     * 实际输出的图片格式，format为auto时根据图片内容选择
+     *
+     * @param img
+     * @param options
+     * @return
+     */
+    public static String chooseFormat(BufferedImage img, EncodeOptions options) {
+        String format = options.getFormat() == null ? "png" : options.getFormat().toLowerCase();
+        if (EncodeOptions.APNG.equals(format)) {
+            return "png";
+        }
+        if (!EncodeOptions.AUTO.equals(format)) {
+            return format;
+        }
+
+        if (hasTransparent(img) || !isPhoto(img)) {
+            return "png";
+        }
+
+        for (String lossy : LOSSY_FORMATS) {
+            if (ImageIO.getImageWritersByFormatName(lossy).hasNext()) {
+                return lossy;
+            }
+        }
+        return "png";
+    }
+
+
+    private static boolean hasTransparent(BufferedImage img) {
+        if (!img.getColorModel().hasAlpha()) {
+            return false;
+        }
+
+        int w = img.getWidth();
+        int[] row = new int[w];
+        for (int y = 0; y < img.getHeight(); y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            for (int argb : row) {
+                if ((argb >>> 24) != 0xff) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * 按网格采样统计颜色数，颜色丰富的图片认为是照片
+     *
+     * @param img
+     * @return
+     */
+    private static boolean isPhoto(BufferedImage img) {
+        int w = img.getWidth(), h = img.getHeight();
+        int step = Math.max(1, (int) Math.sqrt((double) w * h / MAX_SAMPLE));
+        Set<Integer> colors = new HashSet<>();
+        for (int y = 0; y < h; y += step) {
+            for (int x = 0; x < w; x += step) {
+                colors.add(img.getRGB(x, y) & 0xffffff);
+                if (colors.size() > PHOTO_COLOR_THRESHOLD) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private static BufferedImage flatten(BufferedImage img, Color bgColor) {
+        BufferedImage rgb = CanvasPool.lease(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = rgb.createGraphics();
+        g2d.setColor(bgColor == null ? Color.WHITE : bgColor);
+        g2d.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g2d.drawImage(img, 0, 0, null);
+        g2d.dispose();
+        return rgb;
+    }
+
+
+    private static boolean isPng(String format) {
+        return "png".equals(format);
+    }
+
+
+    /**
+     * 判断当前环境是否支持输出指定格式
+     *
+     * @param format
+     * @return
+     */
+    public static boolean support(String format) {
+        return format != null && ImageIO.getImageWritersByFormatName(format).hasNext();
+    }
+}
@@ -0,0 +1,271 @@
+package com.github.hui.quick.plugin.base.encode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 逐行输出的png编码器，图片不需要整张保存在内存中
+ * <p>
+ * 按行写入ARGB像素，每行滤波后deflate压缩，压缩数据攒满一块就作为IDAT输出
+ * <p>
+ * Created by @author yihui in 22:20 26/10/19.
+ */
+public class PngStreamWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    /**
+     * 单个IDAT块的大小
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+
+    private final int width;
+
+    private final int height;
+
+    private final boolean alpha;
+
+    private final int bpp;
+
+    private final Deflater deflater;
+
+    private final DeflaterOutputStream deflaterStream;
+
+    private byte[] prior;
+
+    private byte[] cur;
+
+    private final byte[][] filtered = new byte[5][];
+
+    /**
+     * 已写入的行数
+     */
+    private int rows;
+
+    private boolean finished;
+
+    /**
+     * 写入文件头
+     *
+     * @param out          输出流，不会被关闭
+     * @param width
+     * @param height
+     * @param alpha        是否输出透明通道
+     * @param deflateLevel 压缩等级 [0, 9]，-1 表示默认等级
+     * @throws IOException
+     */
+    public PngStreamWriter(OutputStream out, int width, int height, boolean alpha, int deflateLevel) throws IOException {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.bpp = alpha ? 4 : 3;
+        this.prior = new byte[width * bpp];
+        this.cur = new byte[width * bpp];
+        for (int i = 0; i < filtered.length; i++) {
+            filtered[i] = new byte[width * bpp + 1];
+        }
+        this.deflater = new Deflater(deflateLevel < 0 ? Deflater.DEFAULT_COMPRESSION : Math.min(9, deflateLevel));
+        this.deflaterStream = new DeflaterOutputStream(new IdatStream(), deflater, 8192);
+
+        out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        writeInt(header, width);
+        writeInt(header, height);
+        header.write(8); // bit depth
+        header.write(alpha ? 6 : 2); // color type: truecolor with alpha / truecolor
+        header.write(0); // compression
+        header.write(0); // filter
+        header.write(0); // interlace
+        byte[] data = header.toByteArray();
+        writeChunk(out, "IHDR", data, 0, data.length);
+    }
+
+    /**
+     * 写入若干行像素
+     *
+     * @param argb     非预乘的ARGB像素
+     * @param offset   第一个像素的位置
+     * @param scansize 每行的像素数
+     * @param num      写入的行数
+     * @throws IOException
+     */
+    public void writeRows(int[] argb, int offset, int scansize, int num) throws IOException {
+        if (rows + num > height) {
+            throw new IOException("png rows overflow: " + (rows + num) + " > " + height);
+        }
+
+        for (int r = 0; r < num; r++) {
+            for (int x = 0, i = offset + r * scansize, k = 0; x < width; x++, i++) {
+                int c = argb[i];
+                cur[k++] = (byte) (c >> 16);
+                cur[k++] = (byte) (c >> 8);
+                cur[k++] = (byte) c;
+                if (alpha) {
+                    cur[k++] = (byte) (c >>> 24);
+                }
+            }
+            deflaterStream.write(filterRow(cur, prior, bpp, filtered));
+            byte[] tmp = prior;
+            prior = cur;
+            cur = tmp;
+        }
+        rows += num;
+    }
+
+    /**
+     * 输出剩余的压缩数据以及结束块
+     *
+     * @throws IOException 写入的行数与图片高度不一致时
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (rows != height) {
+                throw new IOException("png rows missing: " + rows + " < " + height);
+            }
+            // 关闭时输出剩余的IDAT，不会关闭外部的输出流
+            deflaterStream.close();
+            writeChunk(out, "IEND", new byte[0], 0, 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    /**
+     * 依次尝试 None/Sub/Up/Average/Paeth 五种滤波，取差值绝对值之和最小的一种
+     *
+     * @param cur      当前行
+     * @param prior    上一行，第一行时全为0
+     * @param bpp      每个像素的字节数
+     * @param filtered 5 * (行字节数 + 1) 的缓存
+     * @return 滤波后的一行数据，首字节为滤波类型
+     */
+    public static byte[] filterRow(byte[] cur, byte[] prior, int bpp, byte[][] filtered) {
+        int best = 0;
+        long bestSum = Long.MAX_VALUE;
+        for (int type = 0; type < 5; type++) {
+            byte[] row = filtered[type];
+            row[0] = (byte) type;
+            long sum = 0;
+            for (int i = 0; i < cur.length; i++) {
+                int a = i >= bpp ? cur[i - bpp] & 0xff : 0;
+                int b = prior[i] & 0xff;
+                int c = i >= bpp ? prior[i - bpp] & 0xff : 0;
+                int p;
+                switch (type) {
+                    case 1:
+                        p = a;
+                        break;
+                    case 2:
+                        p = b;
+                        break;
+                    case 3:
+                        p = (a + b) >> 1;
+                        break;
+                    case 4:
+                        p = paeth(a, b, c);
+                        break;
+                    default:
+                        p = 0;
+                }
+                byte v = (byte) (cur[i] - p);
+                row[i + 1] = v;
+                sum += Math.abs(v);
+            }
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = type;
+            }
+        }
+        return filtered[best];
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int off, int len) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, off, len);
+
+        writeInt(out, len);
+        out.write(name);
+        out.write(data, off, len);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream os, int v) throws IOException {
+        os.write(v >>> 24);
+        os.write(v >>> 16);
+        os.write(v >>> 8);
+        os.write(v);
+    }
+
+
+    /**
+     * 压缩数据攒满 CHUNK_SIZE 就输出一个IDAT块
+     */
+    private class IdatStream extends OutputStream {
+        private final byte[] buf = new byte[CHUNK_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buf.length) {
+                flushChunk();
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buf.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buf, 0, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import com.github.hui.quick.plugin.base.encode.PngStreamWriter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * APNG 动图编码器，各帧以真彩色(可带透明度)无损输出，不需要像gif一样做256色量化
+ * <p>
+ * - 增量帧：只输出相对上一帧变化的矩形区域，区域内未变化的像素输出为透明，与上一帧叠加显示
+ * - 并行压缩：各帧的行滤波与deflate压缩可以在线程池中并行执行
+ * - 帧数需要写在文件头的acTL块中，所以压缩后的帧数据缓存在内存中，finish时统一输出
+ * <p>
+ * Created by @author yihui in 20:10 26/10/19.
+ */
+public class ApngEncoder implements FrameEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    /**
+     * 帧区域直接覆盖画布
+     */
+    private static final byte BLEND_SOURCE = 0;
+
+    /**
+     * 帧区域按透明度叠加到画布上
+     */
+    private static final byte BLEND_OVER = 1;
+
+    /**
+     * 签名、IHDR、acTL、IEND 的字节数
+     */
+    private static final int FILE_OVERHEAD = 8 + 25 + 20 + 12;
+
+    /**
+     * 每一帧 fcTL 与 fdAT 块头的字节数
+     */
+    private static final int FRAME_OVERHEAD = 38 + 16;
+
+    private int width;
+
+    private int height;
+
+    private boolean sizeSet;
+
+    /**
+     * 循环次数，-1 只播放一次，0 无限循环，与 GifEncoder 保持一致
+     */
+    private int repeat = -1;
+
+    /**
+     * 帧的展示时间，单位ms
+     */
+    private int delay;
+
+    private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean deltaFrames;
+
+    /**
+     * 是否输出透明通道，由第一帧决定，增量帧模式下总是输出
+     */
+    private boolean alpha;
+
+    private ExecutorService executor;
+
+    private int maxPending;
+
+    private OutputStream out;
+
+    private boolean started;
+
+    private int[] prevPixels;
+
+    /**
+     * 已添加的帧，按添加顺序输出
+     */
+    private final List<Future<EncodedFrame>> frames = new ArrayList<>();
+
+    /**
+     * 之前的帧都已经压缩完毕
+     */
+    private int doneFrames;
+
+    /**
+     * 已统计压缩后大小的帧数，及其缓存的字节数
+     */
+    private int sizedFrames;
+
+    private long encodedBytes;
+
+    private boolean ok;
+
+
+    @Override
+    public void setDelay(int ms) {
+        delay = Math.max(0, ms);
+    }
+
+    /**
+     * 循环次数，必须在finish之前设置
+     *
+     * @param iter -1 只播放一次，0 无限循环
+     */
+    public void setRepeat(int iter) {
+        if (iter >= 0) {
+            repeat = iter;
+        }
+    }
+
+    /**
+     * deflate压缩等级
+     *
+     * @param level [0, 9]，0 不压缩，9 压缩率最高；-1 表示默认等级
+     */
+    public void setDeflateLevel(int level) {
+        deflateLevel = level < 0 ? Deflater.DEFAULT_COMPRESSION : Math.min(9, level);
+    }
+
+    /**
+     * 只输出相对上一帧变化的矩形区域，必须在添加第一帧之前设置
+     *
+     * @param deltaFrames
+     */
+    public void setDeltaFrames(boolean deltaFrames) {
+        if (frames.isEmpty()) {
+            this.deltaFrames = deltaFrames;
+        }
+    }
+
+    /**
+     * 在公共的ForkJoinPool中并行压缩各帧，必须在添加第一帧之前设置
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        setExecutor(parallel ? ForkJoinPool.commonPool() : null, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * 在指定线程池中并行压缩各帧，null 表示串行
+     *
+     * @param executor 线程池
+     * @param threads  工作线程数，同时压缩的帧不超过 2 * threads
+     */
+    public void setExecutor(ExecutorService executor, int threads) {
+        if (frames.isEmpty()) {
+            this.executor = executor;
+            this.maxPending = Math.max(1, threads) * 2;
+        }
+    }
+
+    /**
+     * 设置画布大小，未设置时采用第一帧的大小
+     *
+     * @param w
+     * @param h
+     */
+    public void setSize(int w, int h) {
+        if (frames.isEmpty()) {
+            width = Math.max(1, w);
+            height = Math.max(1, h);
+            sizeSet = true;
+        }
+    }
+
+    @Override
+    public boolean start(OutputStream os) {
+        if (os == null) {
+            return false;
+        }
+        out = os;
+        ok = true;
+        return started = true;
+    }
+
+    @Override
+    public boolean addFrame(BufferedImage im) {
+        if (im == null || !started || !ok) {
+            return false;
+        }
+        if (!sizeSet) {
+            setSize(im.getWidth(), im.getHeight());
+        }
+        if (frames.isEmpty()) {
+            alpha = deltaFrames || im.getColorModel().hasAlpha();
+        }
+
+        int[] pixels = new int[width * height];
+        readPixels(im, pixels);
+        FrameTask task = prepareFrame(pixels);
+        if (executor == null) {
+            frames.add(CompletableFuture.completedFuture(task.call()));
+            doneFrames = frames.size();
+            return true;
+        }
+
+        frames.add(executor.submit(task::call));
+        try {
+            while (frames.size() - doneFrames > maxPending) {
+                // 控制同时持有原始像素的帧数
+                frames.get(doneFrames++).get();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ok = false;
+        } catch (ExecutionException e) {
+            ok = false;
+            GifEncoder.rethrowUnchecked(e);
+            return false;
+        }
+    }
+
+    /**
+     * 还在压缩中的帧数；压缩完毕的帧按顺序计入 {@link #bufferedBytes()}
+     */
+    @Override
+    public int pendingFrames() {
+        while (sizedFrames < frames.size() && frames.get(sizedFrames).isDone()) {
+            try {
+                encodedBytes += frames.get(sizedFrames).get().data.length + FRAME_OVERHEAD;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                ok = false;
+                GifEncoder.rethrowUnchecked(e);
+                break;
+            }
+            sizedFrames++;
+        }
+        return frames.size() - sizedFrames;
+    }
+
+    /**
+     * 帧数据在 finish 时才输出，返回压缩完毕的帧加上文件头尾的字节数
+     */
+    @Override
+    public long bufferedBytes() {
+        return sizedFrames == 0 ? 0 : encodedBytes + FILE_OVERHEAD;
+    }
+
+    /**
+     * 读取帧的非预乘ARGB像素，常见类型直接读取raster
+     */
+    private void readPixels(BufferedImage im, int[] argb) {
+        int type = im.getType();
+        if (im.getWidth() == width && im.getHeight() == height && im.getRaster().getParent() == null
+                && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)) {
+            int[] data = ((DataBufferInt) im.getRaster().getDataBuffer()).getData();
+            System.arraycopy(data, 0, argb, 0, argb.length);
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int i = 0; i < argb.length; i++) {
+                    argb[i] |= 0xff000000;
+                }
+            }
+            return;
+        }
+        im.getRGB(0, 0, Math.min(width, im.getWidth()), Math.min(height, im.getHeight()), argb, 0, width);
+    }
+
+    /**
+     * 第一帧输出完整画布；增量帧模式下之后的帧只输出变化的矩形区域
+     */
+    private FrameTask prepareFrame(int[] pixels) {
+        int[] prev = prevPixels;
+        prevPixels = pixels;
+        if (!deltaFrames || prev == null) {
+            return new FrameTask(pixels, 0, 0, width, height, delay, BLEND_SOURCE);
+        }
+
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                if (pixels[i] != prev[i]) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) {
+            // 与上一帧相同，输出一个透明像素保留展示时间
+            return new FrameTask(new int[1], 0, 0, 1, 1, delay, BLEND_OVER);
+        }
+
+        int w = maxX - minX + 1, h = maxY - minY + 1;
+        int[] sub = new int[w * h];
+        boolean opaque = true;
+        for (int y = 0, k = 0; y < h; y++) {
+            int i = (minY + y) * width + minX;
+            for (int x = 0; x < w; x++, i++, k++) {
+                if (pixels[i] != prev[i]) {
+                    sub[k] = pixels[i];
+                    opaque &= (pixels[i] >>> 24) == 0xff;
+                }
+            }
+        }
+        if (!opaque) {
+            // 变化的像素带透明度时不能叠加到上一帧上，整块覆盖
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(pixels, (minY + y) * width + minX, sub, y * w, w);
+            }
+            return new FrameTask(sub, minX, minY, w, h, delay, BLEND_SOURCE);
+        }
+        return new FrameTask(sub, minX, minY, w, h, delay, BLEND_OVER);
+    }
+
+    @Override
+    public boolean finish() {
+        if (!started) {
+            return false;
+        }
+
+        ExecutionException failure = null;
+        try {
+            List<EncodedFrame> encoded = new ArrayList<>(frames.size());
+            for (Future<EncodedFrame> frame : frames) {
+                encoded.add(frame.get());
+            }
+            if (ok && !encoded.isEmpty()) {
+                write(encoded);
+            } else {
+                ok = false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        } catch (ExecutionException e) {
+            failure = e;
+            ok = false;
+        } catch (IOException e) {
+            ok = false;
+        }
+
+        boolean result = ok;
+        // 重置状态，支持复用
+        frames.clear();
+        doneFrames = 0;
+        sizedFrames = 0;
+        encodedBytes = 0;
+        prevPixels = null;
+        started = false;
+        sizeSet = false;
+        out = null;
+        if (failure != null) {
+            // 先重置状态，压缩线程抛出的非受检异常再原样抛出
+            GifEncoder.rethrowUnchecked(failure);
+        }
+        return result;
+    }
+
+    private void write(List<EncodedFrame> encoded) throws IOException {
+        out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        writeInt(header, width);
+        writeInt(header, height);
+        header.write(8); // bit depth
+        header.write(alpha ? 6 : 2); // color type: truecolor with alpha / truecolor
+        header.write(0); // compression
+        header.write(0); // filter
+        header.write(0); // interlace
+        writeChunk("IHDR", header.toByteArray(), -1);
+
+        header.reset();
+        writeInt(header, encoded.size()); // num_frames
+        writeInt(header, repeat < 0 ? 1 : repeat); // num_plays, 0 = 无限循环
+        writeChunk("acTL", header.toByteArray(), -1);
+
+        int seq = 0;
+        for (int i = 0; i < encoded.size(); i++) {
+            EncodedFrame frame = encoded.get(i);
+            header.reset();
+            writeInt(header, seq++);
+            writeInt(header, frame.w);
+            writeInt(header, frame.h);
+            writeInt(header, frame.x);
+            writeInt(header, frame.y);
+            writeShort(header, Math.min(frame.delay, 0xffff)); // delay_num
+            writeShort(header, 1000); // delay_den, 单位ms
+            header.write(0); // dispose_op: none
+            header.write(frame.blend);
+            writeChunk("fcTL", header.toByteArray(), -1);
+
+            if (i == 0) {
+                // 第一帧同时作为不支持apng时展示的静态图
+                writeChunk("IDAT", frame.data, -1);
+            } else {
+                writeChunk("fdAT", frame.data, seq++);
+            }
+        }
+        writeChunk("IEND", new byte[0], -1);
+        out.flush();
+    }
+
+    /**
+     * 输出一个chunk
+     *
+     * @param seq >=0 时在数据之前写入序号(fdAT)
+     */
+    private void writeChunk(String type, byte[] data, int seq) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] prefix = new byte[0];
+        if (seq >= 0) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(4);
+            writeInt(bos, seq);
+            prefix = bos.toByteArray();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(prefix);
+        crc.update(data);
+
+        writeInt(out, prefix.length + data.length);
+        out.write(name);
+        out.write(prefix);
+        out.write(data);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream os, int v) throws IOException {
+        os.write(v >>> 24);
+        os.write(v >>> 16);
+        os.write(v >>> 8);
+        os.write(v);
+    }
+
+    private static void writeShort(OutputStream os, int v) throws IOException {
+        os.write(v >>> 8);
+        os.write(v);
+    }
+
+
+    /**
+     * 一帧的压缩任务，只读取构造时传入的参数，可以在任意线程执行
+     */
+    private class FrameTask {
+        private final int[] argb;
+        private final int x, y, w, h;
+        private final int delay;
+        private final byte blend;
+        private final boolean alpha = ApngEncoder.this.alpha;
+        private final int level = deflateLevel;
+
+        FrameTask(int[] argb, int x, int y, int w, int h, int delay, byte blend) {
+            this.argb = argb;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.delay = delay;
+            this.blend = blend;
+        }
+
+        EncodedFrame call() {
+            return new EncodedFrame(x, y, w, h, delay, blend, compress(argb, w, h, alpha, level));
+        }
+    }
+
+    /**
+     * 按行选择滤波方式后deflate压缩
+     */
+    private static byte[] compress(int[] argb, int w, int h, boolean alpha, int level) {
+        int bpp = alpha ? 4 : 3;
+        int stride = w * bpp;
+        byte[] prior = new byte[stride], cur = new byte[stride];
+        byte[][] filtered = new byte[5][stride + 1];
+
+        Deflater deflater = new Deflater(level);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(w * h + 64);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater, 8192)) {
+            for (int y = 0, i = 0; y < h; y++) {
+                for (int x = 0, k = 0; x < w; x++, i++) {
+                    int c = argb[i];
+                    cur[k++] = (byte) (c >> 16);
+                    cur[k++] = (byte) (c >> 8);
+                    cur[k++] = (byte) c;
+                    if (alpha) {
+                        cur[k++] = (byte) (c >>> 24);
+                    }
+                }
+                dos.write(PngStreamWriter.filterRow(cur, prior, bpp, filtered));
+                byte[] tmp = prior;
+                prior = cur;
+                cur = tmp;
+            }
+        } catch (IOException e) {
+            // 写入内存，不会出现
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return bos.toByteArray();
+    }
+
+
+    private static class EncodedFrame {
+        private final int x, y, w, h;
+        private final int delay;
+        private final byte blend;
+        private final byte[] data;
+
+        EncodedFrame(int x, int y, int w, int h, int delay, byte blend, byte[] data) {
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.delay = delay;
+            this.blend = blend;
+            this.data = data;
+        }
+    }
+}
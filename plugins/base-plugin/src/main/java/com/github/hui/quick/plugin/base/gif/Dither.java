@@ -0,0 +1,121 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import java.util.Arrays;
+
+/**
+ * 像素映射到调色板时的抖动方式，可以减轻渐变区域的色带，但会降低LZW的压缩率
+ * <p>
+ * Created by @author yihui in 16:10 26/10/19.
+ */
+public enum Dither {
+    /**
+     * 不抖动，直接取最接近的颜色
+     */
+    NONE {
+        @Override
+        void map(Palette palette, byte[] pixels, int w, int h, boolean[] skip, byte[] indexed, boolean[] used) {
+            for (int i = 0, k = 0, n = w * h; i < n; i++, k += 3) {
+                if (skip != null && skip[i]) {
+                    continue;
+                }
+                int index = palette.map(pixels[k + 2] & 0xff, pixels[k + 1] & 0xff, pixels[k] & 0xff);
+                used[index] = true;
+                indexed[i] = (byte) index;
+            }
+        }
+    },
+
+    /**
+     * 4x4 Bayer 有序抖动，速度快，并行编码时各帧结果稳定
+     */
+    ORDERED {
+        @Override
+        void map(Palette palette, byte[] pixels, int w, int h, boolean[] skip, byte[] indexed, boolean[] used) {
+            for (int y = 0, i = 0; y < h; y++) {
+                for (int x = 0; x < w; x++, i++) {
+                    if (skip != null && skip[i]) {
+                        continue;
+                    }
+                    int k = i * 3;
+                    int offset = BAYER[(y & 3) << 2 | (x & 3)];
+                    int index = palette.map(clamp((pixels[k + 2] & 0xff) + offset),
+                            clamp((pixels[k + 1] & 0xff) + offset), clamp((pixels[k] & 0xff) + offset));
+                    used[index] = true;
+                    indexed[i] = (byte) index;
+                }
+            }
+        }
+    },
+
+    /**
+     * Floyd–Steinberg 误差扩散，效果最好
+     */
+    FLOYD_STEINBERG {
+        @Override
+        void map(Palette palette, byte[] pixels, int w, int h, boolean[] skip, byte[] indexed, boolean[] used) {
+            // 当前行与下一行的累积误差，左右各多留一个像素
+            int[] cur = new int[(w + 2) * 3], next = new int[(w + 2) * 3];
+            for (int y = 0, i = 0; y < h; y++) {
+                for (int x = 0; x < w; x++, i++) {
+                    int e = (x + 1) * 3;
+                    if (skip != null && skip[i]) {
+                        // 不输出的像素，误差不再继续扩散
+                        cur[e] = cur[e + 1] = cur[e + 2] = 0;
+                        continue;
+                    }
+                    int k = i * 3;
+                    int r = clamp((pixels[k + 2] & 0xff) + (cur[e] >> 4));
+                    int g = clamp((pixels[k + 1] & 0xff) + (cur[e + 1] >> 4));
+                    int b = clamp((pixels[k] & 0xff) + (cur[e + 2] >> 4));
+                    int index = palette.map(r, g, b);
+                    used[index] = true;
+                    indexed[i] = (byte) index;
+
+                    diffuse(cur, next, e, r - palette.getRed(index));
+                    diffuse(cur, next, e + 1, g - palette.getGreen(index));
+                    diffuse(cur, next, e + 2, b - palette.getBlue(index));
+                }
+                int[] tmp = cur;
+                cur = next;
+                next = tmp;
+                Arrays.fill(next, 0);
+            }
+        }
+    };
+
+    /**
+     * 4x4 Bayer 矩阵，偏移范围 [-8, 7]
+     */
+    private static final int[] BAYER = {
+            -8, 0, -6, 2,
+            4, -4, 6, -2,
+            -5, 3, -7, 1,
+            7, -1, 5, -3};
+
+    /**
+     * 将像素映射为调色板下标
+     *
+     * @param palette 调色板
+     * @param pixels  BGR像素
+     * @param w       宽
+     * @param h       高
+     * @param skip    不需要映射的像素，可以为null
+     * @param indexed 输出的调色板下标
+     * @param used    标记用到的调色板颜色
+     */
+    abstract void map(Palette palette, byte[] pixels, int w, int h, boolean[] skip, byte[] indexed, boolean[] used);
+
+    /**
+     * 误差按 7/16 右, 3/16 左下, 5/16 下, 1/16 右下 扩散
+     */
+    private static void diffuse(int[] cur, int[] next, int e, int err) {
+        cur[e + 3] += err * 7;
+        next[e - 3] += err * 3;
+        next[e] += err * 5;
+        next[e + 3] += err;
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import java.util.Arrays;
+
+/**
+ * 精确调色板：图片颜色不超过256种时(文字、二维码等大部分生成图)直接采用原有颜色，无需量化；
+ * 超过时交给备用的量化实现
+ * <p>
+ * Created by @author yihui in 15:40 26/10/19.
+ */
+public class ExactQuantizer implements Quantizer {
+
+    private static final int MAX_COLORS = 256;
+
+    /**
+     * 哈希表大小，负载因子不超过 0.25
+     */
+    private static final int TABLE_SIZE = 1024;
+
+    private static final int EMPTY = -1;
+
+    private final Quantizer fallback;
+
+    public ExactQuantizer(Quantizer fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Palette quantize(byte[] pixels, int len) {
+        int[] keys = new int[TABLE_SIZE];
+        Arrays.fill(keys, EMPTY);
+        byte[] values = new byte[TABLE_SIZE];
+        byte[] tab = new byte[MAX_COLORS * 3];
+        int size = 0, last = EMPTY;
+        for (int i = 0; i + 2 < len; i += 3) {
+            int rgb = (pixels[i + 2] & 0xff) << 16 | (pixels[i + 1] & 0xff) << 8 | (pixels[i] & 0xff);
+            if (rgb == last) {
+                // 连续相同的颜色很常见，跳过哈希查找
+                continue;
+            }
+            last = rgb;
+            int slot = slot(keys, rgb);
+            if (keys[slot] == rgb) {
+                continue;
+            }
+            if (size == MAX_COLORS) {
+                return fallback.quantize(pixels, len);
+            }
+            keys[slot] = rgb;
+            values[slot] = (byte) size;
+            tab[size * 3] = (byte) (rgb >> 16);
+            tab[size * 3 + 1] = (byte) (rgb >> 8);
+            tab[size * 3 + 2] = (byte) rgb;
+            ++size;
+        }
+        return new ExactPalette(Arrays.copyOf(tab, Math.max(size, 1) * 3), keys, values);
+    }
+
+    private static int slot(int[] keys, int rgb) {
+        int slot = (rgb * 0x9E3779B1) >>> 22;
+        while (keys[slot] != EMPTY && keys[slot] != rgb) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return slot;
+    }
+
+    private static class ExactPalette extends Palette {
+        private final int[] keys;
+        private final byte[] values;
+
+        ExactPalette(byte[] colorTab, int[] keys, byte[] values) {
+            super(colorTab);
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public boolean isExact() {
+            return true;
+        }
+
+        @Override
+        public boolean covers(byte[] pixels, int len) {
+            int last = EMPTY;
+            for (int i = 0; i + 2 < len; i += 3) {
+                int rgb = (pixels[i + 2] & 0xff) << 16 | (pixels[i + 1] & 0xff) << 8 | (pixels[i] & 0xff);
+                if (rgb != last && keys[slot(keys, rgb)] != rgb) {
+                    return false;
+                }
+                last = rgb;
+            }
+            return true;
+        }
+
+        @Override
+        protected int search(int r, int g, int b) {
+            int rgb = r << 16 | g << 8 | b;
+            int slot = slot(keys, rgb);
+            // 全局调色板时，未采样到的颜色取最接近的
+            return keys[slot] == rgb ? values[slot] & 0xff : findNearest(r, g, b);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 动图的帧预算，避免长文本、多帧背景图生成过大的动图以及过长的编码耗时
+ * <p>
+ * - 连续相同的帧合并为一帧，展示时间累加
+ * - 超出预算时按比例抽帧，被丢弃帧的展示时间累加到前一帧上，总时长不变
+ * <p>
+ * 各项为null时表示不限制
+ * <p>
+ * Created by @author yihui in 21:10 26/10/19.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FrameBudget {
+
+    /**
+     * 最多输出的帧数
+     */
+    private Integer maxFrames;
+
+    /**
+     * 输出大小的目标，单位字节；按已编码帧的平均大小估算剩余可输出的帧数，还在编码的帧按平均大小计入
+     * <p>
+     * 这是一个估算的软限制：训练全局调色板的前几帧编码之前无从估算，实际大小可能略超出目标；
+     * apng 的帧数据在 finish 时才输出，按编码器中缓存的压缩数据估算
+     */
+    private Long maxBytes;
+
+    /**
+     * 生成耗时(包括绘制与编码)的目标，单位ms；按已输出帧的平均耗时估算剩余可输出的帧数
+     */
+    private Long maxMillis;
+
+
+    public static FrameBudget ofFrames(int maxFrames) {
+        return FrameBudget.builder().maxFrames(maxFrames).build();
+    }
+}
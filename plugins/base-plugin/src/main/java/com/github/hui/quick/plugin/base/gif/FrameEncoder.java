@@ -0,0 +1,74 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+
+/**
+ * 逐帧输出的动图编码器，{@link GifSink} 通过它输出gif或apng
+ * <p>
+ * Created by @author yihui in 20:00 26/10/19.
+ */
+public interface FrameEncoder {
+
+    /**
+     * 开始输出到指定的流，流不会被关闭
+     *
+     * @param os
+     * @return false 表示失败
+     */
+    boolean start(OutputStream os);
+
+    /**
+     * 设置后续帧的展示时间
+     *
+     * @param ms 单位ms
+     */
+    void setDelay(int ms);
+
+    /**
+     * 添加一帧，返回之后调用方可以复用传入的图片
+     *
+     * @param im
+     * @return false 表示失败
+     */
+    boolean addFrame(BufferedImage im);
+
+    /**
+     * 添加一帧，并告知相对上一帧可能发生变化的区域；区域之外的像素必须与上一帧完全一致
+     * <p>
+     * 默认忽略这个区域，按整帧处理
+     *
+     * @param im
+     * @param dirty 可能变化的区域，null 表示整帧
+     * @return false 表示失败
+     */
+    default boolean addFrame(BufferedImage im, Rectangle dirty) {
+        return addFrame(im);
+    }
+
+    /**
+     * 已添加但还不知道编码后大小的帧数，如并行编码中的帧；已经编码完成的帧可以先写出
+     *
+     * @return
+     */
+    default int pendingFrames() {
+        return 0;
+    }
+
+    /**
+     * 已经编码完成、缓存在内存中还没有写入输出流的字节数，如 apng 在 finish 时才输出的帧数据
+     *
+     * @return
+     */
+    default long bufferedBytes() {
+        return 0;
+    }
+
+    /**
+     * 输出剩余的数据，结束编码
+     *
+     * @return false 表示失败
+     */
+    boolean finish();
+}
@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class GifDecoder {
 
@@ -77,7 +79,11 @@ public class GifDecoder {
     protected ArrayList frames; // frames read from current file
     protected int frameCount;
 
-    static class GifFrame {
+    protected boolean streaming; // frames are decoded one at a time into a single reused image
+    protected boolean imageFound; // image separator already read by hasNextFrame
+    protected int[] saved; // area under the last frame, restored for dispose 3
+
+    public static class GifFrame {
         public GifFrame(BufferedImage im, int del) {
             image = im;
             delay = del;
@@ -141,21 +147,19 @@ public class GifDecoder {
 
         // fill in starting image contents based on last image's dispose code
         if (lastDispose > 0) {
-            if (lastDispose == 3) {
-                // use image before last
-                int n = frameCount - 2;
-                if (n > 0) {
-                    lastImage = getFrame(n - 1);
-                } else {
-                    lastImage = null;
+            if (lastImage != null) {
+                if (lastImage != image) {
+                    // in streaming mode the image is reused and already holds the last frame
+                    int[] prev =
+                            ((DataBufferInt) lastImage.getRaster().getDataBuffer()).getData();
+                    System.arraycopy(prev, 0, dest, 0, width * height);
+                    // copy pixels
                 }
-            }
 
-            if (lastImage != null) {
-                int[] prev =
-                        ((DataBufferInt) lastImage.getRaster().getDataBuffer()).getData();
-                System.arraycopy(prev, 0, dest, 0, width * height);
-                // copy pixels
+                if (lastDispose == 3) {
+                    // restore to previous: put back the area saved before the last frame was drawn
+                    copyRect(dest, saved, lastRect, false);
+                }
 
                 if (lastDispose == 2) {
                     // fill last image rect area with background color
@@ -174,6 +178,14 @@ public class GifDecoder {
             }
         }
 
+        if (dispose == 3) {
+            Rectangle rect = new Rectangle(ix, iy, iw, ih);
+            if (saved == null || saved.length < iw * ih) {
+                saved = new int[iw * ih];
+            }
+            copyRect(dest, saved, rect, true);
+        }
+
         // copy each source line to the appropriate place in the destination
         int pass = 1;
         int inc = 8;
@@ -221,6 +233,23 @@ public class GifDecoder {
         }
     }
 
+    /**
+     * Copies the part of rect inside the image between the image pixels and buf.
+     *
+     * @param save true to copy from the image to buf, false to copy back
+     */
+    protected void copyRect(int[] dest, int[] buf, Rectangle rect, boolean save) {
+        int w = Math.min(rect.width, width - rect.x);
+        for (int y = 0; w > 0 && y < rect.height && rect.y + y < height; y++) {
+            int k = (rect.y + y) * width + rect.x;
+            if (save) {
+                System.arraycopy(dest, k, buf, y * rect.width, w);
+            } else {
+                System.arraycopy(buf, y * rect.width, dest, k, w);
+            }
+        }
+    }
+
     /**
      * Gets the image contents of frame n.
      *
@@ -325,6 +354,150 @@ public class GifDecoder {
         return status;
     }
 
+    /**
+     * Opens GIF stream for streaming decode.  Only the header is read here, the frames
+     * are then decoded one at a time by <code>nextFrame()</code> into a single reused
+     * image, so the memory used is one frame whatever the frame count.
+     * <code>getFrame(n)</code> and <code>getDelay(n)</code> are not available in this mode.
+     *
+     * @param is InputStream containing GIF file, closed after the last frame
+     * @return read status code (0 = no errors)
+     */
+    public int open(InputStream is) {
+        init();
+        streaming = true;
+        if (is == null) {
+            status = STATUS_OPEN_ERROR;
+            return status;
+        }
+        in = is instanceof BufferedInputStream ? (BufferedInputStream) is : new BufferedInputStream(is);
+        readHeader();
+        if (err()) {
+            close();
+        }
+        return status;
+    }
+
+    /**
+     * Gets the read status, tells the end of the opened stream from an error.
+     *
+     * @return read status code (0 = no errors)
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns true if the opened stream has another frame.
+     */
+    public boolean hasNextFrame() {
+        if (!imageFound && in != null) {
+            imageFound = seekImage();
+            if (!imageFound) {
+                close();
+            }
+        }
+        return imageFound;
+    }
+
+    /**
+     * Decodes the next frame of the opened stream.  The returned image is reused by
+     * the next call, copy it if it must be kept.
+     *
+     * @return the current frame composed over the previous ones, or null if there is none
+     */
+    public BufferedImage nextFrame() {
+        if (!hasNextFrame()) {
+            return null;
+        }
+        imageFound = false;
+        readImage();
+        if (err()) {
+            close();
+            return null;
+        }
+        return image;
+    }
+
+    /**
+     * Iterates the frames of the opened stream, see <code>nextFrame()</code>.
+     *
+     * @return frames with their delay, the image of all frames is the same reused instance
+     */
+    public Iterator<GifFrame> frameIterator() {
+        return new Iterator<GifFrame>() {
+            @Override
+            public boolean hasNext() {
+                return hasNextFrame();
+            }
+
+            @Override
+            public GifFrame next() {
+                BufferedImage frame = nextFrame();
+                if (frame == null) {
+                    throw new NoSuchElementException();
+                }
+                return new GifFrame(frame, delay);
+            }
+        };
+    }
+
+    /**
+     * Reads only the first frame, for thumbnails and static previews.
+     *
+     * @param is InputStream containing GIF file
+     * @return read status code (0 = no errors)
+     */
+    public int readFirstFrame(InputStream is) {
+        if (open(is) == STATUS_OK) {
+            BufferedImage first = nextFrame();
+            if (first != null) {
+                frames.add(new GifFrame(first, delay));
+            } else if (!err()) {
+                status = STATUS_FORMAT_ERROR; // no image
+            }
+        }
+        close();
+        return status;
+    }
+
+    /**
+     * Reads the size, loop count, frame count and delays without decoding any
+     * pixel data.  <code>getFrame(n)</code> returns null afterwards.
+     *
+     * @param is InputStream containing GIF file
+     * @return read status code (0 = no errors)
+     */
+    public int readMetadata(InputStream is) {
+        if (open(is) == STATUS_OK) {
+            while (hasNextFrame()) {
+                imageFound = false;
+                skipImage();
+                if (err()) {
+                    break;
+                }
+                frameCount++;
+                frames.add(new GifFrame(null, delay));
+            }
+        }
+        close();
+        return status;
+    }
+
+    /**
+     * Closes the stream opened by <code>open()</code>.
+     */
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+            in = null;
+        }
+        imageFound = false;
+    }
+
     /**
      * Decodes LZW image data into pixel array.
      * Adapted from John Cristy's ImageMagick.
@@ -473,6 +646,11 @@ public class GifDecoder {
         frames = new ArrayList();
         gct = null;
         lct = null;
+        streaming = false;
+        imageFound = false;
+        image = null;
+        lastImage = null;
+        lastDispose = 0;
     }
 
     /**
@@ -551,14 +729,23 @@ public class GifDecoder {
      */
     protected void readContents() {
         // read GIF file content blocks
-        boolean done = false;
-        while (!(done || err())) {
+        while (seekImage()) {
+            readImage();
+        }
+    }
+
+    /**
+     * Reads content blocks up to the next image separator.
+     *
+     * @return false at the trailer or on error
+     */
+    protected boolean seekImage() {
+        while (!err()) {
             int code = read();
             switch (code) {
 
                 case 0x2C: // image separator
-                    readImage();
-                    break;
+                    return true;
 
                 case 0x21: // extension
                     code = read();
@@ -585,8 +772,7 @@ public class GifDecoder {
                     break;
 
                 case 0x3b: // terminator
-                    done = true;
-                    break;
+                    return false;
 
                 case 0x00: // bad byte, but keep going and see what happens
                     break;
@@ -595,6 +781,7 @@ public class GifDecoder {
                     status = STATUS_FORMAT_ERROR;
             }
         }
+        return false;
     }
 
     /**
@@ -676,13 +863,17 @@ public class GifDecoder {
 
         frameCount++;
 
-        // create new image to receive frame data
-        image =
-                new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        if (!streaming || image == null) {
+            // create new image to receive frame data
+            image =
+                    new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
 
         setPixels(); // transfer pixel data to image
 
-        frames.add(new GifFrame(image, delay)); // add image to frame list
+        if (!streaming) {
+            frames.add(new GifFrame(image, delay)); // add image to frame list
+        }
 
         if (transparency) {
             act[transIndex] = save;
@@ -749,6 +940,23 @@ public class GifDecoder {
     }
 
 
+    /**
+     * Skips the next frame image without decoding it.
+     */
+    protected void skipImage() {
+        for (int i = 0; i < 8; i++) {
+            read(); // (sub)image position & size
+        }
+        int packed = read();
+        if ((packed & 0x80) != 0) {
+            for (int i = 3 * (2 << (packed & 7)); i > 0; i--) {
+                read(); // local color table
+            }
+        }
+        read(); // LZW minimum code size
+        skip();
+    }
+
     protected void skip() {
         do {
             readBlock();
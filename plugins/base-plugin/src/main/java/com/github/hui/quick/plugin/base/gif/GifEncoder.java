@@ -1,12 +1,25 @@
 package com.github.hui.quick.plugin.base.gif;
 
+import com.github.hui.quick.plugin.base.CanvasPool;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Class GifEncoder - Encodes a GIF file consisting of one or
@@ -30,7 +43,7 @@ import java.io.OutputStream;
  *
  */
 
-public class GifEncoder {
+public class GifEncoder implements FrameEncoder {
 
     protected int width; // image size
     protected int height;
@@ -40,18 +53,24 @@ public class GifEncoder {
     protected int delay = 0; // frame delay (hundredths)
     protected boolean started = false; // ready to output frames
     protected OutputStream out;
-    protected BufferedImage image; // current frame
-    protected byte[] pixels; // BGR byte array from frame
-    protected byte[] indexedPixels; // converted frame indexed to palette
-    protected int colorDepth; // number of bit planes
     protected byte[] colorTab; // RGB palette
-    protected boolean[] usedEntry = new boolean[256]; // active palette entries
     protected int palSize = 7; // color table size (bits-1)
     protected int dispose = -1; // disposal code (-1 = use default)
     protected boolean closeStream = false; // close stream when finished
     protected boolean firstFrame = true;
     protected boolean sizeSet = false; // if false, get size from first frame
     protected int sample = 10; // default sample interval for quantizer
+    protected ExecutorService executor; // worker pool for parallel mode, null = serial
+    protected int maxPending; // max frames encoding concurrently
+    protected Deque<PendingFrame> pending = new ArrayDeque<>(); // frames waiting to be written, in order
+    protected Quantizer quantizer; // builds the palette of each frame, null = NeuQuant
+    protected Dither dither = Dither.NONE; // dithering used when mapping pixels to the palette
+    protected Palette globalPalette; // palette shared by all frames, null = local palette per frame
+    protected static final int MAX_PALETTE_SAMPLES = 8; // max frames sampled to train the global palette
+    protected boolean deltaFrames = false; // only write the changed rectangle of each frame
+    protected byte[] prevPixels; // BGR pixels of the previous frame, for delta mode
+    protected byte[] curPixels; // BGR pixels of the current frame, swapped with prevPixels, for delta mode
+    protected Deque<FrameBuffer> freeBuffers = new ArrayDeque<>(); // written frame buffers, reused by later frames
     /**
      * Sets the delay time between each frame, or changes it
      * for subsequent frames (applies to last frame added).
@@ -105,43 +124,359 @@ public class GifEncoder {
      * actually deferred until the next frame is received so that timing
      * data can be inserted.  Invoking <code>finish()</code> flushes all
      * frames.  If <code>setSize</code> was not invoked, the size of the
-     * first image is used for all subsequent frames.
+     * first image is used for all subsequent frames.  The pixels are copied,
+     * so the image may be reused as soon as this method returns.
      *
      * @param im BufferedImage containing frame to write.
      * @return true if successful.
      */
     public boolean addFrame(BufferedImage im) {
+        return addFrame(im, null);
+    }
+    /**
+     * Adds next GIF frame whose pixels outside <code>dirty</code> are the same as
+     * the previous frame.  In delta mode only the dirty rectangle is read and
+     * compared, so the cost follows the changed area instead of the frame size.
+     *
+     * @param im BufferedImage containing frame to write.
+     * @param dirty area that may differ from the previous frame, null for the whole frame
+     * @return true if successful.
+     */
+    @Override
+    public boolean addFrame(BufferedImage im, Rectangle dirty) {
         if ((im == null) || !started) {
             return false;
         }
-        boolean ok = true;
-        try {
-            if (!sizeSet) {
-                // use first frame's size
-                setSize(im.getWidth(), im.getHeight());
+        if (!sizeSet) {
+            // use first frame's size
+            setSize(im.getWidth(), im.getHeight());
+        }
+        FrameBuffer frame = prepareFrame(im, dirty);
+        final Color frameTransparent = transparent;
+        // delta frames are drawn over the previous one, so leave it in place even if
+        // another disposal was set, clearing or restoring it would corrupt the output
+        int frameDispose = deltaFrames && transparent == null ? 1 : dispose;
+        if (executor == null) {
+            try {
+                writeFrame(encodeFrame(frame, frameTransparent), delay, frameDispose);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        // parallel mode: quantizes and compresses the frame on the worker pool,
+        // the encoded frames are written to the stream in the order they were added
+        Callable<FrameBuffer> task = () -> encodeFrame(frame, frameTransparent);
+        pending.addLast(new PendingFrame(executor.submit(task), delay, frameDispose));
+        while (pending.size() > maxPending) {
+            // keep the memory bounded, write the oldest frame first
+            if (!writePendingFrame()) {
+                return false;
             }
-            image = im;
-            getImagePixels(); // convert to correct format if necessary
-            analyzePixels(); // build color table & map pixels
-            if (firstFrame) {
-                writeLSD(); // logical screen descriptior
-                writePalette(); // global color table
-                if (repeat >= 0) {
-                    // use NS app extension to indicate reps
-                    writeNetscapeExt();
+        }
+        return true;
+    }
+    /**
+     * Copies the frame as BGR pixels into a reusable buffer.  In delta mode only the
+     * bounding rectangle of the pixels changed since the previous frame is kept,
+     * and the unchanged pixels inside it are marked to be written as transparent.
+     */
+    protected FrameBuffer prepareFrame(BufferedImage im, Rectangle dirty) {
+        FrameBuffer frame = freeBuffers.isEmpty() ? new FrameBuffer() : freeBuffers.pop();
+        int nPix = width * height;
+        if (!deltaFrames || transparent != null || prevPixels == null) {
+            frame.resize(0, 0, width, height, nPix);
+            readPixels(im, frame.pixels);
+            if (deltaFrames && transparent == null) {
+                prevPixels = Arrays.copyOf(frame.pixels, nPix * 3);
+                curPixels = new byte[nPix * 3];
+            } else {
+                prevPixels = curPixels = null;
+            }
+            return frame;
+        }
+        if (dirty != null && readable(im)) {
+            return prepareDirtyFrame(frame, im, dirty.intersection(new Rectangle(width, height)));
+        }
+        byte[] pixels = curPixels, prev = prevPixels;
+        readPixels(im, pixels);
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i += 3) {
+                if (pixels[i] != prev[i] || pixels[i + 1] != prev[i + 1] || pixels[i + 2] != prev[i + 2]) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    maxY = y;
                 }
             }
-            writeGraphicCtrlExt(); // write graphic control extension
-            writeImageDesc(); // image descriptor
-            if (!firstFrame) {
-                writePalette(); // local color table
+        }
+        if (maxX < 0) {
+            // same as the previous frame, write a single transparent pixel to keep the delay
+            minX = minY = maxX = maxY = 0;
+        }
+        int w = maxX - minX + 1, h = maxY - minY + 1;
+        frame.resize(minX, minY, w, h, nPix);
+        byte[] sub = frame.pixels;
+        boolean[] keep = frame.keep;
+        boolean hasKeep = false;
+        for (int y = 0, k = 0, j = 0; y < h; y++) {
+            int i = ((minY + y) * width + minX) * 3;
+            System.arraycopy(pixels, i, sub, k, w * 3);
+            for (int x = 0; x < w; x++, i += 3, k += 3, j++) {
+                keep[j] = pixels[i] == prev[i] && pixels[i + 1] == prev[i + 1] && pixels[i + 2] == prev[i + 2];
+                hasKeep |= keep[j];
+            }
+        }
+        frame.hasKeep = hasKeep;
+        // the current frame becomes the previous one, no copy needed
+        prevPixels = pixels;
+        curPixels = prev;
+        return frame;
+    }
+    /**
+     * Delta frame of which only the dirty rectangle may have changed: the rectangle
+     * is read straight from the raster, compared with and then written into the
+     * previous frame's pixels, the rest of the frame is not touched.
+     */
+    protected FrameBuffer prepareDirtyFrame(FrameBuffer frame, BufferedImage im, Rectangle dirty) {
+        byte[] prev = prevPixels;
+        int[] rgb = ((DataBufferInt) im.getRaster().getDataBuffer()).getData();
+        boolean alpha = im.getType() == BufferedImage.TYPE_INT_ARGB;
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = dirty.y; y < dirty.y + dirty.height; y++) {
+            for (int x = dirty.x, p = y * width + x, i = p * 3; x < dirty.x + dirty.width; x++, p++, i += 3) {
+                int c = alpha ? opaque(rgb[p]) : rgb[p];
+                if (prev[i] != (byte) c || prev[i + 1] != (byte) (c >> 8) || prev[i + 2] != (byte) (c >> 16)) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    maxY = y;
+                }
             }
-            writePixels(); // encode and write pixel data
-            firstFrame = false;
+        }
+        if (maxX < 0) {
+            // same as the previous frame, write a single transparent pixel to keep the delay
+            frame.resize(0, 0, 1, 1, width * height);
+            System.arraycopy(prev, 0, frame.pixels, 0, 3);
+            frame.keep[0] = frame.hasKeep = true;
+            return frame;
+        }
+        int w = maxX - minX + 1, h = maxY - minY + 1;
+        frame.resize(minX, minY, w, h, width * height);
+        byte[] sub = frame.pixels;
+        boolean[] keep = frame.keep;
+        boolean hasKeep = false;
+        for (int y = 0, k = 0, j = 0; y < h; y++) {
+            int p = (minY + y) * width + minX, i = p * 3;
+            for (int x = 0; x < w; x++, p++, i += 3, k += 3, j++) {
+                int c = alpha ? opaque(rgb[p]) : rgb[p];
+                sub[k] = (byte) c;
+                sub[k + 1] = (byte) (c >> 8);
+                sub[k + 2] = (byte) (c >> 16);
+                keep[j] = prev[i] == sub[k] && prev[i + 1] == sub[k + 1] && prev[i + 2] == sub[k + 2];
+                hasKeep |= keep[j];
+                prev[i] = sub[k];
+                prev[i + 1] = sub[k + 1];
+                prev[i + 2] = sub[k + 2];
+            }
+        }
+        frame.hasKeep = hasKeep;
+        return frame;
+    }
+    /**
+     * Whether the raster of the frame can be read directly as int pixels of the frame size.
+     */
+    protected boolean readable(BufferedImage im) {
+        return im.getWidth() == width && im.getHeight() == height && im.getRaster().getParent() == null
+                && (im.getType() == BufferedImage.TYPE_INT_RGB || im.getType() == BufferedImage.TYPE_INT_ARGB);
+    }
+    /**
+     * Reads the frame into BGR pixels.  The rasters of the common image types are
+     * read directly, other types are converted by drawing them on a pooled canvas.
+     *
+     * @param im frame
+     * @param bgr destination, at least width * height * 3 long
+     */
+    protected void readPixels(BufferedImage im, byte[] bgr) {
+        int nPix = width * height;
+        // sub images share the raster of their parent, their pixels are not contiguous
+        if (im.getWidth() == width && im.getHeight() == height && im.getRaster().getParent() == null) {
+            switch (im.getType()) {
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    System.arraycopy(((DataBufferByte) im.getRaster().getDataBuffer()).getData(), 0, bgr, 0, nPix * 3);
+                    return;
+                case BufferedImage.TYPE_INT_RGB:
+                case BufferedImage.TYPE_INT_ARGB:
+                    int[] rgb = ((DataBufferInt) im.getRaster().getDataBuffer()).getData();
+                    // translucent pixels are blended over black, the same as the conversion below
+                    boolean alpha = im.getType() == BufferedImage.TYPE_INT_ARGB;
+                    for (int i = 0, k = 0; i < nPix; i++) {
+                        int c = alpha ? opaque(rgb[i]) : rgb[i];
+                        bgr[k++] = (byte) c;
+                        bgr[k++] = (byte) (c >> 8);
+                        bgr[k++] = (byte) (c >> 16);
+                    }
+                    return;
+                default:
+            }
+        }
+        BufferedImage canvas = CanvasPool.lease(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = canvas.createGraphics();
+        // the leased canvas is cleared to black, translucent pixels are blended over it
+        g.drawImage(im, 0, 0, null);
+        g.dispose();
+        System.arraycopy(((DataBufferByte) canvas.getRaster().getDataBuffer()).getData(), 0, bgr, 0, nPix * 3);
+        CanvasPool.release(canvas);
+    }
+    /**
+     * Blends a non-premultiplied ARGB pixel over black, with the same rounding as
+     * drawing it on an opaque canvas with the default SrcOver composite.
+     */
+    protected static int opaque(int c) {
+        int a = c >>> 24;
+        if (a == 0xff) {
+            return c;
+        }
+        return mul8(a, (c >> 16) & 0xff) << 16 | mul8(a, (c >> 8) & 0xff) << 8 | mul8(a, c & 0xff);
+    }
+    /**
+     * a * b / 255, rounded as the 8-bit multiply table of Java2D.
+     */
+    private static int mul8(int a, int b) {
+        return (a * b * 0x10101 + (1 << 23)) >>> 24;
+    }
+    /**
+     * Quantizes and LZW-compresses one frame into its own buffer, only reads the
+     * encoder's configuration so it can run on any thread.
+     *
+     * @param frame BGR pixels of the frame (or of its changed rectangle)
+     * @param transparent transparent color of the frame, may be null
+     */
+    protected FrameBuffer encodeFrame(FrameBuffer frame, Color transparent) throws IOException {
+        int nPix = frame.w * frame.h;
+        byte[] pixels = frame.pixels;
+        byte[] indexed = frame.indexed;
+        boolean[] used = frame.used;
+        Arrays.fill(used, false);
+        Palette palette = globalPalette != null ? globalPalette : getQuantizer().quantize(pixels, nPix * 3);
+        byte[] tab = palette.getColorTab();
+        boolean[] keep = frame.hasKeep ? frame.keep : null;
+        // the global palette is trained on a sample, colors missed by it are not exact
+        boolean exact = globalPalette != null ? palette.covers(pixels, nPix * 3) : palette.isExact();
+        (exact ? Dither.NONE : dither).map(palette, pixels, frame.w, frame.h, keep, indexed, used);
+        int trans = 0;
+        boolean transFlag = false;
+        if (transparent != null) {
+            // get closest match to transparent color if specified
+            trans = findClosest(tab, used, transparent);
+            transFlag = true;
+        } else if (keep != null) {
+            // unchanged pixels take a palette entry not used by this frame
+            trans = findUnused(used);
+            transFlag = trans >= 0;
+            for (int i = 0, k = 0; i < nPix; i++, k += 3) {
+                if (keep[i]) {
+                    indexed[i] = (byte) (transFlag ? trans :
+                            palette.map(pixels[k + 2] & 0xff, pixels[k + 1] & 0xff, pixels[k] & 0xff));
+                }
+            }
+            trans = Math.max(trans, 0);
+        }
+        frame.colorTab = tab;
+        frame.transIndex = trans;
+        frame.transparent = transFlag;
+        frame.data.reset();
+        frame.lzw.reset(frame.w, frame.h, indexed, 8);
+        frame.lzw.encode(frame.data);
+        return frame;
+    }
+    protected static int findUnused(boolean[] used) {
+        for (int i = used.length - 1; i >= 0; i--) {
+            if (!used[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Number of frames added but not written to the stream yet.  In parallel mode
+     * the frames whose encoding has finished are written out first, so only the
+     * ones still encoding on the worker pool are counted.
+     */
+    @Override
+    public int pendingFrames() {
+        while (!pending.isEmpty() && pending.peekFirst().future.isDone()) {
+            if (!writePendingFrame()) {
+                break;
+            }
+        }
+        return pending.size();
+    }
+    /**
+     * Waits for the oldest pending frame and writes it out.
+     */
+    protected boolean writePendingFrame() {
+        PendingFrame frame = pending.pollFirst();
+        try {
+            writeFrame(frame.future.get(), frame.delay, frame.dispose);
+            return true;
         } catch (IOException e) {
-            ok = false;
+            cancelPending();
+            return false;
+        } catch (ExecutionException e) {
+            cancelPending();
+            rethrowUnchecked(e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelPending();
+            return false;
         }
-        return ok;
+    }
+
+    /**
+     * A worker failing with an unchecked exception is a bug rather than an I/O
+     * failure, so rethrow it the same way the serial path would, only an
+     * IOException from the encoding is reported as an unsuccessful write.
+     */
+    static void rethrowUnchecked(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+    protected void cancelPending() {
+        for (PendingFrame frame : pending) {
+            frame.future.cancel(false);
+        }
+        pending.clear();
+    }
+    /**
+     * Writes an encoded frame: the file level blocks for the first frame, then the
+     * graphic control extension, image descriptor, local color table and pixel data.
+     */
+    protected void writeFrame(FrameBuffer frame, int frameDelay, int frameDispose) throws IOException {
+        colorTab = frame.colorTab;
+        transIndex = frame.transIndex;
+        if (firstFrame) {
+            writeLSD(); // logical screen descriptior
+            writePalette(); // global color table
+            if (repeat >= 0) {
+                // use NS app extension to indicate reps
+                writeNetscapeExt();
+            }
+        }
+        writeGraphicCtrlExt(frameDelay, frameDispose, frame.transparent); // write graphic control extension
+        writeImageDesc(frame.x, frame.y, frame.w, frame.h); // image descriptor
+        if (!firstFrame && globalPalette == null) {
+            writePalette(); // local color table
+        }
+        frame.data.writeTo(out); // encoded pixel data
+        firstFrame = false;
+        freeBuffers.push(frame); // reused by a later frame
     }
     /**
      * Flushes any pending data and closes output file.
@@ -151,6 +486,9 @@ public class GifEncoder {
     public boolean finish() {
         if (!started) return false;
         boolean ok = true;
+        while (ok && !pending.isEmpty()) {
+            ok = writePendingFrame();
+        }
         started = false;
         try {
             out.write(0x3b); // gif trailer
@@ -164,12 +502,14 @@ public class GifEncoder {
         // reset for subsequent use
         transIndex = 0;
         out = null;
-        image = null;
-        pixels = null;
-        indexedPixels = null;
         colorTab = null;
+        prevPixels = null;
+        curPixels = null;
+        freeBuffers.clear();
         closeStream = false;
         firstFrame = true;
+        globalPalette = null;
+        cancelPending();
         return ok;
     }
     /**
@@ -198,6 +538,96 @@ public class GifEncoder {
         if (quality < 1) quality = 1;
         sample = quality;
     }
+    /**
+     * Enables the parallel mode on the common fork-join pool.  Frames are
+     * quantized and compressed concurrently, the output is the same as the
+     * serial mode.  Must be invoked before the first image is added.
+     *
+     * @param parallel true to encode frames concurrently
+     */
+    public void setParallel(boolean parallel) {
+        setExecutor(parallel ? ForkJoinPool.commonPool() : null,
+                ForkJoinPool.getCommonPoolParallelism());
+    }
+    /**
+     * Enables the parallel mode on the given worker pool, null means serial.
+     *
+     * @param executor worker pool
+     * @param threads number of workers, at most 2 * threads frames are kept in memory
+     */
+    public void setExecutor(ExecutorService executor, int threads) {
+        if (started && (!firstFrame || !pending.isEmpty())) return;
+        this.executor = executor;
+        this.maxPending = Math.max(1, threads) * 2;
+    }
+    /**
+     * Enables the global palette mode: trains one color table from a sample of
+     * the frames, every frame is then only mapped to it and no local color
+     * table is written.  Suits animations whose frames share nearly the same
+     * colors.  Must be invoked before the first image is added.
+     *
+     * @param frames all (or representative) frames of the animation
+     */
+    public void setGlobalPalette(List<BufferedImage> frames) {
+        if (frames == null || frames.isEmpty() || (started && (!firstFrame || !pending.isEmpty()))) return;
+        if (!sizeSet) {
+            // use first frame's size
+            setSize(frames.get(0).getWidth(), frames.get(0).getHeight());
+        }
+        int n = Math.min(MAX_PALETTE_SAMPLES, frames.size());
+        int nPix = width * height;
+        // take every n-th pixel of each sampled frame, so training costs about the same as one frame
+        byte[] samples = new byte[((nPix + n - 1) / n) * n * 3];
+        int len = 0;
+        byte[] bgr = new byte[nPix * 3];
+        for (int f = 0; f < n; f++) {
+            readPixels(frames.get(n == 1 ? 0 : f * (frames.size() - 1) / (n - 1)), bgr);
+            for (int i = f % n; i < nPix; i += n) {
+                samples[len++] = bgr[i * 3];
+                samples[len++] = bgr[i * 3 + 1];
+                samples[len++] = bgr[i * 3 + 2];
+            }
+        }
+        globalPalette = getQuantizer().quantize(samples, len);
+    }
+    /**
+     * Sets the quantizer building the color table, trading speed for quality:
+     * {@link ExactQuantizer} keeps the original colors of frames with at most 256
+     * colors, {@link OctreeQuantizer} is fast and {@link NeuQuantQuantizer} gives
+     * the best result.  Default is NeuQuant with the sample interval set by
+     * <code>setQuality</code>; wrap it in an {@link ExactQuantizer} to keep the
+     * original colors of generated images.
+     *
+     * @param quantizer quantizer, must be stateless
+     */
+    public void setQuantizer(Quantizer quantizer) {
+        this.quantizer = quantizer;
+    }
+    protected Quantizer getQuantizer() {
+        return quantizer != null ? quantizer : new NeuQuantQuantizer(sample);
+    }
+    /**
+     * Sets the dithering used when mapping pixels to the color table,
+     * ignored for frames whose colors all fit in the table.
+     *
+     * @param dither dithering, null means none
+     */
+    public void setDither(Dither dither) {
+        this.dither = dither == null ? Dither.NONE : dither;
+    }
+    /**
+     * Enables the delta frame mode: each frame after the first only writes the
+     * bounding rectangle of the pixels changed since the previous frame, the
+     * unchanged pixels inside it are written as transparent and the frames use
+     * disposal method 1 (do not dispose), overriding <code>setDispose</code>.  Ignored for frames with a transparent
+     * color set.  Must be invoked before the first image is added.
+     *
+     * @param deltaFrames true to write only the changed region
+     */
+    public void setDeltaFrames(boolean deltaFrames) {
+        if (started && (!firstFrame || !pending.isEmpty())) return;
+        this.deltaFrames = deltaFrames;
+    }
     /**
      * Sets the GIF frame size.  The default size is the
      * size of the first frame added if this method is
@@ -225,7 +655,8 @@ public class GifEncoder {
         if (os == null) return false;
         boolean ok = true;
         closeStream = false;
-        out = os;
+        // the header and block fields are written byte by byte, keep them off the underlying stream
+        out = os instanceof BufferedOutputStream || os instanceof ByteArrayOutputStream ? os : new BufferedOutputStream(os);
         try {
             writeString("GIF89a"); // header
         } catch (IOException e) {
@@ -250,46 +681,11 @@ public class GifEncoder {
         }
         return started = ok;
     }
-    /**
-     * Analyzes image colors and creates color map.
-     */
-    protected void analyzePixels() {
-        int len = pixels.length;
-        int nPix = len / 3;
-        indexedPixels = new byte[nPix];
-        NeuQuant nq = new NeuQuant(pixels, len, sample);
-        // initialize quantizer
-        colorTab = nq.process(); // create reduced palette
-        // convert map from BGR to RGB
-        for (int i = 0; i < colorTab.length; i += 3) {
-            byte temp = colorTab[i];
-            colorTab[i] = colorTab[i + 2];
-            colorTab[i + 2] = temp;
-            usedEntry[i / 3] = false;
-        }
-        // map image pixels to new palette
-        int k = 0;
-        for (int i = 0; i < nPix; i++) {
-            int index =
-                    nq.map(pixels[k++] & 0xff,
-                            pixels[k++] & 0xff,
-                            pixels[k++] & 0xff);
-            usedEntry[index] = true;
-            indexedPixels[i] = (byte) index;
-        }
-        pixels = null;
-        colorDepth = 8;
-        palSize = 7;
-        // get closest match to transparent color if specified
-        if (transparent != null) {
-            transIndex = findClosest(transparent);
-        }
-    }
     /**
      * Returns index of palette color closest to c
      *
      */
-    protected int findClosest(Color c) {
+    protected static int findClosest(byte[] colorTab, boolean[] usedEntry, Color c) {
         if (colorTab == null) return -1;
         int r = c.getRed();
         int g = c.getGreen();
@@ -311,34 +707,15 @@ public class GifEncoder {
         }
         return minpos;
     }
-    /**
-     * Extracts image pixels into byte array "pixels"
-     */
-    protected void getImagePixels() {
-        int w = image.getWidth();
-        int h = image.getHeight();
-        int type = image.getType();
-        if ((w != width)
-                || (h != height)
-                || (type != BufferedImage.TYPE_3BYTE_BGR)) {
-            // create new image with right size/format
-            BufferedImage temp =
-                    new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-            Graphics2D g = temp.createGraphics();
-            g.drawImage(image, 0, 0, null);
-            image = temp;
-        }
-        pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-    }
     /**
      * Writes Graphic Control Extension
      */
-    protected void writeGraphicCtrlExt() throws IOException {
+    protected void writeGraphicCtrlExt(int delay, int dispose, boolean transparent) throws IOException {
         out.write(0x21); // extension introducer
         out.write(0xf9); // GCE label
         out.write(4); // data block size
         int transp, disp;
-        if (transparent == null) {
+        if (!transparent) {
             transp = 0;
             disp = 0; // dispose = no action
         } else {
@@ -361,15 +738,15 @@ public class GifEncoder {
     /**
      * Writes Image Descriptor
      */
-    protected void writeImageDesc() throws IOException {
+    protected void writeImageDesc(int x, int y, int w, int h) throws IOException {
         out.write(0x2c); // image separator
-        writeShort(0); // image position x,y = 0,0
-        writeShort(0);
-        writeShort(width); // image size
-        writeShort(height);
+        writeShort(x); // image position x,y
+        writeShort(y);
+        writeShort(w); // image size
+        writeShort(h);
         // packed fields
-        if (firstFrame) {
-            // no LCT  - GCT is used for first (or only) frame
+        if (firstFrame || globalPalette != null) {
+            // no LCT  - GCT is used for first (or only) frame, or for all frames in global palette mode
             out.write(0);
         } else {
             // specify normal LCT
@@ -419,14 +796,6 @@ public class GifEncoder {
             out.write(0);
         }
     }
-    /**
-     * Encodes and writes pixel data
-     */
-    protected void writePixels() throws IOException {
-        LZWEncoder encoder =
-                new LZWEncoder(width, height, indexedPixels, colorDepth);
-        encoder.encode(out);
-    }
     /**
      *    Write 16-bit value to output stream, LSB first
      */
@@ -442,4 +811,48 @@ public class GifEncoder {
             out.write((byte) s.charAt(i));
         }
     }
-}
\ No newline at end of file
+    /**
+     * Reusable buffers of one frame: its pixels and position on the logical screen,
+     * then the quantized and compressed result.  Owned by one task at a time.
+     */
+    protected static class FrameBuffer {
+        byte[] pixels = new byte[0]; // BGR
+        int x, y, w, h;
+        boolean[] keep = new boolean[0]; // pixels unchanged since the previous frame
+        boolean hasKeep;
+        byte[] indexed = new byte[0]; // palette index of each pixel
+        final boolean[] used = new boolean[256]; // palette entries used by the frame
+        final LZWEncoder lzw = new LZWEncoder();
+        final ByteArrayOutputStream data = new ByteArrayOutputStream(); // encoded pixel data
+        byte[] colorTab;
+        int transIndex;
+        boolean transparent;
+        void resize(int x, int y, int w, int h, int capacity) {
+            if (indexed.length < w * h) {
+                // sized for the full frame, so later delta rectangles always fit
+                int nPix = Math.max(w * h, capacity);
+                pixels = new byte[nPix * 3];
+                keep = new boolean[nPix];
+                indexed = new byte[nPix];
+            }
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            hasKeep = false;
+        }
+    }
+    /**
+     * Frame submitted to the worker pool, with the frame settings captured when it was added.
+     */
+    protected static class PendingFrame {
+        final Future<FrameBuffer> future;
+        final int delay;
+        final int dispose;
+        PendingFrame(Future<FrameBuffer> future, int delay, int dispose) {
+            this.future = future;
+            this.delay = delay;
+            this.dispose = dispose;
+        }
+    }
+}
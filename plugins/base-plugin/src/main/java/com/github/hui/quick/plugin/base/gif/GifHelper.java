@@ -13,6 +13,40 @@ import java.util.List;
  */
 public class GifHelper {
 
+    /**
+     * 多核环境下，多帧的gif并行量化、压缩各帧
+     */
+    private static boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+
+    public static void setParallel(boolean parallel) {
+        GifHelper.parallel = parallel;
+    }
+
+    public static boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * true 表示颜色不超过256种的帧直接采用原有颜色，超过时再用 NeuQuant 量化；默认只用 NeuQuant
+     */
+    private static boolean exactPalette = false;
+
+    public static void setExactPalette(boolean exactPalette) {
+        GifHelper.exactPalette = exactPalette;
+    }
+
+    private static GifEncoder newEncoder(boolean parallel) {
+        GifEncoder encoder = new GifEncoder();
+        encoder.setRepeat(0);
+        encoder.setParallel(parallel);
+        if (exactPalette) {
+            encoder.setQuantizer(new ExactQuantizer(new NeuQuantQuantizer()));
+        }
+        // 只输出相对上一帧变化的区域
+        encoder.setDeltaFrames(true);
+        return encoder;
+    }
+
     public static int loadGif(String gif, List<BufferedImage> list) throws IOException {
         return loadGif(FileReadUtil.getStreamByFileName(gif), list);
     }
@@ -42,8 +76,23 @@ public class GifHelper {
 
 
     public static void saveGif(List<BufferedImage> frames, int delay, OutputStream out) {
-        GifEncoder encoder = new GifEncoder();
-        encoder.setRepeat(0);
+        saveGif(frames, delay, out, false);
+    }
+
+    /**
+     * 输出gif，最后一帧会重复一次
+     *
+     * @param frames        帧
+     * @param delay         帧间隔，单位ms
+     * @param out           输出流
+     * @param globalPalette true 表示由采样的帧训练一个全局调色板，适用于文字、表情类各帧颜色基本一致的动图；
+     *                      未采样到的颜色取最接近的，各帧颜色差异大时应使用局部调色板
+     */
+    public static void saveGif(List<BufferedImage> frames, int delay, OutputStream out, boolean globalPalette) {
+        GifEncoder encoder = newEncoder(parallel && frames.size() > 1);
+        if (globalPalette) {
+            encoder.setGlobalPalette(frames);
+        }
         encoder.start(out);
 
         encoder.setDelay(delay);
@@ -56,8 +105,7 @@ public class GifHelper {
     }
 
     public static void saveGif(List<ImmutablePair<BufferedImage, Integer>> frames, OutputStream out) {
-        GifEncoder encoder = new GifEncoder();
-        encoder.setRepeat(0);
+        GifEncoder encoder = newEncoder(parallel && frames.size() > 1);
         encoder.start(out);
 
         for (ImmutablePair<BufferedImage, Integer> frame : frames) {
@@ -66,4 +114,64 @@ public class GifHelper {
         }
         encoder.finish();
     }
+
+
+    /**
+     * 边生成边编码的gif输出，用完之后需要 close/finish
+     *
+     * @param out           输出流，不会被关闭
+     * @param globalPalette true 表示用前几帧训练全局调色板，适用于文字、表情类各帧颜色基本一致的动图
+     * @return
+     */
+    public static GifSink newSink(OutputStream out, boolean globalPalette) {
+        return new GifSink(newEncoder(parallel), out, globalPalette ? GifSink.DEFAULT_LOOK_AHEAD : 0);
+    }
+
+    /**
+     * 边生成边编码的动图输出，用完之后需要 close/finish
+     *
+     * @param out           输出流，不会被关闭
+     * @param globalPalette gif时是否使用全局调色板
+     * @param apng          true 表示输出真彩色的apng，不做颜色量化
+     * @return
+     */
+    public static GifSink newSink(OutputStream out, boolean globalPalette, boolean apng) {
+        return newSink(out, globalPalette, apng, null);
+    }
+
+    /**
+     * 边生成边编码的动图输出，用完之后需要 close/finish
+     *
+     * @param out           输出流，不会被关闭
+     * @param globalPalette gif时是否使用全局调色板
+     * @param apng          true 表示输出真彩色的apng，不做颜色量化
+     * @param budget        帧预算，null 表示不限制；建议配合 {@link GifSink#setExpectedFrames(int)} 使用
+     * @return
+     */
+    public static GifSink newSink(OutputStream out, boolean globalPalette, boolean apng, FrameBudget budget) {
+        if (apng) {
+            return new GifSink(newApngEncoder(-1), out, 0, budget);
+        }
+        return new GifSink(newEncoder(parallel), out, globalPalette ? GifSink.DEFAULT_LOOK_AHEAD : 0, budget);
+    }
+
+    /**
+     * 边生成边编码的apng输出，用完之后需要 close/finish
+     *
+     * @param out          输出流，不会被关闭
+     * @param deflateLevel 压缩等级 [0, 9]，-1 表示默认等级
+     * @return
+     */
+    public static GifSink newApngSink(OutputStream out, int deflateLevel) {
+        return new GifSink(newApngEncoder(deflateLevel), out, 0);
+    }
+
+    private static ApngEncoder newApngEncoder(int deflateLevel) {
+        ApngEncoder encoder = new ApngEncoder();
+        encoder.setRepeat(0);
+        encoder.setParallel(parallel);
+        encoder.setDeflateLevel(deflateLevel);
+        encoder.setDeltaFrames(true);
+        return encoder;
+    }
 }
@@ -0,0 +1,342 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import com.github.hui.quick.plugin.base.CanvasPool;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 边生成边编码的gif输出，生产者每画好一帧就交给编码器，不需要先把所有帧都保存下来
+ * <p>
+ * - 编码器可以是 GifEncoder 或 ApngEncoder，全局调色板只对gif有效
+ * - accept 返回之后，传入的帧就不再被引用，调用方可以直接复用同一张画布绘制下一帧
+ * - 全局调色板模式下，先缓存前 lookAhead 帧用于训练调色板，之后的帧直接编码
+ * - 设置帧预算时，相同的连续帧合并输出，超出预算时按比例抽帧，见 {@link FrameBudget}
+ * <p>
+ * Created by @author yihui in 18:30 26/10/19.
+ */
+public class GifSink implements Closeable {
+
+    /**
+     * 全局调色板模式下，默认用于训练调色板的帧数
+     */
+    public static final int DEFAULT_LOOK_AHEAD = 8;
+
+    private final FrameEncoder encoder;
+
+    /**
+     * 训练全局调色板之前缓存的帧数，0 表示各帧使用局部调色板
+     */
+    private final int lookAhead;
+
+    private final List<BufferedImage> buffered = new ArrayList<>();
+
+    private final List<Integer> delays = new ArrayList<>();
+
+    /**
+     * 调色板是否已经确定，确定之后的帧直接编码
+     */
+    private boolean paletteReady;
+
+    private boolean finished;
+
+    private boolean ok;
+
+    /**
+     * 帧预算，null 表示每一帧都直接输出
+     */
+    private final FrameBudget budget;
+
+    /**
+     * 统计已输出的字节数，只在设置了帧预算时使用
+     */
+    private CountingStream counter;
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * 预计输入的帧数，<=0 表示未知，此时超出预算之后的帧都合并到最后一帧
+     */
+    private int expectedFrames;
+
+    /**
+     * 已输入的帧数
+     */
+    private int index;
+
+    /**
+     * 已交给编码器的帧数
+     */
+    private int emitted;
+
+    /**
+     * 抽帧的累计配额，>=1 时保留一帧
+     */
+    private double credit;
+
+    /**
+     * 等待输出的帧，需要等后面的帧确定之后才知道它的展示时间
+     */
+    private BufferedImage pending;
+
+    private int pendingDelay;
+
+    private BufferedImage spare;
+
+    /**
+     * @param encoder   配置好的编码器，尚未start
+     * @param out       输出流，不会被关闭
+     * @param lookAhead 训练全局调色板的帧数，0 表示各帧使用局部调色板；非gif编码器时忽略
+     */
+    public GifSink(FrameEncoder encoder, OutputStream out, int lookAhead) {
+        this(encoder, out, lookAhead, null);
+    }
+
+    /**
+     * @param encoder   配置好的编码器，尚未start
+     * @param out       输出流，不会被关闭
+     * @param lookAhead 训练全局调色板的帧数，0 表示各帧使用局部调色板；非gif编码器时忽略
+     * @param budget    帧预算，null 表示不限制
+     */
+    public GifSink(FrameEncoder encoder, OutputStream out, int lookAhead, FrameBudget budget) {
+        this.encoder = encoder;
+        this.lookAhead = encoder instanceof GifEncoder ? Math.max(0, lookAhead) : 0;
+        this.paletteReady = this.lookAhead == 0;
+        this.budget = budget;
+        if (budget != null && out != null) {
+            out = counter = new CountingStream(out);
+        }
+        // 文件头直接输出
+        this.ok = encoder.start(out);
+    }
+
+    /**
+     * 预计输入的帧数，帧预算按这个数量均匀抽帧
+     *
+     * @param expectedFrames
+     * @return
+     */
+    public GifSink setExpectedFrames(int expectedFrames) {
+        this.expectedFrames = expectedFrames;
+        return this;
+    }
+
+    /**
+     * 输出一帧
+     *
+     * @param frame 帧图片，返回之后调用方可以复用或归还
+     * @param delay 帧的展示时间，单位ms
+     * @return false 表示编码失败
+     */
+    public boolean accept(BufferedImage frame, int delay) {
+        return accept(frame, delay, null);
+    }
+
+    /**
+     * 输出一帧，并告知相对上一帧可能变化的区域，编码器只读取、比较这个区域
+     * <p>
+     * 设置了帧预算或还在训练调色板时，帧可能被合并或缓存，此时按整帧处理
+     *
+     * @param frame 帧图片，返回之后调用方可以复用或归还
+     * @param delay 帧的展示时间，单位ms
+     * @param dirty 相对上一次传入的帧可能变化的区域，区域之外的像素必须完全一致；null 表示整帧
+     * @return false 表示编码失败
+     */
+    public boolean accept(BufferedImage frame, int delay, Rectangle dirty) {
+        if (!ok || finished) {
+            return false;
+        }
+        if (budget == null) {
+            return emit(frame, delay, dirty);
+        }
+
+        int i = index++;
+        if (pending == null) {
+            pending = copy(frame, null);
+            pendingDelay = delay;
+            return ok;
+        }
+        if (!admit(i)) {
+            // 丢弃这一帧，展示时间累加到前一帧上
+            pendingDelay += delay;
+            return ok;
+        }
+
+        spare = copy(frame, spare);
+        if (Arrays.equals(pixels(spare), pixels(pending))) {
+            pendingDelay += delay;
+            return ok;
+        }
+
+        emit(pending, pendingDelay, null);
+        emitted++;
+        BufferedImage tmp = pending;
+        pending = spare;
+        spare = tmp;
+        pendingDelay = delay;
+        return ok;
+    }
+
+    /**
+     * 是否保留第i帧，根据剩余的预算与剩余的输入帧数均匀抽帧
+     */
+    private boolean admit(int i) {
+        // 除去等待输出的帧之外，还能输出的帧数
+        long allow = budget.getMaxFrames() == null ? Long.MAX_VALUE : budget.getMaxFrames() - emitted - 1L;
+        if (emitted > 0) {
+            if (budget.getMaxBytes() != null) {
+                // 缓存中训练调色板的帧、编码中的帧还不知道大小，按已编码帧的平均大小计入
+                int unsized = buffered.size() + encoder.pendingFrames();
+                int sized = emitted - unsized;
+                // 已写出的，加上编码器缓存在内存中还没写出的(apng)
+                long bytes = (counter == null ? 0 : counter.count) + encoder.bufferedBytes();
+                if (bytes > 0 && sized > 0) {
+                    allow = Math.min(allow, (budget.getMaxBytes() - bytes) * sized / bytes - unsized);
+                }
+            }
+            long cost = System.currentTimeMillis() - startTime;
+            if (budget.getMaxMillis() != null && cost > 0) {
+                allow = Math.min(allow, (budget.getMaxMillis() - cost) * emitted / cost);
+            }
+        }
+        if (allow <= 0) {
+            return false;
+        }
+
+        int remaining = expectedFrames - i;
+        if (expectedFrames <= 0 || allow >= remaining) {
+            return true;
+        }
+        credit += (double) allow / remaining;
+        if (credit >= 1) {
+            credit -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean emit(BufferedImage frame, int delay, Rectangle dirty) {
+        if (!paletteReady) {
+            // 调色板还没有确定，先保存一份拷贝
+            buffered.add(copy(frame));
+            delays.add(delay);
+            if (buffered.size() >= lookAhead) {
+                flushBuffered();
+            }
+            return ok;
+        }
+
+        encoder.setDelay(delay);
+        return ok = encoder.addFrame(frame, dirty);
+    }
+
+    /**
+     * 输出剩余的帧以及文件结束符
+     *
+     * @return false 表示编码失败
+     */
+    public boolean finish() {
+        if (!finished) {
+            finished = true;
+            if (pending != null) {
+                emit(pending, pendingDelay, null);
+                CanvasPool.release(pending);
+                CanvasPool.release(spare);
+                pending = spare = null;
+            }
+            flushBuffered();
+            ok = encoder.finish() && ok;
+        }
+        return ok;
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    /**
+     * 用缓存的帧训练全局调色板，然后依次编码
+     */
+    private void flushBuffered() {
+        paletteReady = true;
+        if (buffered.isEmpty()) {
+            return;
+        }
+
+        ((GifEncoder) encoder).setGlobalPalette(buffered);
+        for (int i = 0; i < buffered.size(); i++) {
+            encoder.setDelay(delays.get(i));
+            ok = ok && encoder.addFrame(buffered.get(i));
+            CanvasPool.release(buffered.get(i));
+        }
+        buffered.clear();
+        delays.clear();
+    }
+
+    private static BufferedImage copy(BufferedImage frame) {
+        int type = frame.getType() == BufferedImage.TYPE_INT_RGB || frame.getType() == BufferedImage.TYPE_3BYTE_BGR ?
+                frame.getType() : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage copy = CanvasPool.lease(frame.getWidth(), frame.getHeight(), type);
+        return draw(frame, copy);
+    }
+
+    /**
+     * 拷贝为 INT_ARGB，用于比较相邻两帧是否相同
+     *
+     * @param frame
+     * @param target 复用的画布，大小不一致时重新申请
+     * @return
+     */
+    private static BufferedImage copy(BufferedImage frame, BufferedImage target) {
+        if (target == null || target.getWidth() != frame.getWidth() || target.getHeight() != frame.getHeight()) {
+            CanvasPool.release(target);
+            target = CanvasPool.lease(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        }
+        return draw(frame, target);
+    }
+
+    private static BufferedImage draw(BufferedImage frame, BufferedImage target) {
+        Graphics2D g2d = target.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(frame, 0, 0, null);
+        g2d.dispose();
+        return target;
+    }
+
+    private static int[] pixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+
+    /**
+     * 统计写入的字节数；本身带缓冲，编码器不会再包装一层，写入即计数
+     */
+    private static class CountingStream extends BufferedOutputStream {
+        private long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+            count++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            count += len;
+        }
+    }
+}
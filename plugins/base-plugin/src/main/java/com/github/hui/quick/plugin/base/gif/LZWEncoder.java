@@ -97,10 +97,20 @@ public class LZWEncoder {
     byte[] accum = new byte[256];
     //----------------------------------------------------------------------------
     LZWEncoder(int width, int height, byte[] pixels, int color_depth) {
+        reset(width, height, pixels, color_depth);
+    }
+    // Reusable encoder, call reset before each encode
+    LZWEncoder() {
+    }
+    // Points the encoder to the next image, the hash tables and the packet
+    // accumulator are kept so that encoding many frames allocates nothing
+    void reset(int width, int height, byte[] pixels, int color_depth) {
         imgW = width;
         imgH = height;
         pixAry = pixels;
         initCodeSize = Math.max(2, color_depth);
+        cur_accum = 0;
+        cur_bits = 0;
     }
     // Add a character to the end of the current packet, and if it is 254
     // characters, flush the packet to disk.
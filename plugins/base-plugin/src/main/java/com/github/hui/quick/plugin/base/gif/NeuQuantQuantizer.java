@@ -0,0 +1,40 @@
+package com.github.hui.quick.plugin.base.gif;
+
+/**
+ * 基于 NeuQuant 神经网络的量化，效果好但是最慢，GifEncoder之前的默认实现
+ * <p>
+ * Created by @author yihui in 15:30 26/10/19.
+ */
+public class NeuQuantQuantizer implements Quantizer {
+
+    /**
+     * 采样间隔 [1, 30]，越小效果越好，速度越慢
+     */
+    private final int sample;
+
+    public NeuQuantQuantizer() {
+        this(10);
+    }
+
+    public NeuQuantQuantizer(int sample) {
+        this.sample = Math.max(1, sample);
+    }
+
+    @Override
+    public Palette quantize(byte[] pixels, int len) {
+        NeuQuant nq = new NeuQuant(pixels, len, sample);
+        byte[] tab = nq.process();
+        // convert map from BGR to RGB
+        for (int i = 0; i < tab.length; i += 3) {
+            byte temp = tab[i];
+            tab[i] = tab[i + 2];
+            tab[i + 2] = temp;
+        }
+        return new Palette(tab) {
+            @Override
+            protected int search(int r, int g, int b) {
+                return nq.map(b, g, r);
+            }
+        };
+    }
+}
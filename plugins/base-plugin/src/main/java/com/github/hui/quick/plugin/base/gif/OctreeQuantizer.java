@@ -0,0 +1,167 @@
+package com.github.hui.quick.plugin.base.gif;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 八叉树量化，速度比 NeuQuant 快很多，渐变较多的图片效果略差
+ * <p>
+ * Created by @author yihui in 15:55 26/10/19.
+ */
+public class OctreeQuantizer implements Quantizer {
+
+    private static final int MAX_DEPTH = 8;
+
+    private static final int MAX_COLORS = 256;
+
+    @Override
+    public Palette quantize(byte[] pixels, int len) {
+        Octree tree = new Octree();
+        for (int i = 0; i + 2 < len; i += 3) {
+            tree.add(pixels[i + 2] & 0xff, pixels[i + 1] & 0xff, pixels[i] & 0xff);
+        }
+        return tree.toPalette();
+    }
+
+    private static int childIndex(int r, int g, int b, int level) {
+        int shift = 7 - level;
+        return ((r >> shift) & 1) << 2 | ((g >> shift) & 1) << 1 | ((b >> shift) & 1);
+    }
+
+    private static class Node {
+        Node[] children;
+        boolean leaf;
+        long count, rSum, gSum, bSum;
+        int index;
+
+        void add(int r, int g, int b) {
+            ++count;
+            rSum += r;
+            gSum += g;
+            bSum += b;
+        }
+    }
+
+    private static class Octree {
+        private final Node root = new Node();
+        /**
+         * 每层可以合并的中间节点
+         */
+        @SuppressWarnings("unchecked")
+        private final List<Node>[] reducible = new List[MAX_DEPTH];
+        private int leafCount;
+        /**
+         * 连续相同的颜色很常见，直接累加到上一次的叶子节点
+         */
+        private Node lastLeaf;
+        private int lastRgb;
+
+        Octree() {
+            for (int i = 0; i < MAX_DEPTH; i++) {
+                reducible[i] = new ArrayList<>();
+            }
+            root.children = new Node[8];
+            reducible[0].add(root);
+        }
+
+        void add(int r, int g, int b) {
+            int rgb = r << 16 | g << 8 | b;
+            if (lastLeaf != null && rgb == lastRgb) {
+                lastLeaf.add(r, g, b);
+                return;
+            }
+            Node node = root;
+            for (int level = 0; !node.leaf; level++) {
+                int idx = childIndex(r, g, b, level);
+                Node child = node.children[idx];
+                if (child == null) {
+                    child = new Node();
+                    if (level + 1 == MAX_DEPTH) {
+                        child.leaf = true;
+                        ++leafCount;
+                    } else {
+                        child.children = new Node[8];
+                        reducible[level + 1].add(child);
+                    }
+                    node.children[idx] = child;
+                }
+                node = child;
+            }
+            node.add(r, g, b);
+            lastLeaf = node;
+            lastRgb = rgb;
+            if (leafCount > MAX_COLORS) {
+                reduce();
+            }
+        }
+
+        /**
+         * 将最深一层最后加入的中间节点的子节点合并
+         */
+        private void reduce() {
+            int level = MAX_DEPTH - 1;
+            while (level > 0 && reducible[level].isEmpty()) {
+                --level;
+            }
+            List<Node> nodes = reducible[level];
+            Node node = nodes.remove(nodes.size() - 1);
+            int merged = 0;
+            for (Node child : node.children) {
+                if (child != null) {
+                    node.count += child.count;
+                    node.rSum += child.rSum;
+                    node.gSum += child.gSum;
+                    node.bSum += child.bSum;
+                    ++merged;
+                }
+            }
+            node.children = null;
+            node.leaf = true;
+            leafCount -= merged - 1;
+            // 合并之后上一次的叶子节点可能已经不在树上了
+            lastLeaf = null;
+        }
+
+        Palette toPalette() {
+            List<Node> leaves = new ArrayList<>(leafCount);
+            collect(root, leaves);
+            byte[] tab = new byte[Math.max(leaves.size(), 1) * 3];
+            for (int i = 0; i < leaves.size(); i++) {
+                Node leaf = leaves.get(i);
+                leaf.index = i;
+                long count = Math.max(leaf.count, 1);
+                tab[i * 3] = (byte) (leaf.rSum / count);
+                tab[i * 3 + 1] = (byte) (leaf.gSum / count);
+                tab[i * 3 + 2] = (byte) (leaf.bSum / count);
+            }
+            return new Palette(tab) {
+                @Override
+                protected int search(int r, int g, int b) {
+                    Node node = root;
+                    for (int level = 0; !node.leaf; level++) {
+                        node = node.children[childIndex(r, g, b, level)];
+                        if (node == null) {
+                            // 没有出现过的颜色
+                            return findNearest(r, g, b);
+                        }
+                    }
+                    return node.index;
+                }
+            };
+        }
+
+        private void collect(Node node, List<Node> leaves) {
+            if (node.leaf) {
+                if (node.count > 0) {
+                    leaves.add(node);
+                }
+                return;
+            }
+            for (Node child : node.children) {
+                if (child != null) {
+                    collect(child, leaves);
+                }
+            }
+        }
+    }
+}
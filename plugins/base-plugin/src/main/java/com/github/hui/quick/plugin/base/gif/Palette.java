@@ -0,0 +1,144 @@
+package com.github.hui.quick.plugin.base.gif;
+
+/**
+ * 量化生成的调色板
+ * <p>
+ * Created by @author yihui in 15:25 26/10/19.
+ */
+public abstract class Palette {
+
+    /**
+     * RGB排列的颜色表
+     */
+    protected final byte[] colorTab;
+
+    /**
+     * 颜色数
+     */
+    protected final int size;
+
+    protected Palette(byte[] colorTab) {
+        this.colorTab = colorTab;
+        this.size = colorTab.length / 3;
+    }
+
+    public byte[] getColorTab() {
+        return colorTab;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 映射次数超过这个值后才创建缓存，delta帧等小区域不值得申请缓存
+     */
+    private static final int CACHE_THRESHOLD = 4096;
+
+    /**
+     * 以RGB565为下标的直接映射缓存，每一项保存 rgb << 8 | index，命中时需要校验完整的rgb，所以结果与不缓存时一致
+     */
+    private volatile int[] cache;
+
+    private int lookups;
+
+    /**
+     * 返回与指定颜色最接近的调色板下标，重复出现的颜色 O(1) 返回，支持多线程同时调用
+     *
+     * @param r
+     * @param g
+     * @param b
+     * @return
+     */
+    public final int map(int r, int g, int b) {
+        int[] table = cache;
+        if (table == null) {
+            if (++lookups < CACHE_THRESHOLD) {
+                return search(r, g, b);
+            }
+            table = newCache();
+            cache = table;
+        }
+
+        int rgb = r << 16 | g << 8 | b;
+        int slot = (r >> 3) << 11 | (g >> 2) << 5 | (b >> 3);
+        int entry = table[slot];
+        if (entry >>> 8 == rgb) {
+            return entry & 0xff;
+        }
+        int index = search(r, g, b);
+        // int的写入是原子的，多线程同时写同一项也不会读到错误的值
+        table[slot] = rgb << 8 | index;
+        return index;
+    }
+
+    private static int[] newCache() {
+        // 全0表示 rgb=0 -> 0，而黑色只会落在第0项，所以只需要将第0项填充为一个不会落在这里的颜色(白色)
+        int[] table = new int[1 << 16];
+        table[0] = 0xffffff << 8;
+        return table;
+    }
+
+    /**
+     * 查找与指定颜色最接近的调色板下标，需要支持多线程同时调用
+     *
+     * @param r
+     * @param g
+     * @param b
+     * @return
+     */
+    protected abstract int search(int r, int g, int b);
+
+    /**
+     * true 表示调色板包含了图片的所有颜色，此时无需抖动
+     *
+     * @return
+     */
+    public boolean isExact() {
+        return false;
+    }
+
+    /**
+     * true 表示调色板包含了这些 BGR 像素的所有颜色；全局调色板只由部分像素训练，需要逐帧确认
+     *
+     * @param pixels
+     * @param len
+     * @return
+     */
+    public boolean covers(byte[] pixels, int len) {
+        return false;
+    }
+
+    public int getRed(int index) {
+        return colorTab[index * 3] & 0xff;
+    }
+
+    public int getGreen(int index) {
+        return colorTab[index * 3 + 1] & 0xff;
+    }
+
+    public int getBlue(int index) {
+        return colorTab[index * 3 + 2] & 0xff;
+    }
+
+    /**
+     * 遍历整个调色板，查找欧式距离最近的颜色
+     */
+    protected int findNearest(int r, int g, int b) {
+        int best = 0, min = Integer.MAX_VALUE;
+        for (int i = 0, k = 0; i < size; i++) {
+            int dr = r - (colorTab[k++] & 0xff);
+            int dg = g - (colorTab[k++] & 0xff);
+            int db = b - (colorTab[k++] & 0xff);
+            int d = dr * dr + dg * dg + db * db;
+            if (d < min) {
+                min = d;
+                best = i;
+                if (d == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+}
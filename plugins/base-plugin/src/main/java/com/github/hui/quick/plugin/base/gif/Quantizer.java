@@ -0,0 +1,20 @@
+package com.github.hui.quick.plugin.base.gif;
+
+/**
+ * gif颜色量化，将图片的颜色压缩到不超过256色的调色板中
+ * <p>
+ * 实现类需要是无状态的，GifEncoder并行编码时会在多个线程中同时调用
+ * <p>
+ * Created by @author yihui in 15:20 26/10/19.
+ */
+public interface Quantizer {
+
+    /**
+     * 根据图片像素生成调色板
+     *
+     * @param pixels BGR排列的像素
+     * @param len    有效字节数
+     * @return
+     */
+    Palette quantize(byte[] pixels, int len);
+}
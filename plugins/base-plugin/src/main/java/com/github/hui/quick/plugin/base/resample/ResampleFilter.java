@@ -0,0 +1,69 @@
+package com.github.hui.quick.plugin.base.resample;
+
+/**
+ * 缩放时采用的插值核
+ * <p>
+ * Created by @author yihui in 16:05 26/10/18.
+ */
+public enum ResampleFilter {
+    /**
+     * 双线性，采用逐级减半的方式缩小，速度最快
+     */
+    BILINEAR(1) {
+        @Override
+        double weight(double x) {
+            x = Math.abs(x);
+            return x < 1 ? 1 - x : 0;
+        }
+    },
+
+    /**
+     * 双三次 (Catmull-Rom)
+     */
+    BICUBIC(2) {
+        @Override
+        double weight(double x) {
+            x = Math.abs(x);
+            if (x < 1) {
+                return (1.5 * x - 2.5) * x * x + 1;
+            } else if (x < 2) {
+                return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+            }
+            return 0;
+        }
+    },
+
+    /**
+     * Lanczos3，缩小图片时效果最好
+     */
+    LANCZOS(3) {
+        @Override
+        double weight(double x) {
+            x = Math.abs(x);
+            if (x < 1e-8) {
+                return 1;
+            } else if (x >= 3) {
+                return 0;
+            }
+
+            double px = Math.PI * x;
+            return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+        }
+    };
+
+
+    /**
+     * 插值核的半径
+     */
+    private final int radius;
+
+    ResampleFilter(int radius) {
+        this.radius = radius;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    abstract double weight(double x);
+}
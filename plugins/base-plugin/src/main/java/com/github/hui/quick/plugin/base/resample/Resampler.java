@@ -0,0 +1,381 @@
+package com.github.hui.quick.plugin.base.resample;
+
+import com.github.hui.quick.plugin.base.CanvasPool;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 图片缩放，用于替换 Image.getScaledInstance
+ * <p>
+ * - BILINEAR: 借助 Graphics2D 逐级减半缩小，避免一次缩小过多导致的锯齿
+ * - BICUBIC/LANCZOS: 直接在 int[] 像素上做水平+垂直两次可分离卷积，大图按行分段多线程处理；
+ *   缩小倍数较大时先做整数倍的区域平均，再进行卷积
+ * <p>
+ * 注意：目标尺寸与原图一致时直接返回原图；目标尺寸为空时返回 null，与 drawImage 绘制空区域一样什么也不画，调用方跳过绘制即可；
+ * 否则返回的是新画布（从 CanvasPool 中借出）
+ * <p>
+ * Created by @author yihui in 16:12 26/10/18.
+ */
+public class Resampler {
+
+    /**
+     * 像素数超过这个值时，才采用多线程处理
+     */
+    private static final int PARALLEL_THRESHOLD = 256 * 256;
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 卷积之前先做整数倍区域平均时，保留的缩放倍数
+     */
+    private static final int REDUCE_GAP = 2;
+
+    /**
+     * 权重采用定点数表示，避免浮点运算
+     */
+    private static final int PRECISION_BITS = 14;
+
+    private static final int HALF = 1 << (PRECISION_BITS - 1);
+
+
+    public static BufferedImage resize(BufferedImage src, int w, int h) {
+        return resize(src, w, h, RenderQuality.QUALITY);
+    }
+
+
+    /**
+     * 根据渲染质量选择插值方式
+     * <p>
+     * FAST -> BILINEAR, BALANCED -> BICUBIC, QUALITY -> LANCZOS
+     *
+     * @param src
+     * @param w
+     * @param h
+     * @param quality
+     * @return
+     */
+    public static BufferedImage resize(BufferedImage src, int w, int h, RenderQuality quality) {
+        if (quality == RenderQuality.FAST) {
+            return resize(src, w, h, ResampleFilter.BILINEAR);
+        } else if (quality == RenderQuality.BALANCED) {
+            return resize(src, w, h, ResampleFilter.BICUBIC);
+        } else {
+            return resize(src, w, h, ResampleFilter.LANCZOS);
+        }
+    }
+
+
+    public static BufferedImage resize(BufferedImage src, int w, int h, ResampleFilter filter) {
+        if (w <= 0 || h <= 0) {
+            return null;
+        }
+
+        if (src.getWidth() == w && src.getHeight() == h) {
+            return src;
+        }
+
+        if (filter == ResampleFilter.BILINEAR) {
+            return progressiveBilinear(src, w, h);
+        }
+        return convolve(src, w, h, filter);
+    }
+
+
+    /**
+     * 逐级减半的双线性缩放
+     */
+    private static BufferedImage progressiveBilinear(BufferedImage src, int w, int h) {
+        int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage cur = src;
+        int curW = src.getWidth(), curH = src.getHeight();
+        do {
+            curW = curW > w ? Math.max(curW >> 1, w) : w;
+            curH = curH > h ? Math.max(curH >> 1, h) : h;
+
+            BufferedImage next = CanvasPool.lease(curW, curH, type);
+            Graphics2D g2d = next.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(cur, 0, 0, curW, curH, null);
+            g2d.dispose();
+
+            if (cur != src) {
+                CanvasPool.release(cur);
+            }
+            cur = next;
+        } while (curW != w || curH != h);
+        return cur;
+    }
+
+
+    /**
+     * 可分离卷积缩放，先水平后垂直，中间结果为预乘alpha的ARGB
+     */
+    private static BufferedImage convolve(BufferedImage src, int w, int h, ResampleFilter filter) {
+        final boolean alpha = src.getColorModel().hasAlpha();
+        int srcW = src.getWidth(), srcH = src.getHeight();
+
+        // 缩小倍数较大时，先按整数倍做区域平均，将剩余的缩放比例控制在2倍左右，可以大幅减少卷积的采样点
+        int factorX = Math.max(1, srcW / w / REDUCE_GAP), factorY = Math.max(1, srcH / h / REDUCE_GAP);
+        boolean reduce = factorX > 1 || factorY > 1;
+
+        // 需要区域平均时，预乘alpha在区域平均的过程中完成
+        int[] pixels = readPixels(src, alpha && !reduce);
+        if (reduce) {
+            int reduceW = (srcW + factorX - 1) / factorX, reduceH = (srcH + factorY - 1) / factorY;
+            int[] reduced = new int[reduceW * reduceH];
+            final int[] source = pixels;
+            final int sw = srcW, sh = srcH, fx = factorX, fy = factorY;
+            parallel(reduceH, srcW * srcH, (from, to) -> boxReduce(source, sw, sh, reduced, fx, fy, alpha, from, to));
+            pixels = reduced;
+            srcW = reduceW;
+            srcH = reduceH;
+        }
+
+        final int[] in = pixels;
+        final int inW = srcW;
+        final Weights xWeights = new Weights(srcW, w, filter);
+        final Weights yWeights = new Weights(srcH, h, filter);
+
+        // 水平方向: srcW x srcH -> w x srcH
+        final int[] tmp = new int[w * srcH];
+        parallel(srcH, w * srcH, (from, to) -> horizontal(in, inW, tmp, w, xWeights, from, to));
+
+        // 垂直方向: w x srcH -> w x h
+        BufferedImage out = CanvasPool.lease(w, h, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        parallel(h, w * h, (from, to) -> vertical(tmp, w, dst, yWeights, alpha, from, to));
+        return out;
+    }
+
+
+    /**
+     * 读取像素，有透明度时转换为预乘alpha，避免透明像素的颜色渗透到边缘
+     */
+    private static int[] readPixels(BufferedImage src, boolean premultiply) {
+        int w = src.getWidth(), h = src.getHeight();
+        int[] pixels;
+        if (src.getType() == BufferedImage.TYPE_INT_ARGB || src.getType() == BufferedImage.TYPE_INT_RGB) {
+            // 直接拷贝raster，比 getRGB 逐像素转换要快
+            pixels = (int[]) src.getRaster().getDataElements(0, 0, w, h, null);
+        } else {
+            pixels = src.getRGB(0, 0, w, h, null, 0, w);
+        }
+
+        if (!premultiply) {
+            return pixels;
+        }
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = premultiply(pixels[i]);
+        }
+        return pixels;
+    }
+
+
+    private static int premultiply(int p) {
+        int a = p >>> 24;
+        if (a == 255) {
+            return p;
+        } else if (a == 0) {
+            return 0;
+        }
+
+        int r = ((p >> 16) & 0xff) * a / 255;
+        int g = ((p >> 8) & 0xff) * a / 255;
+        int b = (p & 0xff) * a / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+
+    /**
+     * 整数倍的区域平均缩小
+     */
+    private static void boxReduce(int[] in, int srcW, int srcH, int[] out, int fx, int fy, boolean premultiply, int from, int to) {
+        int outW = (srcW + fx - 1) / fx;
+        int[] acc = new int[outW << 2];
+        for (int oy = from; oy < to; oy++) {
+            Arrays.fill(acc, 0);
+            int y0 = oy * fy, y1 = Math.min(y0 + fy, srcH);
+            for (int y = y0; y < y1; y++) {
+                int x = y * srcW, rowEnd = x + srcW;
+                for (int i = 0; x < rowEnd; i += 4) {
+                    int a = 0, r = 0, g = 0, b = 0;
+                    for (int end = Math.min(x + fx, rowEnd); x < end; x++) {
+                        int p = premultiply ? premultiply(in[x]) : in[x];
+                        a += p >>> 24;
+                        r += (p >> 16) & 0xff;
+                        g += (p >> 8) & 0xff;
+                        b += p & 0xff;
+                    }
+                    acc[i] += a;
+                    acc[i + 1] += r;
+                    acc[i + 2] += g;
+                    acc[i + 3] += b;
+                }
+            }
+
+            int rows = y1 - y0;
+            int outOffset = oy * outW;
+            for (int ox = 0, i = 0; ox < outW; ox++, i += 4) {
+                int n = rows * (Math.min((ox + 1) * fx, srcW) - ox * fx);
+                int half = n >> 1;
+                out[outOffset + ox] = ((acc[i] + half) / n << 24) | ((acc[i + 1] + half) / n << 16)
+                        | ((acc[i + 2] + half) / n << 8) | ((acc[i + 3] + half) / n);
+            }
+        }
+    }
+
+
+    private static void horizontal(int[] in, int srcW, int[] out, int w, Weights weights, int from, int to) {
+        final int[] starts = weights.start, counts = weights.count, ws = weights.weights;
+        final int stride = weights.stride;
+        for (int y = from; y < to; y++) {
+            int srcOffset = y * srcW;
+            int outOffset = y * w;
+            for (int x = 0; x < w; x++) {
+                int offset = srcOffset + starts[x];
+                int count = counts[x];
+                int wi = x * stride;
+                int a = HALF, r = HALF, g = HALF, b = HALF;
+                for (int k = 0; k < count; k++) {
+                    int p = in[offset + k];
+                    int f = ws[wi + k];
+                    a += (p >>> 24) * f;
+                    r += ((p >> 16) & 0xff) * f;
+                    g += ((p >> 8) & 0xff) * f;
+                    b += (p & 0xff) * f;
+                }
+                out[outOffset + x] = pack(a, r, g, b);
+            }
+        }
+    }
+
+
+    private static void vertical(int[] in, int w, int[] out, Weights weights, boolean alpha, int from, int to) {
+        final int[] ws = weights.weights;
+        int[] acc = new int[w << 2];
+        for (int y = from; y < to; y++) {
+            Arrays.fill(acc, HALF);
+            int start = weights.start[y];
+            int count = weights.count[y];
+            int wi = y * weights.stride;
+            for (int k = 0; k < count; k++) {
+                int inOffset = (start + k) * w;
+                int f = ws[wi + k];
+                for (int x = 0, i = 0; x < w; x++) {
+                    int p = in[inOffset + x];
+                    acc[i++] += (p >>> 24) * f;
+                    acc[i++] += ((p >> 16) & 0xff) * f;
+                    acc[i++] += ((p >> 8) & 0xff) * f;
+                    acc[i++] += (p & 0xff) * f;
+                }
+            }
+
+            int outOffset = y * w;
+            for (int x = 0, i = 0; x < w; x++, i += 4) {
+                int p = pack(acc[i], acc[i + 1], acc[i + 2], acc[i + 3]);
+                out[outOffset + x] = alpha ? unPremultiply(p) : (p | 0xff000000);
+            }
+        }
+    }
+
+
+    /**
+     * 定点数转回 0-255 并打包
+     */
+    private static int pack(int a, int r, int g, int b) {
+        return (clamp(a) << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+
+
+    private static int clamp(int v) {
+        v >>= PRECISION_BITS;
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+
+    private static int unPremultiply(int p) {
+        int a = p >>> 24;
+        if (a == 0) {
+            return 0;
+        } else if (a == 255) {
+            return p;
+        }
+
+        int r = Math.min(255, ((p >> 16) & 0xff) * 255 / a);
+        int g = Math.min(255, ((p >> 8) & 0xff) * 255 / a);
+        int b = Math.min(255, (p & 0xff) * 255 / a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+
+    /**
+     * 按行分段，像素较多时交给 ForkJoin 公共线程池并行处理
+     */
+    private static void parallel(int rows, int pixels, BandTask task) {
+        int bands = Math.min(PARALLELISM, rows);
+        if (pixels < PARALLEL_THRESHOLD || bands <= 1) {
+            task.run(0, rows);
+            return;
+        }
+
+        IntStream.range(0, bands).parallel().forEach(band -> task.run(rows * band / bands, rows * (band + 1) / bands));
+    }
+
+
+    @FunctionalInterface
+    private interface BandTask {
+        void run(int from, int to);
+    }
+
+
+    /**
+     * 一维方向上，每个目标像素对应的原像素区间及权重
+     */
+    private static class Weights {
+        private final int[] start;
+        private final int[] count;
+        private final int[] weights;
+        private final int stride;
+
+        Weights(int srcLen, int dstLen, ResampleFilter filter) {
+            double scale = (double) srcLen / dstLen;
+            // 缩小时需要按比例扩大插值核，起到低通滤波的效果
+            double filterScale = Math.max(scale, 1);
+            double support = filter.getRadius() * filterScale;
+
+            start = new int[dstLen];
+            count = new int[dstLen];
+            stride = (int) Math.ceil(support) * 2 + 1;
+            weights = new int[dstLen * stride];
+
+            for (int i = 0; i < dstLen; i++) {
+                double center = (i + 0.5) * scale;
+                int left = Math.max(0, (int) Math.floor(center - support));
+                int right = Math.min(srcLen - 1, (int) Math.ceil(center + support) - 1);
+                int n = Math.min(right - left + 1, stride);
+
+                double[] values = new double[n];
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    values[k] = filter.weight((left + k + 0.5 - center) / filterScale);
+                    sum += values[k];
+                }
+
+                for (int k = 0; k < n; k++) {
+                    double v = sum == 0 ? 0 : values[k] / sum;
+                    weights[i * stride + k] = (int) Math.round(v * (1 << PRECISION_BITS));
+                }
+
+                start[i] = left;
+                count[i] = n;
+            }
+        }
+    }
+}
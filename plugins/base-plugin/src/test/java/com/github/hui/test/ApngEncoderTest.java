@@ -0,0 +1,192 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.gif.ApngEncoder;
+import com.github.hui.quick.plugin.base.gif.GifHelper;
+import com.github.hui.quick.plugin.base.gif.GifSink;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Created by @author yihui in 20:40 26/10/19.
+ */
+public class ApngEncoderTest {
+
+    private BufferedImage genFrame(int index, boolean alpha) {
+        BufferedImage img = new BufferedImage(240, 160, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (!alpha) {
+            g2d.setPaint(new GradientPaint(0, 0, Color.WHITE, 240, 160, new Color(120, 180, 240)));
+            g2d.fillRect(0, 0, 240, 160);
+        }
+        g2d.setColor(new Color(200, 40 + index * 9 % 200, 60, alpha && index % 2 == 1 ? 128 : 255));
+        g2d.fillOval(index * 7 % 200, index * 5 % 120, 40, 40);
+        g2d.dispose();
+        return img;
+    }
+
+    /**
+     * 解析apng，把每一帧的数据拼成一张独立的png交给ImageIO解码，再按 blend_op 合成到画布上
+     */
+    private List<BufferedImage> decode(byte[] apng, List<Integer> delays) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(apng);
+        buf.position(8);
+        byte[] ihdr = null;
+        int w = 0, h = 0, x = 0, y = 0, blend = 0, frameCount = -1, seq = 0;
+        BufferedImage canvas = null;
+        List<BufferedImage> frames = new ArrayList<>();
+        while (buf.hasRemaining()) {
+            int len = buf.getInt();
+            byte[] type = new byte[4];
+            buf.get(type);
+            byte[] data = new byte[len];
+            buf.get(data);
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(data);
+            Assert.assertEquals((int) crc.getValue(), buf.getInt());
+
+            ByteBuffer chunk = ByteBuffer.wrap(data);
+            switch (new String(type, StandardCharsets.US_ASCII)) {
+                case "IHDR":
+                    ihdr = data;
+                    canvas = new BufferedImage(chunk.getInt(), chunk.getInt(), BufferedImage.TYPE_INT_ARGB);
+                    break;
+                case "acTL":
+                    frameCount = chunk.getInt();
+                    break;
+                case "fcTL":
+                    Assert.assertEquals(seq++, chunk.getInt());
+                    w = chunk.getInt();
+                    h = chunk.getInt();
+                    x = chunk.getInt();
+                    y = chunk.getInt();
+                    delays.add(chunk.getShort() * 1000 / chunk.getShort());
+                    Assert.assertEquals(0, chunk.get());
+                    blend = chunk.get();
+                    break;
+                case "IDAT":
+                case "fdAT":
+                    int offset = 0;
+                    if (type[0] == 'f') {
+                        Assert.assertEquals(seq++, chunk.getInt());
+                        offset = 4;
+                    }
+                    byte[] header = Arrays.copyOf(ihdr, ihdr.length);
+                    ByteBuffer.wrap(header).putInt(w).putInt(h);
+                    BufferedImage frame = ImageIO.read(new ByteArrayInputStream(
+                            toPng(header, Arrays.copyOfRange(data, offset, data.length))));
+                    Graphics2D g2d = canvas.createGraphics();
+                    g2d.setComposite(blend == 0 ? AlphaComposite.Src : AlphaComposite.SrcOver);
+                    g2d.drawImage(frame, x, y, null);
+                    g2d.dispose();
+
+                    BufferedImage copy = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+                    copy.setData(canvas.getRaster());
+                    frames.add(copy);
+                    break;
+                default:
+            }
+        }
+        Assert.assertEquals(frameCount, frames.size());
+        return frames;
+    }
+
+    private byte[] toPng(byte[] ihdr, byte[] idat) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.write(new byte[]{(byte) 137, 80, 78, 71, 13, 10, 26, 10});
+        for (Object[] chunk : new Object[][]{{"IHDR", ihdr}, {"IDAT", idat}, {"IEND", new byte[0]}}) {
+            byte[] type = ((String) chunk[0]).getBytes(StandardCharsets.US_ASCII);
+            byte[] data = (byte[]) chunk[1];
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(data);
+            out.writeInt(data.length);
+            out.write(type);
+            out.write(data);
+            out.writeInt((int) crc.getValue());
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        for (boolean alpha : new boolean[]{false, true}) {
+            for (boolean delta : new boolean[]{false, true}) {
+                List<BufferedImage> imgs = new ArrayList<>();
+                ApngEncoder encoder = new ApngEncoder();
+                encoder.setRepeat(0);
+                encoder.setDeltaFrames(delta);
+                encoder.setParallel(true);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                encoder.start(out);
+                for (int i = 0; i < 30; i++) {
+                    // 连续两帧相同
+                    BufferedImage img = genFrame(i / 2 * 2, alpha);
+                    imgs.add(img);
+                    encoder.setDelay(40 + i);
+                    Assert.assertTrue(encoder.addFrame(img));
+                }
+                Assert.assertTrue(encoder.finish());
+
+                // 不支持apng时展示第一帧
+                BufferedImage first = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+                Assert.assertEquals(imgs.get(0).getRGB(10, 10), first.getRGB(10, 10));
+
+                List<Integer> delays = new ArrayList<>();
+                List<BufferedImage> frames = decode(out.toByteArray(), delays);
+                Assert.assertEquals(imgs.size(), frames.size());
+                for (int i = 0; i < imgs.size(); i++) {
+                    Assert.assertEquals(40 + i, delays.get(i).intValue());
+                    for (int x = 0; x < 240; x += 3) {
+                        for (int y = 0; y < 160; y += 3) {
+                            Assert.assertEquals(imgs.get(i).getRGB(x, y), frames.get(i).getRGB(x, y));
+                        }
+                    }
+                }
+                System.out.println("alpha=" + alpha + " delta=" + delta + ": " + out.size() + "B");
+            }
+        }
+    }
+
+    @Test
+    public void testCompareGif() {
+        List<ImmutablePair<BufferedImage, Integer>> frames = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            frames.add(ImmutablePair.of(genFrame(i, false), 100));
+        }
+
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        GifHelper.saveGif(frames, gif);
+        System.out.println("gif: " + (System.currentTimeMillis() - start) + "ms " + gif.size() + "B");
+
+        for (int level : new int[]{1, 6, 9}) {
+            start = System.currentTimeMillis();
+            ByteArrayOutputStream apng = new ByteArrayOutputStream();
+            try (GifSink sink = GifHelper.newApngSink(apng, level)) {
+                for (ImmutablePair<BufferedImage, Integer> frame : frames) {
+                    Assert.assertTrue(sink.accept(frame.getLeft(), frame.getRight()));
+                }
+                Assert.assertTrue(sink.finish());
+            }
+            System.out.println("apng level=" + level + ": " + (System.currentTimeMillis() - start) + "ms " + apng.size() + "B");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.CanvasPool;
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Created by @author yihui in 15:02 26/10/18.
+ */
+public class CanvasPoolTest {
+
+    @Test
+    public void testLease() {
+        CanvasPool.clear();
+        CanvasPool.resetStat();
+
+        BufferedImage img = CanvasPool.lease(200, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = GraphicUtil.getG2d(img);
+        g2d.setColor(Color.RED);
+        g2d.fillRect(0, 0, 200, 100);
+        g2d.dispose();
+        CanvasPool.release(img);
+
+        // 同尺寸同类型的画布复用，且借出时已清空
+        BufferedImage reuse = CanvasPool.lease(200, 100, BufferedImage.TYPE_INT_ARGB);
+        Assert.assertSame(img, reuse);
+        Assert.assertEquals(0, reuse.getRGB(10, 10));
+
+        // 类型不同，不复用
+        CanvasPool.release(reuse);
+        BufferedImage rgb = CanvasPool.lease(200, 100, BufferedImage.TYPE_INT_RGB);
+        Assert.assertNotSame(img, rgb);
+
+        System.out.println(CanvasPool.stat());
+        Assert.assertEquals(1 / 3.0, CanvasPool.getHitRate(), 0.001);
+    }
+
+
+    @Test
+    public void testBound() {
+        CanvasPool.clear();
+        CanvasPool.resetStat();
+        CanvasPool.setMaxPoolBytes(1024 * 1024);
+
+        try {
+            // 单张 600*600*4 超过1M，不会进入缓存
+            BufferedImage big = CanvasPool.lease(600, 600, BufferedImage.TYPE_INT_ARGB);
+            CanvasPool.release(big);
+            Assert.assertNotSame(big, CanvasPool.lease(600, 600, BufferedImage.TYPE_INT_ARGB));
+            System.out.println(CanvasPool.stat());
+        } finally {
+            CanvasPool.setMaxPoolBytes(64L * 1024 * 1024);
+            CanvasPool.clear();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.gif.GifDecoder;
+import com.github.hui.quick.plugin.base.gif.GifEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+
+/**
+ * Created by @author yihui in 17:20 26/10/19.
+ */
+public class GifDecoderTest {
+
+    /**
+     * 生成一个移动方块的gif，背景色作为透明色
+     *
+     * @param count   帧数
+     * @param dispose 帧的处置方式，<0 表示默认的增量帧
+     * @return
+     */
+    private byte[] genGif(int count, int dispose) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = new GifEncoder();
+        encoder.setRepeat(0);
+        encoder.setDeltaFrames(dispose < 0);
+        encoder.start(out);
+        for (int i = 0; i < count; i++) {
+            BufferedImage img = new BufferedImage(200, 120, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, 200, 120);
+            g2d.setColor(new Color(30 + i * 7 % 200, 120, 200));
+            g2d.fillRect(i * 5 % 180, i * 3 % 100, 20, 20);
+            g2d.dispose();
+
+            if (dispose >= 0) {
+                encoder.setTransparent(Color.WHITE);
+                encoder.setDispose(dispose);
+            }
+            encoder.setDelay(50 + i % 3 * 10);
+            encoder.addFrame(img);
+        }
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    private void assertSame(BufferedImage expect, BufferedImage actual) {
+        for (int x = 0; x < expect.getWidth(); x++) {
+            for (int y = 0; y < expect.getHeight(); y++) {
+                Assert.assertEquals(expect.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingDecode() {
+        for (int dispose : new int[]{-1, 1, 2, 3}) {
+            byte[] gif = genGif(40, dispose);
+            GifDecoder decoder = new GifDecoder();
+            Assert.assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(gif)));
+
+            // 逐帧解码的结果与一次性解码一致，且始终复用同一张画布
+            GifDecoder stream = new GifDecoder();
+            Assert.assertEquals(GifDecoder.STATUS_OK, stream.open(new ByteArrayInputStream(gif)));
+            Iterator<GifDecoder.GifFrame> it = stream.frameIterator();
+            BufferedImage canvas = null;
+            int index = 0;
+            while (it.hasNext()) {
+                GifDecoder.GifFrame frame = it.next();
+                if (canvas == null) {
+                    canvas = frame.image;
+                }
+                Assert.assertSame(canvas, frame.image);
+                Assert.assertEquals(decoder.getDelay(index), frame.delay);
+                assertSame(decoder.getFrame(index), frame.image);
+                index++;
+            }
+            Assert.assertEquals(decoder.getFrameCount(), index);
+            Assert.assertEquals(GifDecoder.STATUS_OK, stream.getStatus());
+        }
+    }
+
+    @Test
+    public void testFirstFrameAndMetadata() {
+        byte[] gif = genGif(200, -1);
+
+        long start = System.currentTimeMillis();
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(new ByteArrayInputStream(gif));
+        long eager = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        GifDecoder first = new GifDecoder();
+        Assert.assertEquals(GifDecoder.STATUS_OK, first.readFirstFrame(new ByteArrayInputStream(gif)));
+        long firstCost = System.currentTimeMillis() - start;
+        Assert.assertEquals(1, first.getFrameCount());
+        Assert.assertEquals(decoder.getDelay(0), first.getDelay(0));
+        assertSame(decoder.getImage(), first.getImage());
+
+        start = System.currentTimeMillis();
+        GifDecoder meta = new GifDecoder();
+        Assert.assertEquals(GifDecoder.STATUS_OK, meta.readMetadata(new ByteArrayInputStream(gif)));
+        long metaCost = System.currentTimeMillis() - start;
+        Assert.assertEquals(decoder.getFrameCount(), meta.getFrameCount());
+        Assert.assertEquals(decoder.getFrameSize(), meta.getFrameSize());
+        Assert.assertEquals(0, meta.getLoopCount());
+        for (int i = 0; i < meta.getFrameCount(); i++) {
+            Assert.assertEquals(decoder.getDelay(i), meta.getDelay(i));
+            Assert.assertNull(meta.getFrame(i));
+        }
+        System.out.println("all frames: " + eager + "ms, first frame: " + firstCost + "ms, metadata: " + metaCost + "ms");
+    }
+}
@@ -0,0 +1,395 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.gif.Dither;
+import com.github.hui.quick.plugin.base.gif.ExactQuantizer;
+import com.github.hui.quick.plugin.base.gif.GifDecoder;
+import com.github.hui.quick.plugin.base.gif.GifEncoder;
+import com.github.hui.quick.plugin.base.gif.NeuQuantQuantizer;
+import com.github.hui.quick.plugin.base.gif.OctreeQuantizer;
+import com.github.hui.quick.plugin.base.gif.Quantizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Created by @author yihui in 14:10 26/10/19.
+ */
+public class GifEncoderTest {
+
+    private List<BufferedImage> genFrames(int count) {
+        return genFrames(count, new GradientPaint(0, 0, Color.WHITE, 300, 200, new Color(30, 120, 200)));
+    }
+
+    private List<BufferedImage> genFrames(int count, Paint bg) {
+        List<BufferedImage> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BufferedImage img = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setPaint(bg);
+            g2d.fillRect(0, 0, 300, 200);
+            g2d.setColor(Color.RED);
+            g2d.setFont(new Font("宋体", Font.BOLD, 36));
+            g2d.drawString("frame " + i, 10 + i * 5, 100);
+            g2d.dispose();
+            frames.add(img);
+        }
+        return frames;
+    }
+
+    private byte[] encode(List<BufferedImage> frames, ExecutorService executor) {
+        return encode(frames, executor, false);
+    }
+
+    private byte[] encode(List<BufferedImage> frames, ExecutorService executor, boolean globalPalette) {
+        return encode(frames, executor, globalPalette, false);
+    }
+
+    private byte[] encode(List<BufferedImage> frames, ExecutorService executor, boolean globalPalette,
+                          boolean delta) {
+        return encodeWith(frames, encoder -> {
+            encoder.setDeltaFrames(delta);
+            encoder.setExecutor(executor, 4);
+            if (globalPalette) {
+                encoder.setGlobalPalette(frames);
+            }
+        });
+    }
+
+    private byte[] encodeWith(List<BufferedImage> frames, Consumer<GifEncoder> config) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = new GifEncoder();
+        encoder.setRepeat(0);
+        config.accept(encoder);
+        encoder.start(out);
+        for (BufferedImage frame : frames) {
+            encoder.setDelay(100);
+            Assert.assertTrue(encoder.addFrame(frame));
+        }
+        Assert.assertTrue(encoder.finish());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testParallelEncode() {
+        List<BufferedImage> frames = genFrames(30);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // 预热
+            encode(frames, null);
+            encode(frames, executor);
+
+            long start = System.currentTimeMillis();
+            byte[] serial = encode(frames, null);
+            long serialCost = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            byte[] parallel = encode(frames, executor);
+            long parallelCost = System.currentTimeMillis() - start;
+
+            System.out.println("serial: " + serialCost + "ms, parallel: " + parallelCost + "ms, cpu: "
+                    + Runtime.getRuntime().availableProcessors());
+            Assert.assertArrayEquals(serial, parallel);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testGlobalPalette() {
+        // 文字动图，背景纯色
+        List<BufferedImage> frames = genFrames(30, new Color(250, 245, 230));
+        encode(frames, null, true);
+
+        long start = System.currentTimeMillis();
+        byte[] local = encode(frames, null, false);
+        long localCost = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        byte[] global = encode(frames, null, true);
+        long globalCost = System.currentTimeMillis() - start;
+        System.out.println("local palette: " + localCost + "ms " + local.length + "B, global palette: " + globalCost
+                + "ms " + global.length + "B");
+        Assert.assertTrue(global.length < local.length);
+
+        GifDecoder decoder = new GifDecoder();
+        Assert.assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(global)));
+        Assert.assertEquals(30, decoder.getFrameCount());
+        Color color = new Color(decoder.getFrame(29).getRGB(5, 5));
+        Assert.assertTrue(color.getRed() > 200 && color.getGreen() > 200 && color.getBlue() > 200);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertArrayEquals(global, encode(frames, executor, true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeltaFrames() {
+        // 打字效果的动图，每帧只多出一个字
+        List<BufferedImage> frames = new ArrayList<>();
+        String text = "一灰灰的文字动图";
+        for (int i = 0; i <= text.length(); i++) {
+            BufferedImage img = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setColor(new Color(250, 245, 230));
+            g2d.fillRect(0, 0, 400, 200);
+            g2d.setColor(Color.BLUE);
+            g2d.setFont(new Font("宋体", Font.BOLD, 36));
+            g2d.drawString(text.substring(0, i), 20, 100);
+            g2d.dispose();
+            frames.add(img);
+        }
+        // 重复的帧
+        frames.add(frames.get(frames.size() - 1));
+        encode(frames, null, true, true);
+
+        long start = System.currentTimeMillis();
+        byte[] full = encode(frames, null, true, false);
+        long fullCost = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        byte[] delta = encode(frames, null, true, true);
+        long deltaCost = System.currentTimeMillis() - start;
+        System.out.println("full frames: " + fullCost + "ms " + full.length + "B, delta frames: " + deltaCost + "ms "
+                + delta.length + "B");
+        Assert.assertTrue(delta.length < full.length);
+
+        // 两种方式解码出来的每一帧完全一致
+        GifDecoder fullDecoder = new GifDecoder();
+        fullDecoder.read(new ByteArrayInputStream(full));
+        GifDecoder deltaDecoder = new GifDecoder();
+        Assert.assertEquals(GifDecoder.STATUS_OK, deltaDecoder.read(new ByteArrayInputStream(delta)));
+        Assert.assertEquals(frames.size(), deltaDecoder.getFrameCount());
+        for (int i = 0; i < frames.size(); i++) {
+            BufferedImage a = fullDecoder.getFrame(i), b = deltaDecoder.getFrame(i);
+            for (int y = 0; y < a.getHeight(); y++) {
+                for (int x = 0; x < a.getWidth(); x++) {
+                    Assert.assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+                }
+            }
+        }
+
+        // 局部调色板 + 并行
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertArrayEquals(encode(frames, null, false, true), encode(frames, executor, false, true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testQuantizer() {
+        // 颜色不超过256种的帧，精确调色板输出与原图完全一致
+        List<BufferedImage> frames = genFrames(5, new Color(250, 245, 230));
+        byte[] exact = encodeWith(frames, encoder -> encoder.setQuantizer(new ExactQuantizer(new OctreeQuantizer())));
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(new ByteArrayInputStream(exact));
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 300; x++) {
+                Assert.assertEquals(frames.get(3).getRGB(x, y), decoder.getFrame(3).getRGB(x, y));
+            }
+        }
+        // 默认采用 NeuQuant，精确调色板需要显式指定
+        Assert.assertArrayEquals(encodeWith(frames, encoder -> encoder.setQuantizer(new NeuQuantQuantizer())),
+                encodeWith(frames, encoder -> {
+                }));
+
+        // 渐变背景，比较各量化方式的耗时
+        frames = genFrames(10);
+        encodeWith(frames, encoder -> encoder.setQuantizer(new OctreeQuantizer()));
+        Object[][] cases = {
+                {"neuquant", new NeuQuantQuantizer(), Dither.NONE},
+                {"octree", new OctreeQuantizer(), Dither.NONE},
+                {"octree + ordered", new OctreeQuantizer(), Dither.ORDERED},
+                {"octree + floyd-steinberg", new OctreeQuantizer(), Dither.FLOYD_STEINBERG},
+        };
+        for (Object[] c : cases) {
+            long start = System.currentTimeMillis();
+            byte[] gif = encodeWith(frames, encoder -> {
+                encoder.setQuantizer((Quantizer) c[1]);
+                encoder.setDither((Dither) c[2]);
+            });
+            System.out.println(c[0] + ": " + (System.currentTimeMillis() - start) + "ms " + gif.length + "B");
+
+            decoder = new GifDecoder();
+            Assert.assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(gif)));
+            Color src = new Color(frames.get(0).getRGB(150, 20)), out = new Color(decoder.getFrame(0).getRGB(150, 20));
+            Assert.assertEquals(src.getBlue(), out.getBlue(), 24);
+        }
+    }
+
+    @Test
+    public void testReuseBuffers() {
+        List<BufferedImage> frames = genFrames(30, Color.WHITE);
+        // 直接读取raster 与 绘制转换 的结果一致
+        List<BufferedImage> converted = new ArrayList<>(frames.size());
+        for (BufferedImage frame : frames) {
+            BufferedImage img = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D g2d = img.createGraphics();
+            g2d.drawImage(frame, 0, 0, null);
+            g2d.dispose();
+            converted.add(img);
+        }
+        byte[] gif = encode(frames, null, false, true);
+        Assert.assertArrayEquals(gif, encode(converted, null, false, true));
+
+        // 同一个encoder连续输出多个gif，复用的缓冲区不影响结果
+        GifEncoder encoder = new GifEncoder();
+        encoder.setRepeat(0);
+        encoder.setDeltaFrames(true);
+        for (int round = 0; round < 3; round++) {
+            long start = System.currentTimeMillis();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.start(out);
+            for (BufferedImage frame : frames) {
+                encoder.setDelay(100);
+                Assert.assertTrue(encoder.addFrame(frame));
+            }
+            Assert.assertTrue(encoder.finish());
+            System.out.println("round " + round + ": " + (System.currentTimeMillis() - start) + "ms " + out.size() + "B");
+            Assert.assertArrayEquals(gif, out.toByteArray());
+        }
+    }
+
+    private List<BufferedImage> translucentFrames(int type) {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            BufferedImage img = new BufferedImage(300, 200, type);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(new Color(255, 0, 0, 0x80));
+            g2d.fillRect(0, 0, 300, 100);
+            g2d.setColor(new Color(30, 120, 200, 0));
+            g2d.fillRect(0, 100, 300, 100);
+            // 各种透明度
+            for (int a = 0; a < 256; a++) {
+                g2d.setColor(new Color(200, 150, 90 + i * 30, a));
+                g2d.fillRect(a, 180, 1, 20);
+            }
+            g2d.setColor(new Color(0, 200, 0, 40 + i * 40));
+            g2d.fillOval(20 + i * 40, 50, 80, 80);
+            g2d.dispose();
+            frames.add(img);
+        }
+        return frames;
+    }
+
+    /**
+     * 原来的转换方式：绘制到新建的黑色 BGR 画布上
+     */
+    private List<BufferedImage> toBgr(List<BufferedImage> frames) {
+        List<BufferedImage> list = new ArrayList<>(frames.size());
+        for (BufferedImage frame : frames) {
+            BufferedImage bgr = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D g2d = bgr.createGraphics();
+            g2d.drawImage(frame, 0, 0, null);
+            g2d.dispose();
+            list.add(bgr);
+        }
+        return list;
+    }
+
+    @Test
+    public void testTranslucentFrames() {
+        // 半透明的帧，与原来绘制到黑色画布上的结果一致
+        Consumer<GifEncoder> config = encoder -> {
+            encoder.setQuantizer(new ExactQuantizer(new OctreeQuantizer()));
+            encoder.setDeltaFrames(true);
+        };
+        for (int type : new int[]{BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB}) {
+            List<BufferedImage> frames = translucentFrames(type);
+            byte[] gif = encodeWith(frames, config);
+            Assert.assertArrayEquals(encodeWith(toBgr(frames), config), gif);
+
+            GifDecoder decoder = new GifDecoder();
+            decoder.read(new ByteArrayInputStream(gif));
+            Assert.assertEquals(0x800000, decoder.getFrame(0).getRGB(5, 5) & 0xffffff);
+            Assert.assertEquals(0, decoder.getFrame(0).getRGB(5, 150) & 0xffffff);
+        }
+
+        // 只读取变化区域的 ARGB 帧
+        List<BufferedImage> frames = translucentFrames(BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = new GifEncoder();
+        encoder.setRepeat(0);
+        config.accept(encoder);
+        encoder.start(out);
+        for (int i = 0; i < frames.size(); i++) {
+            encoder.setDelay(100);
+            Assert.assertTrue(encoder.addFrame(frames.get(i), i == 0 ? null : new Rectangle(0, 50, 300, 150)));
+        }
+        Assert.assertTrue(encoder.finish());
+        Assert.assertArrayEquals(encodeWith(toBgr(frames), config), out.toByteArray());
+    }
+
+    @Test
+    public void testDeltaFramesIgnoreDispose() {
+        // delta 帧叠加在上一帧之上，指定的 dispose 不能清除上一帧
+        List<BufferedImage> frames = genFrames(10, new Color(250, 245, 230));
+        Consumer<GifEncoder> config = encoder -> encoder.setQuantizer(new ExactQuantizer(new OctreeQuantizer()));
+        GifDecoder full = new GifDecoder();
+        full.read(new ByteArrayInputStream(encodeWith(frames, config)));
+
+        GifDecoder delta = new GifDecoder();
+        Assert.assertEquals(GifDecoder.STATUS_OK, delta.read(new ByteArrayInputStream(encodeWith(frames, encoder -> {
+            config.accept(encoder);
+            encoder.setDispose(2);
+            encoder.setDeltaFrames(true);
+        }))));
+        Assert.assertEquals(frames.size(), delta.getFrameCount());
+        for (int i = 0; i < frames.size(); i++) {
+            BufferedImage a = full.getFrame(i), b = delta.getFrame(i);
+            for (int y = 0; y < a.getHeight(); y++) {
+                for (int x = 0; x < a.getWidth(); x++) {
+                    Assert.assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    private void encodeFailing(ExecutorService executor) {
+        GifEncoder encoder = new GifEncoder();
+        encoder.setQuantizer((pixels, len) -> {
+            throw new IllegalStateException("quantize error!");
+        });
+        if (executor != null) {
+            encoder.setExecutor(executor, 2);
+        }
+        encoder.start(new ByteArrayOutputStream());
+        for (BufferedImage frame : genFrames(6, Color.WHITE)) {
+            encoder.addFrame(frame);
+        }
+        encoder.finish();
+    }
+
+    @Test
+    public void testWorkerExceptionRethrown() {
+        // 量化时的非受检异常不能被当成写出失败吞掉，串行、并行都原样抛出
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (ExecutorService e : new ExecutorService[]{null, executor}) {
+                try {
+                    encodeFailing(e);
+                    Assert.fail("exception expected");
+                } catch (IllegalStateException ex) {
+                    Assert.assertEquals("quantize error!", ex.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
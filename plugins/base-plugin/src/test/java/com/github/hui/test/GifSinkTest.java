@@ -0,0 +1,220 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.gif.FrameBudget;
+import com.github.hui.quick.plugin.base.gif.GifDecoder;
+import com.github.hui.quick.plugin.base.gif.GifEncoder;
+import com.github.hui.quick.plugin.base.gif.GifHelper;
+import com.github.hui.quick.plugin.base.gif.GifSink;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Created by @author yihui in 18:50 26/10/19.
+ */
+public class GifSinkTest {
+
+    private void drawFrame(BufferedImage img, int index) {
+        Graphics2D g2d = img.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g2d.setColor(Color.RED);
+        g2d.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 28));
+        g2d.drawString("frame-" + index, 20 + index * 3, 100);
+        g2d.dispose();
+    }
+
+    @Test
+    public void testSink() {
+        int count = 60;
+        List<ImmutablePair<BufferedImage, Integer>> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BufferedImage img = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+            drawFrame(img, i);
+            frames.add(ImmutablePair.of(img, 100));
+        }
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream expect = new ByteArrayOutputStream();
+        GifHelper.saveGif(frames, expect);
+        System.out.println("list: " + (System.currentTimeMillis() - start) + "ms " + expect.size() + "B");
+
+        // 复用同一张画布，边画边编码，局部调色板时与一次性输出的结果一致
+        for (boolean globalPalette : new boolean[]{false, true}) {
+            start = System.currentTimeMillis();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BufferedImage canvas = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+            try (GifSink sink = GifHelper.newSink(out, globalPalette)) {
+                for (int i = 0; i < count; i++) {
+                    drawFrame(canvas, i);
+                    Assert.assertTrue(sink.accept(canvas, 100));
+                }
+                Assert.assertTrue(sink.finish());
+            }
+            System.out.println("sink globalPalette=" + globalPalette + ": "
+                    + (System.currentTimeMillis() - start) + "ms " + out.size() + "B");
+
+            if (!globalPalette) {
+                Assert.assertArrayEquals(expect.toByteArray(), out.toByteArray());
+            } else {
+                GifDecoder decoder = new GifDecoder();
+                Assert.assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(out.toByteArray())));
+                Assert.assertEquals(count, decoder.getFrameCount());
+                Assert.assertEquals(100, decoder.getDelay(count - 1));
+                Color color = new Color(decoder.getFrame(count - 1).getRGB(0, 0));
+                Assert.assertTrue(color.getRed() > 240 && color.getGreen() > 240 && color.getBlue() > 240);
+            }
+        }
+    }
+
+    @Test
+    public void testDirtyArea() {
+        int count = 60;
+        // 文字所在的行之外，各帧的像素都相同
+        Rectangle dirty = new Rectangle(0, 60, 300, 60);
+        for (boolean globalPalette : new boolean[]{false, true}) {
+            byte[][] results = new byte[2][];
+            for (int k = 0; k < 2; k++) {
+                long start = System.currentTimeMillis();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                BufferedImage canvas = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+                try (GifSink sink = GifHelper.newSink(out, globalPalette)) {
+                    for (int i = 0; i < count; i++) {
+                        drawFrame(canvas, i);
+                        Assert.assertTrue(sink.accept(canvas, 100, k == 0 ? null : dirty));
+                    }
+                    Assert.assertTrue(sink.finish());
+                }
+                results[k] = out.toByteArray();
+                System.out.println("globalPalette=" + globalPalette + " dirty=" + (k == 1) + ": "
+                        + (System.currentTimeMillis() - start) + "ms " + out.size() + "B");
+            }
+            // 只比较变化区域，结果与整帧比较一致
+            Assert.assertArrayEquals(results[0], results[1]);
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        int count = 60;
+        FrameBudget[] budgets = {FrameBudget.builder().build(), FrameBudget.ofFrames(10),
+                FrameBudget.builder().maxBytes(20 * 1024L).build()};
+        for (FrameBudget budget : budgets) {
+            long start = System.currentTimeMillis();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BufferedImage canvas = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+            try (GifSink sink = GifHelper.newSink(out, true, false, budget)) {
+                sink.setExpectedFrames(count);
+                for (int i = 0; i < count; i++) {
+                    // 每两帧相同
+                    drawFrame(canvas, i / 2 * 2);
+                    Assert.assertTrue(sink.accept(canvas, 100));
+                }
+                Assert.assertTrue(sink.finish());
+            }
+
+            GifDecoder decoder = new GifDecoder();
+            Assert.assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(out.toByteArray())));
+            int total = 0;
+            for (int i = 0; i < decoder.getFrameCount(); i++) {
+                total += decoder.getDelay(i);
+            }
+            // 合并、抽帧之后总时长不变
+            Assert.assertEquals(count * 100, total);
+            if (budget.getMaxFrames() != null) {
+                Assert.assertTrue(decoder.getFrameCount() <= budget.getMaxFrames());
+            } else if (budget.getMaxBytes() == null) {
+                Assert.assertEquals(count / 2, decoder.getFrameCount());
+            }
+            System.out.println(budget + ": " + (System.currentTimeMillis() - start) + "ms " + out.size() + "B "
+                    + decoder.getFrameCount() + " frames");
+        }
+    }
+
+    /**
+     * 训练全局调色板、并行编码时，还没写出的帧也计入大小预算
+     */
+    @Test
+    public void testBytesBudgetWithLookAhead() {
+        int count = 120;
+        long maxBytes = 16 * 1024L;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            GifEncoder encoder = new GifEncoder();
+            encoder.setRepeat(0);
+            encoder.setDeltaFrames(true);
+            encoder.setExecutor(executor, 4);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BufferedImage canvas = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+            FrameBudget budget = FrameBudget.builder().maxBytes(maxBytes).build();
+            try (GifSink sink = new GifSink(encoder, out, GifSink.DEFAULT_LOOK_AHEAD, budget)) {
+                sink.setExpectedFrames(count);
+                for (int i = 0; i < count; i++) {
+                    drawFrame(canvas, i);
+                    Assert.assertTrue(sink.accept(canvas, 100));
+                }
+                Assert.assertTrue(sink.finish());
+            }
+
+            GifDecoder decoder = new GifDecoder();
+            Assert.assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(out.toByteArray())));
+            System.out.println("bytes budget with look-ahead: " + out.size() + "B " + decoder.getFrameCount() + " frames");
+            // 软限制，允许少量超出
+            Assert.assertTrue(out.size() < maxBytes * 1.1);
+            Assert.assertTrue(decoder.getFrameCount() < count);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private byte[] apng(int count, FrameBudget budget) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedImage canvas = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        try (GifSink sink = GifHelper.newSink(out, false, true, budget)) {
+            sink.setExpectedFrames(count);
+            for (int i = 0; i < count; i++) {
+                drawFrame(canvas, i);
+                Assert.assertTrue(sink.accept(canvas, 100));
+            }
+            Assert.assertTrue(sink.finish());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * acTL 块中记录的帧数
+     */
+    private int apngFrames(byte[] apng) {
+        int offset = 8 + 25 + 8;
+        return (apng[offset] & 0xff) << 24 | (apng[offset + 1] & 0xff) << 16 | (apng[offset + 2] & 0xff) << 8
+                | (apng[offset + 3] & 0xff);
+    }
+
+    /**
+     * apng 在 finish 时才输出，按编码器中缓存的压缩数据计入大小预算
+     */
+    @Test
+    public void testApngBytesBudget() {
+        // 文字移出画布后的帧完全相同会被合并，这里保证每一帧都不同
+        int count = 80;
+        byte[] full = apng(count, FrameBudget.builder().build());
+        long maxBytes = full.length / 3;
+        byte[] limited = apng(count, FrameBudget.builder().maxBytes(maxBytes).build());
+        System.out.println("apng: " + full.length + "B " + apngFrames(full) + " frames, budget " + maxBytes + "B: "
+                + limited.length + "B " + apngFrames(limited) + " frames");
+        Assert.assertEquals(count, apngFrames(full));
+        Assert.assertTrue(apngFrames(limited) < count);
+        // 软限制，允许少量超出
+        Assert.assertTrue(limited.length < maxBytes * 1.1);
+    }
+}
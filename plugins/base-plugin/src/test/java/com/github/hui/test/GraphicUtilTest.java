@@ -0,0 +1,93 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Created by @author yihui in 10:40 26/10/18.
+ */
+public class GraphicUtilTest {
+
+    @Test
+    public void testRenderQuality() {
+        BufferedImage source = new BufferedImage(800, 800, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicUtil.getG2d(source);
+        g.setColor(Color.BLUE);
+        g.fillOval(0, 0, 800, 800);
+        g.dispose();
+
+        Map<RenderQuality, BufferedImage> results = new EnumMap<>(RenderQuality.class);
+        for (RenderQuality quality : RenderQuality.values()) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 50; i++) {
+                BufferedImage img = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g2d = GraphicUtil.getG2d(img, quality);
+                g2d.setColor(Color.RED);
+                g2d.fillRoundRect(10, 10, 380, 380, 40, 40);
+                g2d.setFont(new Font("宋体", Font.PLAIN, 18));
+                g2d.drawString("小灰灰blog 一灰灰", 20, 200);
+                g2d.drawImage(source, 50, 50, 300, 300, null);
+                g2d.dispose();
+                results.put(quality, img);
+            }
+            long end = System.currentTimeMillis();
+            System.out.println(quality + " cost: " + (end - start) + "ms");
+        }
+
+        // 圆角矩形的边缘：关闭抗锯齿时只有完全透明、完全不透明两种像素，开启后有半透明的过渡
+        Assert.assertEquals(0, edgePixels(results.get(RenderQuality.FAST)));
+        Assert.assertTrue(edgePixels(results.get(RenderQuality.BALANCED)) > 0);
+        Assert.assertTrue(edgePixels(results.get(RenderQuality.QUALITY)) > 0);
+        // 缩放的图片：最近邻与双线性插值的结果不同
+        Assert.assertTrue(diffPixels(results.get(RenderQuality.FAST), results.get(RenderQuality.QUALITY)) > 0);
+    }
+
+    @Test
+    public void testRenderHints() {
+        BufferedImage img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D fast = GraphicUtil.getG2d(img, RenderQuality.FAST);
+        Assert.assertEquals(RenderingHints.VALUE_ANTIALIAS_OFF, fast.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+        Assert.assertEquals(RenderingHints.VALUE_TEXT_ANTIALIAS_OFF, fast.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING));
+        Assert.assertEquals(RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, fast.getRenderingHint(RenderingHints.KEY_INTERPOLATION));
+        fast.dispose();
+
+        Graphics2D quality = GraphicUtil.getG2d(img);
+        Assert.assertEquals(RenderingHints.VALUE_ANTIALIAS_ON, quality.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+        Assert.assertEquals(RenderingHints.VALUE_INTERPOLATION_BILINEAR, quality.getRenderingHint(RenderingHints.KEY_INTERPOLATION));
+        Assert.assertEquals(RenderingHints.VALUE_RENDER_QUALITY, quality.getRenderingHint(RenderingHints.KEY_RENDERING));
+        Assert.assertEquals(RenderingHints.VALUE_STROKE_PURE, quality.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL));
+        quality.dispose();
+    }
+
+    /**
+     * 半透明像素的个数
+     */
+    private int edgePixels(BufferedImage img) {
+        int count = 0;
+        for (int argb : img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth())) {
+            int alpha = argb >>> 24;
+            if (alpha > 0 && alpha < 255) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int diffPixels(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth(), h = a.getHeight(), count = 0;
+        int[] p = a.getRGB(0, 0, w, h, null, 0, w), q = b.getRGB(0, 0, w, h, null, 0, w);
+        for (int i = 0; i < p.length; i++) {
+            if (p[i] != q[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Created by @author yihui in 11:30 26/10/19.
+ */
+public class ImageEncoderTest {
+
+    private BufferedImage genPhoto(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(1);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = (x * 255 / w + random.nextInt(16)) & 0xff;
+                int g = (y * 255 / h + random.nextInt(16)) & 0xff;
+                img.setRGB(x, y, 0xff000000 | r << 16 | g << 8 | 0x80);
+            }
+        }
+        return img;
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        BufferedImage img = genPhoto(400, 300);
+
+        byte[] png = ImageEncoder.toBytes(img, EncodeOptions.of("png"));
+        byte[] jpg = ImageEncoder.toBytes(img, EncodeOptions.of("jpg", 0.8f));
+        byte[] lowJpg = ImageEncoder.toBytes(img, EncodeOptions.of("jpg", 0.3f));
+        System.out.println("png: " + png.length + " jpg(0.8): " + jpg.length + " jpg(0.3): " + lowJpg.length);
+        Assert.assertTrue(lowJpg.length < jpg.length);
+
+        // argb的图输出jpg时，需要能被正常读取
+        BufferedImage out = ImageIO.read(new ByteArrayInputStream(jpg));
+        Assert.assertEquals(400, out.getWidth());
+        Color color = new Color(out.getRGB(200, 150));
+        Assert.assertEquals(0x80, color.getBlue(), 16);
+
+        Assert.assertEquals("jpg", ImageEncoder.chooseFormat(img, EncodeOptions.of(EncodeOptions.AUTO)));
+
+        BufferedImage flat = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Assert.assertEquals("png", ImageEncoder.chooseFormat(flat, EncodeOptions.of(EncodeOptions.AUTO)));
+    }
+
+    @Test
+    public void testCompare() throws IOException {
+        BufferedImage img = genPhoto(200, 200);
+        int round = 50;
+        for (int i = 0; i < 5; i++) {
+            ImageIO.write(img, "png", new ByteArrayOutputStream());
+            ImageEncoder.toBytes(img, EncodeOptions.of("png"));
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < round; i++) {
+            ImageIO.write(img, "png", new ByteArrayOutputStream());
+        }
+        long imageIo = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < round; i++) {
+            ImageEncoder.toBytes(img, EncodeOptions.of("png"));
+        }
+        long encoder = System.currentTimeMillis() - start;
+        System.out.println("ImageIO.write: " + imageIo + "ms, ImageEncoder: " + encoder + "ms");
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.ImageLoadUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Created by @author yihui in 09:40 26/10/19.
+ */
+public class ImageLoadUtilTest {
+
+    @Test
+    public void testSubsamplingLoad() throws IOException {
+        BufferedImage img = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(Color.RED);
+        g2d.fillRect(0, 0, 2000, 3000);
+        g2d.setColor(Color.BLUE);
+        g2d.fillRect(2000, 0, 2000, 3000);
+        g2d.dispose();
+
+        File tmp = File.createTempFile("quick-media-load", ".jpg");
+        try {
+            ImageIO.write(img, "jpg", tmp);
+            String file = tmp.getAbsolutePath();
+
+            Dimension size = ImageLoadUtil.getImageSize(file);
+            Assert.assertEquals(new Dimension(4000, 3000), size);
+
+            // 目标200px的logo，解码后不小于400px
+            long start = System.currentTimeMillis();
+            BufferedImage logo = ImageLoadUtil.getImageByPath(file, 200, 200);
+            System.out.println("subsampling load: " + logo.getWidth() + "x" + logo.getHeight() + " cost: "
+                    + (System.currentTimeMillis() - start) + "ms");
+            Assert.assertTrue(logo.getWidth() >= 400 && logo.getWidth() < 800);
+            Assert.assertTrue(logo.getHeight() >= 400 && logo.getHeight() < 800);
+
+            start = System.currentTimeMillis();
+            BufferedImage full = ImageLoadUtil.getImageByPath(file);
+            System.out.println("full load: " + full.getWidth() + "x" + full.getHeight() + " cost: "
+                    + (System.currentTimeMillis() - start) + "ms");
+
+            // 只解码右半部分
+            BufferedImage right = ImageLoadUtil.getImageByPath(file, new Rectangle(2000, 0, 2000, 3000), 100, 0);
+            Assert.assertTrue(right.getWidth() >= 200 && right.getWidth() < 400);
+            Color color = new Color(right.getRGB(right.getWidth() / 2, right.getHeight() / 2));
+            Assert.assertTrue(color.getBlue() > 200 && color.getRed() < 50);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.gif.ExactQuantizer;
+import com.github.hui.quick.plugin.base.gif.NeuQuant;
+import com.github.hui.quick.plugin.base.gif.NeuQuantQuantizer;
+import com.github.hui.quick.plugin.base.gif.OctreeQuantizer;
+import com.github.hui.quick.plugin.base.gif.Palette;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Created by @author yihui in 17:05 26/10/19.
+ */
+public class PaletteTest {
+
+    private byte[] genPixels(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = img.createGraphics();
+        // 大块纯色 + 一条渐变
+        g2d.setColor(new Color(250, 245, 230));
+        g2d.fillRect(0, 0, w, h);
+        g2d.setColor(new Color(30, 120, 200));
+        g2d.fillRect(0, 0, w / 2, h / 2);
+        g2d.setPaint(new GradientPaint(0, 0, Color.RED, w, 0, Color.GREEN));
+        g2d.fillRect(0, h - 100, w, 100);
+        g2d.dispose();
+        return ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+    }
+
+    @Test
+    public void testMapCache() {
+        byte[] pixels = genPixels(1000, 1000);
+        NeuQuant nq = new NeuQuant(pixels, pixels.length, 10);
+        nq.process();
+        Palette palette = new NeuQuantQuantizer(10).quantize(pixels, pixels.length);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < pixels.length; i += 3) {
+            nq.map(pixels[i] & 0xff, pixels[i + 1] & 0xff, pixels[i + 2] & 0xff);
+        }
+        long search = System.currentTimeMillis() - start;
+
+        // 结果与直接查找一致
+        for (int i = 0; i < pixels.length; i += 3) {
+            int b = pixels[i] & 0xff, g = pixels[i + 1] & 0xff, r = pixels[i + 2] & 0xff;
+            Assert.assertEquals(nq.map(b, g, r), palette.map(r, g, b));
+        }
+        start = System.currentTimeMillis();
+        for (int i = 0; i < pixels.length; i += 3) {
+            palette.map(pixels[i + 2] & 0xff, pixels[i + 1] & 0xff, pixels[i] & 0xff);
+        }
+        long cached = System.currentTimeMillis() - start;
+        System.out.println("NeuQuant.map: " + search + "ms, Palette.map with cache: " + cached + "ms");
+
+        // 没有出现过的颜色，走全量查找
+        Palette octree = new OctreeQuantizer().quantize(pixels, pixels.length);
+        for (int i = 0; i < 3; i++) {
+            int idx = octree.map(0, 0, 0);
+            Assert.assertEquals(idx, octree.map(0, 0, 0));
+        }
+    }
+
+    @Test
+    public void testCovers() {
+        byte[] pixels = genPixels(200, 200);
+        // 只取一半的像素训练，渐变中有一部分颜色采样不到
+        byte[] half = new byte[pixels.length / 2];
+        for (int i = 0, k = 0; k + 2 < half.length; i += 6, k += 3) {
+            System.arraycopy(pixels, i, half, k, 3);
+        }
+        Palette palette = new ExactQuantizer(new OctreeQuantizer()).quantize(half, half.length);
+        Assert.assertTrue(palette.isExact());
+        Assert.assertTrue(palette.covers(half, half.length));
+        Assert.assertFalse(palette.covers(pixels, pixels.length));
+
+        palette = new ExactQuantizer(new OctreeQuantizer()).quantize(pixels, pixels.length);
+        Assert.assertTrue(palette.covers(pixels, pixels.length));
+        Assert.assertFalse(new OctreeQuantizer().quantize(pixels, pixels.length).covers(pixels, pixels.length));
+    }
+}
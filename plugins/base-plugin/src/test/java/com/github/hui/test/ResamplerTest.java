@@ -0,0 +1,72 @@
+package com.github.hui.test;
+
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.resample.ResampleFilter;
+import com.github.hui.quick.plugin.base.resample.Resampler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Created by @author yihui in 16:50 26/10/18.
+ */
+public class ResamplerTest {
+
+    private BufferedImage source(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = GraphicUtil.getG2d(img);
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, w, h);
+        g2d.setColor(Color.RED);
+        g2d.fillOval(w / 4, h / 4, w / 2, h / 2);
+        g2d.dispose();
+        return img;
+    }
+
+    @Test
+    public void testResize() {
+        BufferedImage img = source(1600, 1200);
+
+        for (ResampleFilter filter : ResampleFilter.values()) {
+            BufferedImage out = Resampler.resize(img, 400, 300, filter);
+            Assert.assertEquals(400, out.getWidth());
+            Assert.assertEquals(300, out.getHeight());
+            // 中心为红色，角落为白色
+            Assert.assertEquals(Color.RED.getRGB(), out.getRGB(200, 150));
+            Assert.assertEquals(Color.WHITE.getRGB(), out.getRGB(2, 2));
+        }
+
+        // 放大
+        BufferedImage out = Resampler.resize(img, 2000, 1500);
+        Assert.assertEquals(Color.RED.getRGB(), out.getRGB(1000, 750));
+
+        // 尺寸一致时直接返回原图
+        Assert.assertSame(img, Resampler.resize(img, 1600, 1200));
+
+        // 目标尺寸为空时不缩放
+        Assert.assertNull(Resampler.resize(source(1000, 1), 0, 1));
+        Assert.assertNull(Resampler.resize(source(1000, 1), 600, 0));
+    }
+
+    @Test
+    public void testCost() {
+        BufferedImage img = source(2400, 1800);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            BufferedImage tmp = new BufferedImage(600, 450, BufferedImage.TYPE_INT_ARGB);
+            tmp.getGraphics().drawImage(img.getScaledInstance(600, 450, Image.SCALE_SMOOTH), 0, 0, null);
+        }
+        System.out.println("getScaledInstance cost: " + (System.currentTimeMillis() - start) + "ms");
+
+        for (ResampleFilter filter : ResampleFilter.values()) {
+            start = System.currentTimeMillis();
+            for (int i = 0; i < 5; i++) {
+                Resampler.resize(img, 600, 450, filter);
+            }
+            System.out.println(filter + " cost: " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+}
@@ -1,12 +1,8 @@
 package com.github.hui.quick.plugin.image.helper;
 
-import com.github.hui.quick.plugin.image.util.StrListUtil;
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Function;
 
 /**
  * Created by yihui on 2018/3/26.
@@ -69,8 +65,12 @@ public class CalculateHelper {
      * @return
      */
     public static String[] splitStr(String str, int lineLen, FontMetrics fontMetrics) {
-        int lineNum = (int) Math.ceil((fontMetrics.stringWidth(str)) / (float) lineLen);
-        return doSplitStr(str, lineNum, lineLen, fontMetrics::charWidth);
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        int width = widthCache.stringWidth(str);
+        if (width > 0 && width <= lineLen) { // 一行就能放下
+            return new String[]{str};
+        }
+        return widthCache.splitLines(str, lineLen, 0);
     }
 
     /**
@@ -82,53 +82,12 @@ public class CalculateHelper {
      * @return
      */
     public static String[] splitVerticalStr(String str, int lineLen, FontMetrics fontMetrics) {
-        int l = fontMetrics.getDescent() * (str.length() - 1);
-        int lineNum = (int) Math.ceil((fontMetrics.stringWidth(str) + l) / (float) lineLen);
-
-        return doSplitStr(str, lineNum, lineLen,
-                character -> fontMetrics.charWidth(character) + fontMetrics.getDescent());
-    }
-
-    /**
-     * 实现字符串根据每行容纳的长度进行分割
-     *
-     * @param str             待分割的字符串内容
-     * @param lineNum         分割后的行数（不一定完全准确，因此实现逻辑中用List替换了之前的数组，避免越界问题）
-     * @param lineLen         每行容纳的长度
-     * @param charLenCalcFunc 计算字符站位的方法
-     * @return
-     */
-    private static String[] doSplitStr(String str, int lineNum, int lineLen,
-            Function<Character, Integer> charLenCalcFunc) {
-        if (lineNum == 1) {
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        int width = widthCache.stringWidth(str) + fontMetrics.getDescent() * (str.length() - 1);
+        if (width > 0 && width <= lineLen) {
             return new String[]{str};
         }
-
-        List<String> ans = new ArrayList<>(lineNum);
-        int strLen = str.length();
-        // 保存当前行的站位长度
-        int currentLineTotalLen = 0;
-        // 保存当前行的起始位置
-        int currentLineStartIndex = 0;
-        int tmpLen;
-        for (int i = 0; i < strLen; i++) {
-            /**
-             * 因为每个文本的宽度不一样，所以需要采用遍历的方式来计算一行最终能容纳多少个字符
-             */
-            tmpLen = charLenCalcFunc.apply(str.charAt(i));
-            currentLineTotalLen += tmpLen;
-            if (currentLineTotalLen > lineLen) {
-                ans.add(str.substring(currentLineStartIndex, i));
-                currentLineStartIndex = i;
-                currentLineTotalLen = tmpLen;
-            }
-        }
-
-        if (currentLineStartIndex < strLen) {
-            ans.add(str.substring(currentLineStartIndex));
-        }
-
-        return StrListUtil.toArray(ans);
+        return widthCache.splitLines(str, lineLen, fontMetrics.getDescent());
     }
 
 
@@ -141,9 +100,10 @@ public class CalculateHelper {
      * @return
      */
     public static int calLineNum(String[] strs, int lineLen, FontMetrics fontMetrics) {
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
         int totalLine = 0;
         for (String str : strs) {
-            totalLine += Math.ceil(fontMetrics.stringWidth(str) / (float) lineLen);
+            totalLine += Math.ceil(widthCache.stringWidth(str) / (float) lineLen);
         }
 
         return totalLine;
@@ -151,10 +111,11 @@ public class CalculateHelper {
 
 
     public static int calVerticalLineNum(String[] strs, int lineLen, FontMetrics fontMetrics) {
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
         int totalLine = 0;
         for (String str : strs) {
             totalLine += Math.ceil(
-                    (fontMetrics.stringWidth(str) + (str.length() - 1) * fontMetrics.getDescent()) / (float) lineLen);
+                    (widthCache.stringWidth(str) + (str.length() - 1) * fontMetrics.getDescent()) / (float) lineLen);
         }
         return totalLine;
     }
@@ -0,0 +1,244 @@
+package com.github.hui.quick.plugin.image.helper;
+
+import com.github.hui.quick.plugin.image.util.StrListUtil;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 字符宽度缓存，按 (字体, 渲染参数) 缓存每个字符的前进宽度，排版时不再逐字调用 FontMetrics
+ * <p>
+ * - BMP 内的字符按 256 个一页存放在数组中，用到时才分配
+ * - 其他码点存放在 map 中
+ * - 宽度的取整方式与 FontMetrics.charWidth / stringWidth 一致；需要复杂排版的文本(阿拉伯文、泰文、代理对等)仍交给 FontMetrics 计算
+ * <p>
+ * Created by @author yihui in 23:10 26/10/19.
+ */
+public class CharWidthCache {
+
+    /**
+     * 最多缓存的字体数，超出后清空重新缓存
+     */
+    private static final int MAX_FONT_SIZE = 64;
+
+    private static final Map<Key, CharWidthCache> CACHE = new ConcurrentHashMap<>();
+
+    private static final int PAGE_BITS = 8;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final FontMetrics fontMetrics;
+
+    /**
+     * 是否整体交给 FontMetrics 计算，如字体设置了字距调整、连字等属性
+     */
+    private final boolean layoutFont;
+
+    private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<>(0x10000 >> PAGE_BITS);
+
+    private final Map<Integer, Float> supplementary = new ConcurrentHashMap<>();
+
+    private CharWidthCache(FontMetrics fontMetrics) {
+        this.fontMetrics = fontMetrics;
+        this.layoutFont = fontMetrics.getFont().hasLayoutAttributes();
+    }
+
+
+    /**
+     * 获取字体对应的宽度缓存
+     *
+     * @param fontMetrics
+     * @return
+     */
+    public static CharWidthCache of(FontMetrics fontMetrics) {
+        Key key = new Key(fontMetrics.getFont(), fontMetrics.getFontRenderContext());
+        CharWidthCache cache = CACHE.get(key);
+        if (cache == null) {
+            if (CACHE.size() >= MAX_FONT_SIZE) {
+                CACHE.clear();
+            }
+            cache = CACHE.computeIfAbsent(key, k -> new CharWidthCache(fontMetrics));
+        }
+        return cache;
+    }
+
+
+    /**
+     * 字符的前进宽度(未取整)
+     *
+     * @param ch
+     * @return
+     */
+    public float advance(char ch) {
+        int page = ch >> PAGE_BITS;
+        float[] widths = pages.get(page);
+        if (widths == null) {
+            float[] created = new float[PAGE_SIZE];
+            Arrays.fill(created, Float.NaN);
+            // 并发时只保留一页，已经写入的值对所有线程可见
+            widths = pages.compareAndSet(page, null, created) ? created : pages.get(page);
+        }
+
+        float w = widths[ch & (PAGE_SIZE - 1)];
+        if (Float.isNaN(w)) {
+            // 需要复杂排版的字符单独测量时也会走排版流程，直接取 FontMetrics 逐字的宽度
+            w = requiresLayout(ch) ? fontMetrics.charWidth(ch) : measure(new char[]{ch});
+            widths[ch & (PAGE_SIZE - 1)] = w;
+        }
+        return w;
+    }
+
+
+    /**
+     * BMP 之外的码点的前进宽度
+     *
+     * @param codePoint
+     * @return
+     */
+    public float advance(int codePoint) {
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return advance((char) codePoint);
+        }
+        return supplementary.computeIfAbsent(codePoint, c -> measure(Character.toChars(c)));
+    }
+
+
+    private float measure(char[] chars) {
+        // 按 FontMetrics 自身的渲染参数测量，开启小数宽度时得到的是未取整的前进宽度
+        GlyphVector gv = fontMetrics.getFont().createGlyphVector(fontMetrics.getFontRenderContext(), chars);
+        return (float) gv.getGlyphPosition(gv.getNumGlyphs()).getX();
+    }
+
+
+    /**
+     * 与 FontMetrics.charWidth 一致
+     *
+     * @param ch
+     * @return
+     */
+    public int charWidth(char ch) {
+        if (layoutFont) {
+            return fontMetrics.charWidth(ch);
+        }
+        return (int) (0.5 + advance(ch));
+    }
+
+
+    /**
+     * 与 FontMetrics.stringWidth 一致
+     *
+     * @param str
+     * @return
+     */
+    public int stringWidth(String str) {
+        if (layoutFont) {
+            return fontMetrics.stringWidth(str);
+        }
+
+        float width = 0;
+        for (int i = 0, len = str.length(); i < len; i++) {
+            char ch = str.charAt(i);
+            if (requiresLayout(ch)) {
+                return fontMetrics.stringWidth(str);
+            }
+            width += advance(ch);
+        }
+        return (int) (0.5 + width);
+    }
+
+
+    /**
+     * 将字符串根据每行容纳的长度进行分割为多行，每个字符的占位为 charWidth + extra
+     * <p>
+     * 逐字累加宽度，超出一行的长度时换行，整个过程只遍历一次字符串
+     *
+     * @param str     待分割的字符串内容
+     * @param lineLen 一行长度
+     * @param extra   每个字符额外的占位，如竖排时字符之间的间隔
+     * @return
+     */
+    public String[] splitLines(String str, int lineLen, int extra) {
+        int strLen = str.length();
+        List<String> ans = new ArrayList<>();
+        // 当前行的起始位置，以及起始位置之前所有字符的累计宽度
+        int lineStart = 0;
+        int lineStartWidth = 0;
+        int total = 0;
+        int tmpLen;
+        for (int i = 0; i < strLen; i++) {
+            tmpLen = charWidth(str.charAt(i)) + extra;
+            total += tmpLen;
+            if (total - lineStartWidth > lineLen) {
+                ans.add(str.substring(lineStart, i));
+                lineStart = i;
+                lineStartWidth = total - tmpLen;
+            }
+        }
+
+        if (lineStart < strLen) {
+            ans.add(str.substring(lineStart));
+        }
+        return StrListUtil.toArray(ans);
+    }
+
+
+    /**
+     * 与 FontMetrics 的判断保持一致：这些字符需要复杂排版，宽度不等于单个字符宽度之和
+     */
+    static boolean requiresLayout(char ch) {
+        if (ch < 0x0300) {
+            return false;
+        }
+        if (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE) {
+            return true;
+        }
+        if (ch > 0x206f) {
+            return false;
+        }
+        return ch <= 0x036f // 组合附加符号
+                || (ch >= 0x0590 && ch <= 0x06ff) // 希伯来文、阿拉伯文
+                || (ch >= 0x0900 && ch <= 0x0e7f) // 印度诸文字、泰文
+                || (ch >= 0x0f00 && ch <= 0x0fff) // 藏文
+                || (ch >= 0x1100 && ch < 0x11ff) // 谚文字母
+                || (ch >= 0x1780 && ch <= 0x17ff) // 高棉文
+                || (ch >= 0x200c && ch <= 0x200d)
+                || (ch >= 0x202a && ch <= 0x202e)
+                || (ch >= 0x206a);
+    }
+
+
+    private static class Key {
+        private final Font font;
+        private final FontRenderContext frc;
+
+        Key(Font font, FontRenderContext frc) {
+            this.font = font;
+            this.frc = frc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return font.equals(key.font) && frc.equals(key.frc);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, frc);
+        }
+    }
+}
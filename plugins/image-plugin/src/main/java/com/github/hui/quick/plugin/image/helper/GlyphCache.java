@@ -0,0 +1,207 @@
+package com.github.hui.quick.plugin.image.helper;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大字号文字的绘制缓存，同样的文字反复绘制时(逐帧生成的动图、重复渲染的模板)直接贴图
+ * <p>
+ * 字号不超过 {@link #OUTLINE_THRESHOLD} 时，jdk 自身会缓存每个字形的光栅化结果，drawString 已经足够快，不做处理；
+ * 超过之后 jdk 每次都按轮廓重新填充，此时按 (文字, 字体, FontRenderContext, 渲染参数, 颜色) 缓存光栅化之后的图片
+ * <p>
+ * - 只在纯色画笔、SrcOver 且只有整数平移的画笔上使用，其余情况直接 drawString
+ * - 目标像素半透明时，贴图按标准的 SrcOver 混合，与 drawString 的结果略有差别；
+ * 开启抗锯齿且 STROKE_NORMALIZE 时，轮廓在不同位置光栅化，个别边缘像素也可能有细微差别
+ * - 需要复杂排版的文字(阿拉伯文、泰文等)直接 drawString
+ * <p>
+ * Created by @author yihui in 00:50 26/10/20.
+ */
+public class GlyphCache {
+
+    /**
+     * 与 jdk 中 OutlineTextRenderer 的阈值一致，字号超过这个值时不再缓存字形
+     */
+    public static final int OUTLINE_THRESHOLD = 100;
+
+    /**
+     * 贴图缓存占用的内存上限，默认32M
+     */
+    private static long maxCacheBytes = 32L * 1024 * 1024;
+
+    private static boolean enable = true;
+
+    private static final Map<Key, Mask> masks = new ConcurrentHashMap<>();
+
+    private static final AtomicLong cacheBytes = new AtomicLong();
+
+
+    /**
+     * 在画笔当前的字体、颜色下绘制文字，效果等同于 g2d.drawString(str, x, y)
+     *
+     * @param g2d
+     * @param str
+     * @param x
+     * @param y
+     */
+    public static void drawString(Graphics2D g2d, String str, int x, int y) {
+        Font font = g2d.getFont();
+        if (!enable || font.getSize2D() <= OUTLINE_THRESHOLD || !maskable(g2d) || !simpleLayout(font, str)) {
+            g2d.drawString(str, x, y);
+            return;
+        }
+
+        FontRenderContext frc = g2d.getFontRenderContext();
+        Color color = (Color) g2d.getPaint();
+        // 关闭文字抗锯齿时轮廓按普通图形填充，抗锯齿、描边控制等参数都会影响光栅化结果，一并作为缓存的key
+        RenderingHints hints = g2d.getRenderingHints();
+        Key key = new Key(str, font, frc, hints, color);
+        Mask mask = masks.get(key);
+        if (mask == null) {
+            mask = createMask(hints, font.createGlyphVector(frc, str), color);
+            if (mask.bytes() > maxCacheBytes >> 2) {
+                // 太大的文字不缓存
+                g2d.drawString(str, x, y);
+                return;
+            }
+            if (cacheBytes.addAndGet(mask.bytes()) > maxCacheBytes) {
+                masks.clear();
+                cacheBytes.set(mask.bytes());
+            }
+            masks.put(key, mask);
+        }
+
+        if (mask.img != null) {
+            g2d.drawImage(mask.img, x + mask.x, y + mask.y, null);
+        }
+    }
+
+
+    /**
+     * 字体没有设置字距调整、连字等属性，且文字不需要复杂排版时，按字形绘制与 drawString 的结果一致
+     */
+    static boolean simpleLayout(Font font, String str) {
+        if (font.hasLayoutAttributes()) {
+            return false;
+        }
+        for (int i = 0, len = str.length(); i < len; i++) {
+            if (CharWidthCache.requiresLayout(str.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 纯色、SrcOver、只有整数平移时，贴图与直接绘制的像素位置一致
+     */
+    private static boolean maskable(Graphics2D g2d) {
+        if (!(g2d.getPaint() instanceof Color) || !AlphaComposite.SrcOver.equals(g2d.getComposite())) {
+            return false;
+        }
+
+        AffineTransform tx = g2d.getTransform();
+        if ((tx.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+            return false;
+        }
+        return tx.getTranslateX() == Math.rint(tx.getTranslateX()) && tx.getTranslateY() == Math.rint(tx.getTranslateY());
+    }
+
+
+    private static Mask createMask(RenderingHints hints, GlyphVector gv, Color color) {
+        Rectangle bounds = gv.getPixelBounds(gv.getFontRenderContext(), 0, 0);
+        if (bounds.isEmpty()) {
+            return new Mask(null, 0, 0);
+        }
+
+        // 四周各留一个像素，避免抗锯齿的边缘被截掉
+        BufferedImage img = new BufferedImage(bounds.width + 2, bounds.height + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHints(hints);
+        g.setColor(color);
+        g.drawGlyphVector(gv, 1 - bounds.x, 1 - bounds.y);
+        g.dispose();
+        return new Mask(img, bounds.x - 1, bounds.y - 1);
+    }
+
+
+    public static void clear() {
+        masks.clear();
+        cacheBytes.set(0);
+    }
+
+    public static void setEnable(boolean enable) {
+        GlyphCache.enable = enable;
+        if (!enable) {
+            clear();
+        }
+    }
+
+    public static void setMaxCacheBytes(long maxCacheBytes) {
+        GlyphCache.maxCacheBytes = maxCacheBytes;
+    }
+
+
+    /**
+     * 光栅化之后的文字，(x, y) 为图片左上角相对于文字基线起点的偏移
+     */
+    private static class Mask {
+        private final BufferedImage img;
+        private final int x;
+        private final int y;
+
+        Mask(BufferedImage img, int x, int y) {
+            this.img = img;
+            this.x = x;
+            this.y = y;
+        }
+
+        long bytes() {
+            return img == null ? 16 : 4L * img.getWidth() * img.getHeight();
+        }
+    }
+
+
+    private static class Key {
+        private final String str;
+        private final Font font;
+        private final FontRenderContext frc;
+        private final RenderingHints hints;
+        private final Color color;
+        private final int hash;
+
+        Key(String str, Font font, FontRenderContext frc, RenderingHints hints, Color color) {
+            this.str = str;
+            this.font = font;
+            this.frc = frc;
+            this.hints = hints;
+            this.color = color;
+            this.hash = Objects.hash(str, font, frc, hints, color);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return str.equals(key.str) && font.equals(key.font) && frc.equals(key.frc) && hints.equals(key.hints)
+                    && color.equals(key.color);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
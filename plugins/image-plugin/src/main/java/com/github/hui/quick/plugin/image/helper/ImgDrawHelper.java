@@ -1,10 +1,15 @@
 package com.github.hui.quick.plugin.image.helper;
 
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.resample.Resampler;
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 import com.github.hui.quick.plugin.image.util.PunctuationUtil;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
@@ -39,7 +44,9 @@ public class ImgDrawHelper {
 
         // 实际填充内容的单行长度
         int lineLen = w - leftPadding - rightPadding;
-        String[] strs = CalculateHelper.splitStr(content, lineLen, g2d.getFontMetrics());
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        String[] strs = CalculateHelper.splitStr(content, lineLen, fontMetrics);
 
 
         g2d.setColor(options.getFontColor());
@@ -47,7 +54,7 @@ public class ImgDrawHelper {
         int x, count = 0;
         int tempEndIndex;
         for (String tmp : strs) {
-            x = CalculateHelper.calOffsetX(leftPadding, rightPadding, w, g2d.getFontMetrics().stringWidth(tmp), options.getAlignStyle());
+            x = CalculateHelper.calOffsetX(leftPadding, rightPadding, w, widthCache.stringWidth(tmp), options.getAlignStyle());
 
             if (count + tmp.length() < endIndex) {
                 tempEndIndex = tmp.length();
@@ -55,7 +62,7 @@ public class ImgDrawHelper {
                 tempEndIndex = endIndex - count;
             }
 
-            g2d.drawString(tmp.substring(0, tempEndIndex), x, y + (linePadding + g2d.getFontMetrics().getHeight()) * index);
+            GlyphCache.drawString(g2d, tmp.substring(0, tempEndIndex), x, y + (linePadding + fontMetrics.getHeight()) * index);
 
             index++;
 
@@ -66,7 +73,7 @@ public class ImgDrawHelper {
         }
 
 
-        return y + (linePadding + g2d.getFontMetrics().getHeight()) * (index);
+        return y + (linePadding + fontMetrics.getHeight()) * (index);
     }
 
 
@@ -91,7 +98,8 @@ public class ImgDrawHelper {
 
         // 实际填充内容的高度， 需要排除上下间距
         int contentH = options.getImgH() - options.getTopPadding() - options.getBottomPadding();
-        String[] strs = CalculateHelper.splitVerticalStr(content, contentH, g2d.getFontMetrics());
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        String[] strs = CalculateHelper.splitVerticalStr(content, contentH, fontMetrics);
 
 
         int fontSize = options.getFont().getSize();
@@ -108,7 +116,7 @@ public class ImgDrawHelper {
         for (String tmp : strs) {
             lastY = 0;
             startY = CalculateHelper.calOffsetY(topPadding, bottomPadding, options.getImgH(),
-                    fontMetrics.stringWidth(tmp) + fontMetrics.getDescent() * (tmp.length() - 1), options.getAlignStyle())
+                    widthCache.stringWidth(tmp) + fontMetrics.getDescent() * (tmp.length() - 1), options.getAlignStyle())
                     + fontMetrics.getAscent();
 
             for (int i = 0; i < tmp.length() && count + i <= endIndex; i++) {
@@ -118,11 +126,11 @@ public class ImgDrawHelper {
                     tmpCharOffsetX = 0;
                 }
 
-                g2d.drawString(tmp.charAt(i) + "",
+                GlyphCache.drawString(g2d, String.valueOf(tmp.charAt(i)),
                         lastX + tmpCharOffsetX,
                         startY + lastY);
 
-                lastY += g2d.getFontMetrics().charWidth(tmp.charAt(i)) + g2d.getFontMetrics().getDescent();
+                lastY += widthCache.charWidth(tmp.charAt(i)) + fontMetrics.getDescent();
             }
             lastX += fontWidth;
 
@@ -138,6 +146,134 @@ public class ImgDrawHelper {
 
 
 
+    /**
+     * 逐字绘制时第 index 个字符的像素边界，排版与 {@link #drawContent(Graphics2D, String, int, int, ImgCreateOptions)} 一致
+     * <p>
+     * 需要复杂排版的文字，多绘制一个字符时前面的字形也可能变化，返回的是该字符所在行前后两次绘制的范围
+     *
+     * @param g2d
+     * @param content
+     * @param index
+     * @param y
+     * @param options
+     * @return 字符不存在时返回空的区域
+     */
+    public static Rectangle charBounds(Graphics2D g2d,
+                                       String content,
+                                       int index,
+                                       int y,
+                                       ImgCreateOptions options) {
+        int w = options.getImgW();
+        int leftPadding = options.getLeftPadding();
+        int rightPadding = options.getRightPadding();
+
+        g2d.setFont(options.getFont());
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        String[] strs = CalculateHelper.splitStr(content, w - leftPadding - rightPadding, fontMetrics);
+
+        int row = 0, count = 0;
+        for (String tmp : strs) {
+            if (index < count + tmp.length()) {
+                int x = CalculateHelper.calOffsetX(leftPadding, rightPadding, w, widthCache.stringWidth(tmp), options.getAlignStyle());
+                int baseline = y + (options.getLinePadding() + fontMetrics.getHeight()) * row;
+                int i = index - count;
+
+                Font font = g2d.getFont();
+                FontRenderContext frc = g2d.getFontRenderContext();
+                if (GlyphCache.simpleLayout(font, tmp)) {
+                    GlyphVector gv = font.createGlyphVector(frc, tmp);
+                    if (gv.getNumGlyphs() == tmp.length()) {
+                        return pad(gv.getGlyphPixelBounds(i, frc, x, baseline));
+                    }
+                }
+                Rectangle before = textBounds(g2d, tmp.substring(0, i), x, baseline);
+                Rectangle after = textBounds(g2d, tmp.substring(0, i + 1), x, baseline);
+                return before.isEmpty() ? after : after.union(before);
+            }
+            row++;
+            count += tmp.length();
+        }
+        return new Rectangle();
+    }
+
+
+    /**
+     * 逐字绘制时第 index 个字符的像素边界，排版与 {@link #drawVerticalContent(Graphics2D, String, int, int, ImgCreateOptions)} 一致
+     *
+     * @param g2d
+     * @param content
+     * @param index
+     * @param x
+     * @param options
+     * @return 字符不存在时返回空的区域
+     */
+    public static Rectangle verticalCharBounds(Graphics2D g2d,
+                                               String content,
+                                               int index,
+                                               int x,
+                                               ImgCreateOptions options) {
+        g2d.setFont(options.getFont());
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+
+        int contentH = options.getImgH() - options.getTopPadding() - options.getBottomPadding();
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        String[] strs = CalculateHelper.splitVerticalStr(content, contentH, fontMetrics);
+
+        int fontSize = options.getFont().getSize();
+        int fontWidth = fontSize + options.getLinePadding();
+        if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
+            fontWidth = -fontWidth;
+        }
+
+        int lastX = x, count = 0;
+        for (String tmp : strs) {
+            if (index < count + tmp.length()) {
+                int startY = CalculateHelper.calOffsetY(options.getTopPadding(), options.getBottomPadding(), options.getImgH(),
+                        widthCache.stringWidth(tmp) + fontMetrics.getDescent() * (tmp.length() - 1), options.getAlignStyle())
+                        + fontMetrics.getAscent();
+                int lastY = 0;
+                for (int i = 0; i < index - count; i++) {
+                    lastY += widthCache.charWidth(tmp.charAt(i)) + fontMetrics.getDescent();
+                }
+
+                char ch = tmp.charAt(index - count);
+                int offsetX = PunctuationUtil.isPunctuation(ch) ? fontSize >> 1 : 0;
+                return textBounds(g2d, String.valueOf(ch), lastX + offsetX, startY + lastY);
+            }
+            lastX += fontWidth;
+            count += tmp.length();
+        }
+        return new Rectangle();
+    }
+
+
+    /**
+     * drawString 绘制文字时覆盖的像素范围，四周各多留一个像素
+     */
+    private static Rectangle textBounds(Graphics2D g2d, String str, int x, int y) {
+        if (str.isEmpty()) {
+            return new Rectangle();
+        }
+
+        Font font = g2d.getFont();
+        FontRenderContext frc = g2d.getFontRenderContext();
+        if (GlyphCache.simpleLayout(font, str)) {
+            return pad(font.createGlyphVector(frc, str).getPixelBounds(frc, x, y));
+        }
+        return pad(new TextLayout(str, font, frc).getPixelBounds(frc, x, y));
+    }
+
+
+    private static Rectangle pad(Rectangle rect) {
+        if (!rect.isEmpty()) {
+            rect.grow(1, 1);
+        }
+        return rect;
+    }
+
+
+
     /**
      * 在原图上绘制图片
      *
@@ -151,9 +287,28 @@ public class ImgDrawHelper {
                                 BufferedImage dest,
                                 int y,
                                 ImgCreateOptions options) {
-        Graphics2D g2d = GraphicUtil.getG2d(source);
+        Graphics2D g2d = GraphicUtil.getG2d(source, options.getRenderQuality());
+        int h = drawImage(g2d, dest, y, options);
+        g2d.dispose();
+        return h;
+    }
+
+
+    /**
+     * 用指定的画笔绘制图片，分段绘制时画笔已经平移到当前段的位置
+     *
+     * @param g2d
+     * @param dest    待绘制图片
+     * @param y       待绘制的y坐标
+     * @param options
+     * @return 绘制图片的高度
+     */
+    public static int drawImage(Graphics2D g2d,
+                                BufferedImage dest,
+                                int y,
+                                ImgCreateOptions options) {
         int w = Math.min(dest.getWidth(), options.getImgW() - options.getLeftPadding() - options.getRightPadding());
-        int h = w * dest.getHeight() / dest.getWidth();
+        int h = calImageH(dest, options);
 
         int x = CalculateHelper.calOffsetX(options.getLeftPadding(),
                 options.getRightPadding(),
@@ -161,14 +316,7 @@ public class ImgDrawHelper {
                 w,
                 options.getAlignStyle());
 
-        g2d.drawImage(dest,
-                x,
-                y + options.getLinePadding(),
-                w,
-                h,
-                null);
-        g2d.dispose();
-
+        drawScaledImage(g2d, dest, x, y + options.getLinePadding(), w, h, options);
         return h;
     }
 
@@ -177,9 +325,9 @@ public class ImgDrawHelper {
                                         BufferedImage dest,
                                         int x,
                                         ImgCreateOptions options) {
-        Graphics2D g2d = GraphicUtil.getG2d(source);
+        Graphics2D g2d = GraphicUtil.getG2d(source, options.getRenderQuality());
         int h = Math.min(dest.getHeight(), options.getImgH() - options.getTopPadding() - options.getBottomPadding());
-        int w = h * dest.getWidth() / dest.getHeight();
+        int w = calVerticalImageW(dest, options);
 
         int y = CalculateHelper.calOffsetY(options.getTopPadding(),
                 options.getBottomPadding(),
@@ -193,12 +341,54 @@ public class ImgDrawHelper {
         if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
             drawX = source.getWidth() - w - drawX;
         }
-        g2d.drawImage(dest, drawX, y, w, h, null);
+        drawScaledImage(g2d, dest, drawX, y, w, h, options);
         g2d.dispose();
         return w;
     }
 
 
+    /**
+     * 水平绘制时图片实际占用的高度，与 {@link #drawImage} 的返回值一致
+     *
+     * @param dest
+     * @param options
+     * @return
+     */
+    public static int calImageH(BufferedImage dest, ImgCreateOptions options) {
+        int w = Math.min(dest.getWidth(), options.getImgW() - options.getLeftPadding() - options.getRightPadding());
+        return w * dest.getHeight() / dest.getWidth();
+    }
+
+
+    /**
+     * 垂直绘制时图片实际占用的宽度，与 {@link #drawVerticalImage} 的返回值一致
+     *
+     * @param dest
+     * @param options
+     * @return
+     */
+    public static int calVerticalImageW(BufferedImage dest, ImgCreateOptions options) {
+        int h = Math.min(dest.getHeight(), options.getImgH() - options.getTopPadding() - options.getBottomPadding());
+        return h * dest.getWidth() / dest.getHeight();
+    }
+
+
+    /**
+     * 缩放之后再绘制，缩放的中间画布绘制完毕后归还
+     */
+    private static void drawScaledImage(Graphics2D g2d, BufferedImage img, int x, int y, int w, int h, ImgCreateOptions options) {
+        BufferedImage scaled = Resampler.resize(img, w, h, options.getRenderQuality());
+        if (scaled == null) {
+            // 过宽或过高的图片，缩放之后为空
+            return;
+        }
+        g2d.drawImage(scaled, x, y, null);
+        if (scaled != img) {
+            CanvasPool.release(scaled);
+        }
+    }
+
+
     /**
      * 水平内容绘制
      *
@@ -222,20 +412,22 @@ public class ImgDrawHelper {
 
         // 实际填充内容的单行长度
         int lineLen = w - leftPadding - rightPadding;
-        String[] strs = CalculateHelper.splitStr(content, lineLen, g2d.getFontMetrics());
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        String[] strs = CalculateHelper.splitStr(content, lineLen, fontMetrics);
 
 
         g2d.setColor(options.getFontColor());
         int index = 0;
         int x;
         for (String tmp : strs) {
-            x = CalculateHelper.calOffsetX(leftPadding, rightPadding, w, g2d.getFontMetrics().stringWidth(tmp), options.getAlignStyle());
-            g2d.drawString(tmp, x, y + (linePadding + g2d.getFontMetrics().getHeight()) * index);
+            x = CalculateHelper.calOffsetX(leftPadding, rightPadding, w, widthCache.stringWidth(tmp), options.getAlignStyle());
+            GlyphCache.drawString(g2d, tmp, x, y + (linePadding + fontMetrics.getHeight()) * index);
             index++;
         }
 
 
-        return y + (linePadding + g2d.getFontMetrics().getHeight()) * (index);
+        return y + (linePadding + fontMetrics.getHeight()) * (index);
     }
 
 
@@ -259,7 +451,8 @@ public class ImgDrawHelper {
 
         // 实际填充内容的高度， 需要排除上下间距
         int contentH = options.getImgH() - options.getTopPadding() - options.getBottomPadding();
-        String[] strs = CalculateHelper.splitVerticalStr(content, contentH, g2d.getFontMetrics());
+        CharWidthCache widthCache = CharWidthCache.of(fontMetrics);
+        String[] strs = CalculateHelper.splitVerticalStr(content, contentH, fontMetrics);
 
 
         int fontSize = options.getFont().getSize();
@@ -275,7 +468,7 @@ public class ImgDrawHelper {
         for (String tmp : strs) {
             lastY = 0;
             startY = CalculateHelper.calOffsetY(topPadding, bottomPadding, options.getImgH(),
-                    fontMetrics.stringWidth(tmp) + fontMetrics.getDescent() * (tmp.length() - 1), options.getAlignStyle())
+                    widthCache.stringWidth(tmp) + fontMetrics.getDescent() * (tmp.length() - 1), options.getAlignStyle())
                     + fontMetrics.getAscent();
 
             for (int i = 0; i < tmp.length(); i++) {
@@ -285,11 +478,11 @@ public class ImgDrawHelper {
                     tmpCharOffsetX = 0;
                 }
 
-                g2d.drawString(tmp.charAt(i) + "",
+                GlyphCache.drawString(g2d, String.valueOf(tmp.charAt(i)),
                         lastX + tmpCharOffsetX,
                         startY + lastY);
 
-                lastY += g2d.getFontMetrics().charWidth(tmp.charAt(i)) + g2d.getFontMetrics().getDescent();
+                lastY += widthCache.charWidth(tmp.charAt(i)) + fontMetrics.getDescent();
             }
             lastX += fontWidth;
         }
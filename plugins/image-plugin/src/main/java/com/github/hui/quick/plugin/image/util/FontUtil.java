@@ -2,13 +2,23 @@ package com.github.hui.quick.plugin.image.util;
 
 import com.github.hui.quick.plugin.base.FileReadUtil;
 import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import org.apache.commons.lang3.tuple.Triple;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.awt.font.FontRenderContext;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 字体工具类
+ * <p>
+ * - 同一个字体文件只解析一次，不同样式、大小的字体从解析结果派生并缓存
+ * - FontMetrics 从共享的画笔上获取并缓存，不用每次都新建画布
+ * <p>
  * Created by yihui on 2017/9/6.
  */
 public class FontUtil {
@@ -25,7 +35,34 @@ public class FontUtil {
 
     public static Font SMALLER_DEFAULT_ITALIC_FONT;
 
+    /**
+     * 缓存的派生字体、FontMetrics 数量上限，超出后清空重新缓存
+     */
+    private static final int MAX_CACHE_SIZE = 256;
+
+    /**
+     * 字体文件 -> 解析后的字体
+     */
+    private static final Map<String, Font> FONT_FILES = new ConcurrentHashMap<>();
+
+    /**
+     * (字体, 样式, 大小) -> 派生的字体
+     */
+    private static final Map<Triple<Font, Integer, Float>, Font> DERIVED_FONTS = new ConcurrentHashMap<>();
+
+    /**
+     * 各渲染质量对应的共享画笔，只用来获取 FontMetrics
+     */
+    private static final Map<RenderQuality, Graphics2D> SCRATCH = new EnumMap<>(RenderQuality.class);
+
+    private static final Map<RenderQuality, Map<Font, FontMetrics>> METRICS = new EnumMap<>(RenderQuality.class);
+
     static {
+        for (RenderQuality quality : RenderQuality.values()) {
+            SCRATCH.put(quality, GraphicUtil.getG2d(null, quality));
+            METRICS.put(quality, new ConcurrentHashMap<>());
+        }
+
         try {
             DEFAULT_FONT = getFont("font/txlove.ttf", Font.PLAIN, 18);
 
@@ -49,7 +86,7 @@ public class FontUtil {
 
 
     /**
-     * 根据字体文件来生成Font类
+     * 根据字体文件来生成Font类，字体文件只在第一次使用时解析
      *
      * @param fontPath 字体路径
      * @param style    样式
@@ -59,17 +96,99 @@ public class FontUtil {
      * @throws FontFormatException
      */
     public static Font getFont(String fontPath, int style, int size) throws IOException, FontFormatException {
-        InputStream inputStream = FileReadUtil.getStreamByFileName(fontPath);
-        Font font = Font.createFont(Font.TRUETYPE_FONT, inputStream);
-        return font.deriveFont(style, size);
+        return deriveFont(loadFont(fontPath), style, size);
+    }
+
+
+    /**
+     * 解析字体文件，结果会被缓存
+     *
+     * @param fontPath 字体路径
+     * @return 大小为1的字体
+     * @throws IOException
+     * @throws FontFormatException
+     */
+    public static Font loadFont(String fontPath) throws IOException, FontFormatException {
+        Font font = FONT_FILES.get(fontPath);
+        if (font != null) {
+            return font;
+        }
+
+        try (InputStream inputStream = FileReadUtil.getStreamByFileName(fontPath)) {
+            font = Font.createFont(Font.TRUETYPE_FONT, inputStream);
+        }
+        Font old = FONT_FILES.putIfAbsent(fontPath, font);
+        return old == null ? font : old;
+    }
+
+
+    /**
+     * 派生指定样式、大小的字体，相同的参数返回同一个实例
+     *
+     * @param font
+     * @param style
+     * @param size
+     * @return
+     */
+    public static Font deriveFont(Font font, int style, float size) {
+        if (font.getStyle() == style && font.getSize2D() == size) {
+            return font;
+        }
+        Triple<Font, Integer, Float> key = Triple.of(font, style, size);
+        Font derived = DERIVED_FONTS.get(key);
+        if (derived == null) {
+            if (DERIVED_FONTS.size() >= MAX_CACHE_SIZE) {
+                DERIVED_FONTS.clear();
+            }
+            derived = font.deriveFont(style, size);
+            Font old = DERIVED_FONTS.putIfAbsent(key, derived);
+            derived = old == null ? derived : old;
+        }
+        return derived;
     }
 
 
     public static FontMetrics getFontMetric(Font font) {
-        BufferedImage bf = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = GraphicUtil.getG2d(bf);
-        g2d.setFont(font);
-        return g2d.getFontMetrics();
+        return getFontMetric(font, RenderQuality.QUALITY);
+    }
+
+
+    /**
+     * 获取字体在指定渲染质量下的 FontMetrics，与在同样渲染质量的画笔上 setFont 之后获取的结果一致
+     *
+     * @param font
+     * @param quality 渲染质量，为null时采用 {@link RenderQuality#QUALITY}
+     * @return
+     */
+    public static FontMetrics getFontMetric(Font font, RenderQuality quality) {
+        quality = quality == null ? RenderQuality.QUALITY : quality;
+        Map<Font, FontMetrics> cache = METRICS.get(quality);
+        FontMetrics fontMetrics = cache.get(font);
+        if (fontMetrics == null) {
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            Graphics2D g2d = SCRATCH.get(quality);
+            synchronized (g2d) {
+                fontMetrics = g2d.getFontMetrics(font);
+            }
+            cache.put(font, fontMetrics);
+        }
+        return fontMetrics;
+    }
+
+
+    /**
+     * 指定渲染质量下的 FontRenderContext，用于不依赖画笔的文字测量
+     *
+     * @param quality 渲染质量，为null时采用 {@link RenderQuality#QUALITY}
+     * @return
+     */
+    public static FontRenderContext getFontRenderContext(RenderQuality quality) {
+        Graphics2D g2d = SCRATCH.get(quality == null ? RenderQuality.QUALITY : quality);
+        synchronized (g2d) {
+            return g2d.getFontRenderContext();
+        }
     }
 
 }
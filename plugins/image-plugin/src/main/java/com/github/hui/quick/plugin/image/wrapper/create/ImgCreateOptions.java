@@ -1,5 +1,6 @@
 package com.github.hui.quick.plugin.image.wrapper.create;
 
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
@@ -87,6 +88,36 @@ public class ImgCreateOptions {
     private DrawStyle drawStyle;
 
 
+    /**
+     * 渲染质量
+     */
+    private RenderQuality renderQuality = RenderQuality.QUALITY;
+
+
+    /**
+     * 拷贝当前的配置，用于记录绘制某块内容时的字体、对齐方式等
+     *
+     * @return
+     */
+    public ImgCreateOptions copy() {
+        ImgCreateOptions copy = new ImgCreateOptions();
+        copy.bgImg = bgImg;
+        copy.imgW = imgW;
+        copy.imgH = imgH;
+        copy.font = font;
+        copy.fontColor = fontColor;
+        copy.leftPadding = leftPadding;
+        copy.rightPadding = rightPadding;
+        copy.topPadding = topPadding;
+        copy.bottomPadding = bottomPadding;
+        copy.linePadding = linePadding;
+        copy.alignStyle = alignStyle;
+        copy.drawStyle = drawStyle;
+        copy.renderQuality = renderQuality;
+        return copy;
+    }
+
+
     /**
      * 对齐方式
      */
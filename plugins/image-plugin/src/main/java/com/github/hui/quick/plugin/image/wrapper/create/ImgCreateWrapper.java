@@ -2,18 +2,27 @@ package com.github.hui.quick.plugin.image.wrapper.create;
 
 
 import com.github.hui.quick.plugin.base.Base64Util;
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.ColorUtil;
 import com.github.hui.quick.plugin.base.GraphicUtil;
 import com.github.hui.quick.plugin.base.ImageLoadUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.encode.PngStreamWriter;
 import com.github.hui.quick.plugin.image.helper.CalculateHelper;
 import com.github.hui.quick.plugin.image.helper.ImgDrawHelper;
+import com.github.hui.quick.plugin.image.util.FontUtil;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by yihui on 2017/8/16.
@@ -47,6 +56,40 @@ public class ImgCreateWrapper {
         private final int BASE_ADD_H = 400;
 
 
+        /**
+         * 分段输出时每一段的默认高度
+         */
+        public static final int DEFAULT_STRIP_H = 512;
+
+
+        /**
+         * 已测量尺寸的内容块，生成结果时按顺序绘制
+         */
+        @Getter(AccessLevel.NONE)
+        private final List<Block> blocks = new ArrayList<>();
+
+
+        /**
+         * 已经绘制到画布上的内容块数量
+         */
+        @Getter(AccessLevel.NONE)
+        private int painted;
+
+
+        /**
+         * 是否正在绘制内容块，绘制过程中(如逐字绘制的动图)再次获取结果时直接返回画布
+         */
+        @Getter(AccessLevel.NONE)
+        private boolean painting;
+
+
+        /**
+         * 分段绘制时，当前段在内容画布中的起始位置与高度上限；整张绘制时均为0
+         */
+        @Getter(AccessLevel.NONE)
+        private int stripTop, stripClipH;
+
+
         /**
          * 实际填充的内容高度
          */
@@ -227,6 +270,17 @@ public class ImgCreateWrapper {
         }
 
 
+        public Builder setRenderQuality(String quality) {
+            return setRenderQuality(RenderQuality.getQuality(quality));
+        }
+
+
+        public Builder setRenderQuality(RenderQuality quality) {
+            options.setRenderQuality(quality);
+            return this;
+        }
+
+
         public Builder drawContent(String content) {
             if(content == null) {
                 return this;
@@ -245,6 +299,14 @@ public class ImgCreateWrapper {
         }
 
 
+        /**
+         * 测量文字时使用的字体信息，与绘制时的渲染参数保持一致
+         */
+        private FontMetrics getFontMetrics() {
+            return FontUtil.getFontMetric(options.getFont(), options.getRenderQuality());
+        }
+
+
         protected Builder drawHorizontalContent(String content) {
             String[] strs = StringUtils.split(content, "\n");
             if (strs.length == 0) { // empty line
@@ -252,11 +314,7 @@ public class ImgCreateWrapper {
                 strs[0] = " ";
             }
 
-            Graphics2D g2d = GraphicUtil.getG2d(result);
-            g2d.setFont(options.getFont());
-            FontMetrics fontMetrics = g2d.getFontMetrics();
-
-
+            FontMetrics fontMetrics = getFontMetrics();
             int fontHeight = fontMetrics.getHeight();
             int lineNum = CalculateHelper.calLineNum(strs, options.getImgW() - options.getLeftPadding() - options.getRightPadding(), fontMetrics);
 
@@ -265,35 +323,23 @@ public class ImgCreateWrapper {
             int height = lineNum * (fontHeight + options.getLinePadding());
 
 
-            if (result == null) { // 首次绘制内容时
-                result = GraphicUtil.createImg(options.getImgW(),
-                        Math.max(height + options.getTopPadding() + options.getBottomPadding(), BASE_ADD_H),
-                        null);
-                g2d = GraphicUtil.getG2d(result);
-            } else if (result.getHeight() < contentH + height + options.getBottomPadding()) {
-                // 超过原来图片高度的上限, 则需要扩充图片长度
-                result = GraphicUtil.createImg(options.getImgW(),
-                        result.getHeight() + Math.max(height + options.getBottomPadding(), BASE_ADD_H),
-                        result);
-                g2d = GraphicUtil.getG2d(result);
-            }
-
-
-            // 绘制文字
-            doDrawContent(strs, fontHeight);
+            // 先记录下来，生成图片时再绘制文字
+            String[] lines = strs;
+            int offsetY = contentH;
+            // 最后一行的下沿留出一行的余量，避免分段时截掉字体的下延部分
+            record(offsetY, offsetY + height + fontHeight, () -> doDrawContent(lines, fontHeight, offsetY));
 
             contentH += height;
             return this;
         }
 
 
-        protected void doDrawContent(String[] strs, int fontHeight) {
-            Graphics2D g2d = GraphicUtil.getG2d(result);
-            ;
+        protected void doDrawContent(String[] strs, int fontHeight, int offsetY) {
+            Graphics2D g2d = canvasG2d();
             int index = 0;
             for (String str : strs) {
                 ImgDrawHelper.drawContent(g2d, str,
-                        contentH + (fontHeight + options.getLinePadding()) * (++index)
+                        offsetY + (fontHeight + options.getLinePadding()) * (++index)
                         , options);
             }
             g2d.dispose();
@@ -305,9 +351,7 @@ public class ImgCreateWrapper {
                 contentW = options.getLeftPadding();
             }
 
-            Graphics2D g2d = GraphicUtil.getG2d(result);
-            g2d.setFont(options.getFont());
-            FontMetrics fontMetrics = g2d.getFontMetrics();
+            FontMetrics fontMetrics = getFontMetrics();
 
 
             String[] strs = StringUtils.split(content.replaceAll("\n\n", "\n \n"), "\n");
@@ -323,36 +367,22 @@ public class ImgCreateWrapper {
             int width = lineNum * (fontSize + options.getLinePadding());
 
 
-            if (result == null) {
-                result = GraphicUtil.createImg(
-                        Math.max(width + options.getRightPadding() + options.getLeftPadding(), BASE_ADD_H),
-                        options.getImgH(),
-                        null);
-                g2d = GraphicUtil.getG2d(result);
-            } else if (result.getWidth() < contentW + width + options.getRightPadding()) {
-                // 超过原来图片宽度的上限, 则需要扩充图片长度
-                result = GraphicUtil.createImg(
-                        result.getWidth() + Math.max(width + options.getRightPadding(), BASE_ADD_H),
-                        options.getImgH(),
-                        result);
-                g2d = GraphicUtil.getG2d(result);
-            }
-
-
-            doDrawVerticalLeftContent(strs, fontSize);
+            String[] lines = strs;
+            int offsetX = contentW;
+            record(offsetX, offsetX + width, () -> doDrawVerticalLeftContent(lines, fontSize, offsetX));
 
             contentW += width;
             return this;
         }
 
 
-        protected void doDrawVerticalLeftContent(String[] strs, int fontSize) {
-            Graphics2D g2d = GraphicUtil.getG2d(result);
+        protected void doDrawVerticalLeftContent(String[] strs, int fontSize, int offsetX) {
+            Graphics2D g2d = GraphicUtil.getG2d(result, options.getRenderQuality());
             // 绘制文字
             int index = 0;
             for (String str : strs) {
                 ImgDrawHelper.drawVerticalContent(g2d, str,
-                        contentW + (fontSize + options.getLinePadding()) * (index++)
+                        offsetX + (fontSize + options.getLinePadding()) * (index++)
                         , options);
             }
             g2d.dispose();
@@ -364,9 +394,7 @@ public class ImgCreateWrapper {
                 contentW = options.getRightPadding();
             }
 
-            Graphics2D g2d = GraphicUtil.getG2d(result);
-            g2d.setFont(options.getFont());
-            FontMetrics fontMetrics = g2d.getFontMetrics();
+            FontMetrics fontMetrics = getFontMetrics();
 
 
             String[] strs = StringUtils.split(content.replaceAll("\n\n", "\n \n"), "\n");
@@ -382,41 +410,29 @@ public class ImgCreateWrapper {
             int width = lineNum * (fontSize + options.getLinePadding());
 
 
-            if (result == null) {
-                result = GraphicUtil.createImg(
-                        Math.max(width + options.getRightPadding() + options.getLeftPadding(), BASE_ADD_H),
-                        options.getImgH(),
-                        null);
-                g2d = GraphicUtil.getG2d(result);
-            } else if (result.getWidth() < contentW + width + options.getLeftPadding()) {
-                // 超过原来图片宽度的上限, 则需要扩充图片长度
-                int newW = result.getWidth() + Math.max(width + options.getLeftPadding(), BASE_ADD_H);
-                result = GraphicUtil.createImg(
-                        newW,
-                        options.getImgH(),
-                        newW - result.getWidth(),
-                        0,
-                        result);
-                g2d = GraphicUtil.getG2d(result);
-            }
-
-
-            // 绘制文字
-            doDrawVerticalRightContent(strs, fontSize);
+            // 从右往左绘制，记录的是距离画布右边的距离
+            String[] lines = strs;
+            int offsetX = contentW;
+            record(offsetX, offsetX + width, () -> doDrawVerticalRightContent(lines, fontSize, offsetX));
 
             contentW += width;
             return this;
         }
 
 
-        protected void doDrawVerticalRightContent(String[] strs, int fontSize) {
-            Graphics2D g2d = GraphicUtil.getG2d(result);
+        /**
+         * @param strs
+         * @param fontSize
+         * @param offsetX  已绘制内容距离画布右边的宽度
+         */
+        protected void doDrawVerticalRightContent(String[] strs, int fontSize, int offsetX) {
+            Graphics2D g2d = GraphicUtil.getG2d(result, options.getRenderQuality());
             // 绘制文字
             int index = 0;
-            int offsetX = result.getWidth() - contentW;
+            int startX = result.getWidth() - offsetX;
             for (String str : strs) {
                 ImgDrawHelper.drawVerticalContent(g2d, str,
-                        offsetX - (fontSize + options.getLinePadding()) * (++index)
+                        startX - (fontSize + options.getLinePadding()) * (++index)
                         , options);
             }
             g2d.dispose();
@@ -426,7 +442,12 @@ public class ImgCreateWrapper {
         public Builder drawImage(String img) {
             BufferedImage bfImg;
             try {
-                bfImg = ImageLoadUtil.getImageByPath(img);
+                // 图片最终会被缩放到内容区域内，解码时直接降采样
+                if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {
+                    bfImg = ImageLoadUtil.getImageByPath(img, options.getImgW() - options.getLeftPadding() - options.getRightPadding(), 0);
+                } else {
+                    bfImg = ImageLoadUtil.getImageByPath(img, 0, options.getImgH() - options.getTopPadding() - options.getBottomPadding());
+                }
             } catch (IOException e) {
                 log.error("load draw img error! img: {}, e:{}", img, e);
                 throw new IllegalStateException("load draw img error! img: " + img, e);
@@ -436,6 +457,12 @@ public class ImgCreateWrapper {
         }
 
 
+        /**
+         * 绘制图片，图片在生成结果时才绘制到画布上，在此之前不要修改传入的图片
+         *
+         * @param bufferedImage
+         * @return
+         */
         public Builder drawImage(BufferedImage bufferedImage) {
             if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {
                 return drawHorizontalImage(bufferedImage);
@@ -446,62 +473,184 @@ public class ImgCreateWrapper {
 
 
         private Builder drawHorizontalImage(BufferedImage bufferedImage) {
-            // 绘制图片的实际高度
-            int bfImgH = bufferedImage.getWidth() > options.getImgW() ? bufferedImage.getHeight() * options.getImgW() / bufferedImage.getWidth() : bufferedImage.getHeight();
-
-            if (result == null) {
-                result = GraphicUtil.createImg(options.getImgW(),
-                        Math.max(bfImgH + options.getBottomPadding() + options.getTopPadding(), BASE_ADD_H),
-                        null);
-            } else if (result.getHeight() < contentH + bfImgH + options.getBottomPadding()) {
-                // 超过阀值
-                result = GraphicUtil.createImg(options.getImgW(),
-                        result.getHeight() + Math.max(bfImgH + options.getBottomPadding() + options.getTopPadding(), BASE_ADD_H),
-                        result);
-            }
+            int offsetY = contentH;
+            int height = ImgDrawHelper.calImageH(bufferedImage, options) + options.getLinePadding();
+            record(offsetY, offsetY + height, () -> {
+                Graphics2D g2d = canvasG2d();
+                ImgDrawHelper.drawImage(g2d, bufferedImage, offsetY, options);
+                g2d.dispose();
+            });
 
             // 更新实际高度
-            int h = ImgDrawHelper.drawImage(result,
-                    bufferedImage,
-                    contentH,
-                    options);
-            contentH += h + options.getLinePadding();
+            contentH += height;
             return this;
         }
 
 
         private Builder drawVerticalImage(BufferedImage bufferedImage) {
-            int padding = options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT ? options.getLeftPadding() : options.getRightPadding();
+            int offsetX = contentW;
+            int width = ImgDrawHelper.calVerticalImageW(bufferedImage, options) + options.getLinePadding();
+            record(offsetX, offsetX + width, () -> ImgDrawHelper.drawVerticalImage(result, bufferedImage, offsetX, options));
 
-            // 实际绘制图片的宽度
-            int bfImgW = bufferedImage.getHeight() > options.getImgH() ? bufferedImage.getWidth() * options.getImgH() / bufferedImage.getHeight() : bufferedImage.getWidth();
-            if (result == null) {
-                result = GraphicUtil.createImg(
-                        Math.max(bfImgW + options.getLeftPadding() + options.getRightPadding(), BASE_ADD_H),
-                        options.getImgH(),
-                        null);
-            } else if (result.getWidth() < contentW + bfImgW + padding) {
-                int realW = result.getWidth() + Math.max(bfImgW + options.getLeftPadding() + options.getRightPadding(), BASE_ADD_H);
-                int offsetX = options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT ? realW - result.getWidth() : 0;
-                result = GraphicUtil.createImg(
-                        realW,
-                        options.getImgH(),
-                        offsetX,
-                        0,
-                        result);
-            }
-
-            int w = ImgDrawHelper.drawVerticalImage(result, bufferedImage, contentW, options);
-            contentW += w + options.getLinePadding();
+            contentW += width;
             return this;
         }
 
 
+        /**
+         * 记录一块待绘制的内容，绘制时使用记录时的配置(字体、颜色、对齐方式等)
+         *
+         * @param start 内容块在绘制方向上的起始位置
+         * @param end   内容块在绘制方向上的结束位置，分段绘制时只绘制与当前段相交的内容块
+         * @param paint
+         */
+        private void record(int start, int end, Runnable paint) {
+            ImgCreateOptions snapshot = options.copy();
+            blocks.add(new Block(start, end, () -> {
+                ImgCreateOptions current = options;
+                options = snapshot;
+                try {
+                    paint.run();
+                } finally {
+                    options = current;
+                }
+            }));
+        }
+
+
+        /**
+         * 内容画布的画笔，分段绘制时平移到当前段，并裁剪到整张绘制时画布的范围内
+         */
+        protected Graphics2D canvasG2d() {
+            Graphics2D g2d = GraphicUtil.getG2d(result, options.getRenderQuality());
+            if (stripClipH > 0) {
+                g2d.translate(0, -stripTop);
+                g2d.clipRect(0, 0, result.getWidth(), stripClipH);
+            }
+            return g2d;
+        }
+
+
+        /**
+         * 绘制结果，之前记录的内容在这里统一绘制
+         * <p>
+         * 只在最后生成图片时调用一次，画布按所有内容的实际尺寸一次性申请；
+         * 逐帧生成动图时每次绘制之后都会调用，画布至少按 BASE_ADD_H 扩容
+         *
+         * @return
+         */
+        public BufferedImage getResult() {
+            while (paintNext()) {
+                // 绘制剩余的内容块
+            }
+            return result;
+        }
+
+
+        /**
+         * 绘制下一块记录的内容，逐帧生成的动图边绘制边输出
+         *
+         * @return false 表示没有待绘制的内容块
+         */
+        protected boolean paintNext() {
+            if (painting || painted >= blocks.size()) {
+                return false;
+            }
+
+            ensureResult();
+            painting = true;
+            try {
+                blocks.get(painted++).paint.run();
+            } finally {
+                painting = false;
+            }
+            return true;
+        }
+
+
+        /**
+         * 当前的内容画布，只包含已经绘制的内容块
+         */
+        protected BufferedImage paintedResult() {
+            return result;
+        }
+
+
+        /**
+         * 已记录的内容块数量
+         */
+        protected int recordedBlocks() {
+            return blocks.size();
+        }
+
+
+        /**
+         * 已绘制的内容块数量
+         */
+        protected int paintedBlocks() {
+            return painted;
+        }
+
+
+        /**
+         * 清空内容画布，记录的内容之后从头开始重新绘制
+         */
+        protected void resetPaint() {
+            if (result != null) {
+                Graphics2D g2d = result.createGraphics();
+                g2d.setComposite(AlphaComposite.Clear);
+                g2d.fillRect(0, 0, result.getWidth(), result.getHeight());
+                g2d.dispose();
+            }
+            painted = 0;
+        }
+
+
+        /**
+         * 保证画布能容纳已记录的所有内容，即最终输出图片的内容区域
+         */
+        private void ensureResult() {
+            if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {
+                int needH = contentH + options.getBottomPadding();
+                if (result == null) {
+                    result = GraphicUtil.createImg(options.getImgW(), Math.max(needH, BASE_ADD_H), null);
+                } else if (result.getHeight() < needH) {
+                    // 超过原来图片高度的上限, 则需要扩充图片长度
+                    result = expandResult(options.getImgW(), Math.max(needH, result.getHeight() + BASE_ADD_H));
+                }
+                return;
+            }
+
+            int needW = contentW + options.getLeftPadding() + options.getRightPadding();
+            if (result == null) {
+                result = GraphicUtil.createImg(Math.max(needW, BASE_ADD_H), options.getImgH(), null);
+            } else if (result.getWidth() < needW) {
+                // 超过原来图片宽度的上限, 则需要扩充图片宽度；从右往左绘制时，原内容右对齐
+                int newW = Math.max(needW, result.getWidth() + BASE_ADD_H);
+                int offsetX = options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT ? newW - result.getWidth() : 0;
+                result = expandResult(newW, options.getImgH(), offsetX, 0);
+            }
+        }
+
+
+        private BufferedImage expandResult(int w, int h) {
+            return expandResult(w, h, 0, 0);
+        }
+
+
+        /**
+         * 扩充画布，原画布的内容拷贝到新画布；原画布可能已经通过 getResult 交给了调用方，不能归还到缓存池
+         */
+        private BufferedImage expandResult(int w, int h, int offsetX, int offsetY) {
+            return GraphicUtil.createImg(w, h, offsetX, offsetY, result);
+        }
+
+
         public BufferedImage asImage() {
             Point point = new Point();
             BufferedImage bf = createBg(point);
 
-            Graphics2D g2d = GraphicUtil.getG2d(bf);
+            Graphics2D g2d = GraphicUtil.getG2d(bf, options.getRenderQuality());
             g2d.drawImage(result, (int) point.getX(), (int) point.getY(), null);
             g2d.dispose();
             return bf;
@@ -515,14 +664,21 @@ public class ImgCreateWrapper {
 
 
         protected BufferedImage createBg(Point point) {
-            int leftPadding = 0;
-            int topPadding = 0;
-            int bottomPadding = 0;
-            if (border) {
-                leftPadding = this.borderLeftPadding;
-                topPadding = this.borderTopPadding;
-                bottomPadding = this.borderBottomPadding;
-            }
+            return createBg(point, true);
+        }
+
+
+        /**
+         * 生成背景画布
+         *
+         * @param point 内容画布在背景上的位置
+         * @param paint 是否先绘制所有记录的内容；为 false 时只保证内容画布的大小，由调用方逐块绘制
+         * @return
+         */
+        protected BufferedImage createBg(Point point, boolean paint) {
+            int leftPadding = border ? borderLeftPadding : 0;
+            int topPadding = border ? borderTopPadding : 0;
+            int bottomPadding = border ? borderBottomPadding : 0;
 
 
             int x = leftPadding;
@@ -530,18 +686,55 @@ public class ImgCreateWrapper {
 
 
             // 实际生成图片的宽， 高
-            int realW, realH;
+            int realW = getRealW(), realH = getRealH();
+
+            BufferedImage bf = CanvasPool.lease((leftPadding << 1) + realW, realH + topPadding + bottomPadding, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = GraphicUtil.getG2d(bf, options.getRenderQuality());
+            drawBg(g2d);
+            g2d.dispose();
+
+
+            // 绘制内容
+            if (paint) {
+                getResult();
+            } else {
+                ensureResult();
+            }
+            if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
+                x = bf.getWidth() - result.getWidth() - x;
+            }
+
+            point.setLocation(x, y);
+            return bf;
+        }
+
+
+        private int getRealW() {
             if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {// 水平文本输出
-                realW = options.getImgW();
-                realH = contentH + options.getBottomPadding();
+                return options.getImgW();
             } else {// 垂直文本输出
-                realW = contentW + options.getLeftPadding() + options.getRightPadding();
-                realH = options.getImgH();
+                return contentW + options.getLeftPadding() + options.getRightPadding();
             }
+        }
 
-            BufferedImage bf = new BufferedImage((leftPadding << 1) + realW, realH + topPadding + bottomPadding, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = GraphicUtil.getG2d(bf);
 
+        private int getRealH() {
+            if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {
+                return contentH + options.getBottomPadding();
+            } else {
+                return options.getImgH();
+            }
+        }
+
+
+        /**
+         * 绘制边框与背景，分段绘制时画笔已经平移到当前段的位置
+         */
+        private void drawBg(Graphics2D g2d) {
+            int leftPadding = border ? borderLeftPadding : 0;
+            int topPadding = border ? borderTopPadding : 0;
+            int bottomPadding = border ? borderBottomPadding : 0;
+            int realW = getRealW(), realH = getRealH();
 
             // 绘制边框
             if (border) {
@@ -551,39 +744,181 @@ public class ImgCreateWrapper {
                     g2d.setColor(borderColor == null ? ColorUtil.OFF_WHITE : borderColor);
                     g2d.fillRect(0, 0, realW + (leftPadding << 1), realH + topPadding + bottomPadding);
                 }
-
-                // 绘制签名
-//                g2d.setColor(Color.GRAY);
-
-
-//                String date = DateFormatUtils.format(new Date(), "yyyy-MM-dd HH:mm:ss");
-//                borderSignText = borderSignText + "  " + date;
-
-//                int fSize = Math.min(15, realW / (borderSignText.length()));
-//                int addY = (borderBottomPadding - fSize) >> 1;
-//                g2d.setFont(new Font(ImgCreateOptions.DEFAULT_FONT.getName(), ImgCreateOptions.DEFAULT_FONT.getStyle(), fSize));
-//                g2d.drawString(borderSignText, x, y + addY + realH + g2d.getFontMetrics().getAscent());
             }
 
 
             // 绘制背景
             if (options.getBgImg() == null) {
                 g2d.setColor(bgColor == null ? Color.WHITE : bgColor);
-                g2d.fillRect(x, y, realW, realH);
+                g2d.fillRect(leftPadding, topPadding, realW, realH);
             } else {
-                g2d.drawImage(options.getBgImg(), x, y, realW, realH, null);
+                g2d.drawImage(options.getBgImg(), leftPadding, topPadding, realW, realH, null);
             }
+        }
 
 
-            // 绘制内容
-            if (options.getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
-                x = bf.getWidth() - result.getWidth() - x;
+        /**
+         * 按固定高度分页输出，适用于很长的图片
+         * <p>
+         * 水平绘制且内容尚未绘制时逐页绘制，不会申请整张图片大小的画布；否则先生成整图再切分
+         *
+         * @param pageH 每页的高度，最后一页可能不足
+         * @return
+         */
+        public List<BufferedImage> asPages(int pageH) {
+            int totalW = getRealW() + (border ? borderLeftPadding << 1 : 0);
+            int totalH = getRealH() + (border ? borderTopPadding + borderBottomPadding : 0);
+            List<BufferedImage> pages = new ArrayList<>();
+            if (!stripPaintable()) {
+                BufferedImage img = asImage();
+                for (int top = 0; top < totalH; top += pageH) {
+                    pages.add(GraphicUtil.createImg(totalW, Math.min(pageH, totalH - top), 0, -top, img));
+                }
+                CanvasPool.release(img);
+                return pages;
             }
 
-            point.setLocation(x, y);
-            return bf;
+            BufferedImage content = CanvasPool.lease(options.getImgW(), pageH, BufferedImage.TYPE_INT_ARGB);
+            try {
+                for (int top = 0; top < totalH; top += pageH) {
+                    BufferedImage page = new BufferedImage(totalW, Math.min(pageH, totalH - top), BufferedImage.TYPE_INT_ARGB);
+                    paintStrip(page, content, top);
+                    pages.add(page);
+                }
+            } finally {
+                CanvasPool.release(content);
+            }
+            return pages;
         }
 
+
+        public void asPng(OutputStream out) throws IOException {
+            asPng(out, DEFAULT_STRIP_H);
+        }
+
+
+        /**
+         * 分段绘制并逐行编码为png，内存占用只与分段的高度有关，适用于很长的图片
+         * <p>
+         * 水平绘制且内容尚未绘制时逐段绘制；否则先生成整图再逐段编码
+         *
+         * @param out    输出流，不会被关闭
+         * @param stripH 每一段的高度
+         * @throws IOException
+         */
+        public void asPng(OutputStream out, int stripH) throws IOException {
+            int totalW = getRealW() + (border ? borderLeftPadding << 1 : 0);
+            int totalH = getRealH() + (border ? borderTopPadding + borderBottomPadding : 0);
+            try (PngStreamWriter writer = new PngStreamWriter(out, totalW, totalH, !isOpaque(), -1)) {
+                if (!stripPaintable()) {
+                    BufferedImage img = asImage();
+                    int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+                    writer.writeRows(pixels, 0, totalW, totalH);
+                    CanvasPool.release(img);
+                    return;
+                }
+
+                BufferedImage strip = CanvasPool.lease(totalW, stripH, BufferedImage.TYPE_INT_ARGB);
+                BufferedImage content = CanvasPool.lease(options.getImgW(), stripH, BufferedImage.TYPE_INT_ARGB);
+                try {
+                    int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+                    for (int top = 0; top < totalH; top += stripH) {
+                        paintStrip(strip, content, top);
+                        writer.writeRows(pixels, 0, totalW, Math.min(stripH, totalH - top));
+                    }
+                } finally {
+                    CanvasPool.release(strip);
+                    CanvasPool.release(content);
+                }
+            }
+        }
+
+
+        /**
+         * 只有水平绘制、且内容还没有绘制到画布上时才能分段绘制
+         */
+        protected boolean stripPaintable() {
+            return options.getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL && result == null;
+        }
+
+
+        /**
+         * 输出图片是否完全不透明，不透明时png不需要输出透明通道
+         */
+        private boolean isOpaque() {
+            if (border && (borderImage != null ? borderImage.getTransparency() != Transparency.OPAQUE
+                    : borderColor != null && borderColor.getAlpha() != 255)) {
+                return false;
+            }
+            if (options.getBgImg() != null) {
+                return options.getBgImg().getTransparency() == Transparency.OPAQUE;
+            }
+            return bgColor == null || bgColor.getAlpha() == 255;
+        }
+
+
+        /**
+         * 绘制输出图片中 [top, top + strip.getHeight()) 的部分，与 asImage 的绘制过程一致：
+         * 先画背景，内容块画在一张透明的内容画布上，再叠加到背景上
+         *
+         * @param strip   输出的一段
+         * @param content 与内容画布同宽的临时画布
+         * @param top     这一段在输出图片中的起始位置
+         */
+        private void paintStrip(BufferedImage strip, BufferedImage content, int top) {
+            int x = border ? borderLeftPadding : 0;
+            int y = border ? borderTopPadding : 0;
+
+            Graphics2D g2d = strip.createGraphics();
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, strip.getWidth(), strip.getHeight());
+            g2d.dispose();
+
+            g2d = GraphicUtil.getG2d(strip, options.getRenderQuality());
+            g2d.translate(0, -top);
+            drawBg(g2d);
+            g2d.dispose();
+
+            Graphics2D cg = content.createGraphics();
+            cg.setComposite(AlphaComposite.Clear);
+            cg.fillRect(0, 0, content.getWidth(), content.getHeight());
+            cg.dispose();
+
+            // 内容画布按一次性绘制时的大小裁剪
+            stripTop = top - y;
+            stripClipH = Math.max(contentH + options.getBottomPadding(), BASE_ADD_H);
+            result = content;
+            try {
+                for (Block block : blocks) {
+                    if (block.end >= stripTop && block.start < stripTop + content.getHeight()) {
+                        block.paint.run();
+                    }
+                }
+            } finally {
+                result = null;
+                stripTop = stripClipH = 0;
+            }
+
+            g2d = GraphicUtil.getG2d(strip, options.getRenderQuality());
+            g2d.drawImage(content, x, 0, null);
+            g2d.dispose();
+        }
+
+
+        /**
+         * 待绘制的内容块，记录它在绘制方向上的范围
+         */
+        private static class Block {
+            private final int start;
+            private final int end;
+            private final Runnable paint;
+
+            Block(int start, int end, Runnable paint) {
+                this.start = start;
+                this.end = end;
+                this.paint = paint;
+            }
+        }
     }
 
 
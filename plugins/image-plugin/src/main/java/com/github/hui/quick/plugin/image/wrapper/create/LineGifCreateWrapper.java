@@ -2,18 +2,35 @@ package com.github.hui.quick.plugin.image.wrapper.create;
 
 
 import com.github.hui.quick.plugin.base.Base64Util;
+import com.github.hui.quick.plugin.base.CanvasPool;
+import com.github.hui.quick.plugin.base.FileWriteUtil;
 import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.gif.FrameBudget;
 import com.github.hui.quick.plugin.base.gif.GifHelper;
+import com.github.hui.quick.plugin.base.gif.GifSink;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * 逐行生成gif图片
+ * <p>
+ * 绘制的内容先记录下来，输出时才逐块绘制，每一帧都在上一帧的基础上生成并直接交给编码器，
+ * 同时存在的只有内容画布、背景与当前帧，与行数无关
+ * <p>
  * Created by yihui on 2017/9/15.
  */
 public class LineGifCreateWrapper {
@@ -27,13 +44,58 @@ public class LineGifCreateWrapper {
 
         private int delay = 300;
 
-        protected List<BufferedImage> frameList = new ArrayList<>();
+        /**
+         * true 表示输出apng，否则输出gif
+         */
+        private boolean apng;
+
+        /**
+         * 帧预算，null 表示不限制
+         */
+        private FrameBudget frameBudget;
+
+        /**
+         * 绘制内容块时生成、等待输出的帧
+         */
+        protected Deque<Frame> frameQueue = new ArrayDeque<>();
+
+        /**
+         * 逐行输出的帧：对应的内容块绘制完之后，截取内容区域作为一帧
+         */
+        private final List<LineFrame> lineFrames = new ArrayList<>();
+
+        /**
+         * 预计输出的帧数，不包括背景与最后重复的一帧
+         */
+        protected int expectedFrames;
 
         public Builder setDelay(int delay) {
             this.delay = delay;
             return this;
         }
 
+        /**
+         * 输出真彩色的apng，不做颜色量化
+         *
+         * @param apng
+         * @return
+         */
+        public Builder setApng(boolean apng) {
+            this.apng = apng;
+            return this;
+        }
+
+        /**
+         * 限制输出的帧数、大小或耗时，相同的连续帧会合并，超出预算时按比例抽帧
+         *
+         * @param frameBudget
+         * @return
+         */
+        public Builder setFrameBudget(FrameBudget frameBudget) {
+            this.frameBudget = frameBudget;
+            return this;
+        }
+
         protected Builder createImgFrame(BufferedImage img, int contentSize) {
             int realW, realH, x, y;
             if (getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {
@@ -53,80 +115,353 @@ public class LineGifCreateWrapper {
 
 
             BufferedImage bf = GraphicUtil.createImg(realW, realH, x, y, img);
-            frameList.add(bf);
+            frameQueue.add(new Frame(bf, null));
+            return this;
+        }
+
+
+        /**
+         * 只记录相对上一帧变化的区域，区域之外的内容与上一帧保持一致
+         *
+         * @param patch   变化区域的内容，null 表示与上一帧相同
+         * @param area    变化区域在内容画布上的位置
+         * @param canvasW 内容画布的宽度，从右往左绘制时用来换算位置
+         * @return
+         */
+        protected Builder createPatchFrame(BufferedImage patch, Rectangle area, int canvasW) {
+            Rectangle rect = new Rectangle(area);
+            if (getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
+                // 画布从右往左扩充，记录距离右边的偏移
+                rect.x -= canvasW;
+            }
+            frameQueue.add(new Frame(patch, rect));
+            return this;
+        }
+
+
+        /**
+         * 当前记录的内容全部绘制之后，截取内容区域作为一帧
+         */
+        private Builder markLineFrame() {
+            int contentSize = getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL ? getContentH() : getContentW();
+            lineFrames.add(new LineFrame(recordedBlocks(), contentSize));
+            expectedFrames++;
             return this;
         }
 
         public ImgCreateWrapper.Builder drawContent(String content) {
             super.drawContent(content);
-            int contentSize = getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL ? getContentH() : getContentW();
-            return createImgFrame(getResult(), contentSize);
+            return markLineFrame();
         }
 
 
         public LineGifCreateWrapper.Builder drawImage(BufferedImage bufferedImage) {
             super.drawImage(bufferedImage);
-            int contentSize = getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL ? getContentH() : getContentW();
-            return createImgFrame(getResult(), contentSize);
+            return markLineFrame();
+        }
+
+
+        /**
+         * 绘制过程中会生成帧，不支持分段绘制
+         */
+        @Override
+        protected boolean stripPaintable() {
+            return false;
         }
 
 
-        private List<BufferedImage> asImages() {
+        /**
+         * 重新开始逐块绘制之前调用，清空上一次输出时的状态
+         */
+        protected void restart() {
+            resetPaint();
+            frameQueue.clear();
+        }
 
-            List<BufferedImage> gifFrame = new ArrayList<>();
 
-            Point point = new Point();
-            BufferedImage bg = createBg(point);
-            int bgW = bg.getWidth();
-            int x, y=0, w, h;
-            int border = 0;
+        /**
+         * 按顺序生成动图的各帧(从背景开始)，每一帧在上一帧的基础上绘制
+         * <p>
+         * 返回的图片会在下一帧中复用，需要保留时自行拷贝
+         *
+         * @return
+         */
+        public Iterator<BufferedImage> asFrames() {
+            return new FrameSource();
+        }
 
-            if (isBorder()) {
-                border = getBorderLeftPadding();
-                y = getBorderTopPadding();
-            }
 
-            Graphics2D g2d;
-            BufferedImage tmp;
-            gifFrame.add(bg);
-            for (BufferedImage img : frameList) {
-                tmp = GraphicUtil.createImg(bg.getWidth(), bg.getHeight(), bg);
-                g2d = GraphicUtil.getG2d(tmp);
-
-                w = img.getWidth();
-                h = img.getHeight();
-                if (getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
-                    x = bgW - w - border;
-                } else {
-                    x = border;
+        /**
+         * 逐帧绘制并交给gif/apng编码，每画好一帧就开始编码，所有帧复用同一张画布
+         *
+         * @param outputStream
+         * @return false 表示编码失败
+         */
+        private boolean writeGif(OutputStream outputStream) {
+            FrameSource source = new FrameSource();
+            try (GifSink sink = GifHelper.newSink(outputStream, true, apng, frameBudget)) {
+                sink.setExpectedFrames(expectedFrames + 2);
+                BufferedImage last = null;
+                boolean ok = true;
+                while (ok && source.hasNext()) {
+                    last = source.next();
+                    ok = sink.accept(last, delay, source.dirty);
                 }
 
-                g2d.drawImage(img, x, y, w, h, null);
-                gifFrame.add(tmp);
+                // 最后一帧再输出一次，与 GifHelper.saveGif 的效果保持一致
+                ok = ok && sink.accept(last, delay);
+                return sink.finish() && ok;
+            } finally {
+                source.release();
             }
-
-
-            return gifFrame;
         }
 
 
         public boolean asGif(String file) throws FileNotFoundException {
-            GifHelper.saveGif(asImages(), delay, file);
-            return true;
+            FileWriteUtil.mkDir(new File(file).getParentFile());
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+                return writeGif(outputStream);
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                return false;
+            }
         }
 
 
         public String asString() {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            GifHelper.saveGif(asImages(), delay, outputStream);
-            return Base64Util.encode(outputStream);
+            return Base64Util.encode(asStream());
         }
 
 
         public byte[] asBytes() {
+            return asStream().toByteArray();
+        }
+
+
+        private ByteArrayOutputStream asStream() {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            GifHelper.saveGif(asImages(), delay, outputStream);
-            return outputStream.toByteArray();
+            if (!writeGif(outputStream)) {
+                throw new IllegalStateException("write gif error!");
+            }
+            return outputStream;
+        }
+
+
+        /**
+         * 边绘制边生成帧：逐块绘制记录的内容，绘制过程中生成的帧、以及每块内容对应的逐行帧依次输出
+         */
+        private class FrameSource implements Iterator<BufferedImage> {
+            private final BufferedImage bg;
+
+            /**
+             * 当前帧
+             */
+            private final BufferedImage canvas;
+
+            /**
+             * 内容画布在背景上的位置
+             */
+            private final int x, y;
+
+            /**
+             * 当前帧相对上一帧可能变化的区域，null 表示整帧
+             */
+            private Rectangle dirty;
+
+            /**
+             * 下一个待输出的逐行帧
+             */
+            private int lineIndex;
+
+            private boolean ready = true;
+
+            private boolean closed;
+
+            FrameSource() {
+                if (paintedBlocks() > 0) {
+                    // 之前已经绘制过，从头重新绘制
+                    restart();
+                }
+
+                Point point = new Point();
+                bg = createBg(point, false);
+                x = isBorder() ? getBorderLeftPadding() : 0;
+                y = (int) point.getY();
+                // 第一帧为背景
+                canvas = GraphicUtil.createImg(bg.getWidth(), bg.getHeight(), bg);
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (!ready && !closed) {
+                    ready = prepare();
+                    if (!ready) {
+                        close();
+                    }
+                }
+                return ready;
+            }
+
+            @Override
+            public BufferedImage next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                return canvas;
+            }
+
+            /**
+             * 生成下一帧，返回 false 表示所有的帧都已输出
+             */
+            private boolean prepare() {
+                while (true) {
+                    if (!frameQueue.isEmpty()) {
+                        drawFrame(frameQueue.poll());
+                        return true;
+                    }
+
+                    if (lineIndex < lineFrames.size() && lineFrames.get(lineIndex).blocks <= paintedBlocks()) {
+                        drawLine(lineFrames.get(lineIndex++).contentSize);
+                        return true;
+                    }
+
+                    if (!paintNext()) {
+                        return false;
+                    }
+                }
+            }
+
+            /**
+             * 内容画布截取 contentSize 之后绘制到背景上
+             */
+            private void drawLine(int contentSize) {
+                BufferedImage result = paintedResult();
+                Rectangle area;
+                int offsetX = x;
+                if (getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.HORIZONTAL) {
+                    area = new Rectangle(x, y, getOptions().getImgW(), contentSize);
+                } else if (getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT) {
+                    area = new Rectangle(bg.getWidth() - x - contentSize, y, contentSize, getOptions().getImgH());
+                    offsetX = bg.getWidth() - x - result.getWidth();
+                } else {
+                    area = new Rectangle(x, y, contentSize, getOptions().getImgH());
+                }
+
+                resetBg();
+                Graphics2D g2d = GraphicUtil.getG2d(canvas, getOptions().getRenderQuality());
+                g2d.clip(area);
+                g2d.drawImage(result, offsetX, y, null);
+                g2d.dispose();
+                dirty = null;
+            }
+
+            /**
+             * 绘制内容块时生成的帧
+             */
+            private void drawFrame(Frame frame) {
+                if (frame.patch != null) {
+                    Rectangle area = new Rectangle(frame.patch);
+                    area.translate(getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT ? bg.getWidth() - x : x, y);
+                    drawPatch(frame.img, area);
+                    dirty = area;
+                    return;
+                }
+
+                BufferedImage img = frame.img;
+                int w = img.getWidth(), h = img.getHeight();
+                int offsetX = getOptions().getDrawStyle() == ImgCreateOptions.DrawStyle.VERTICAL_RIGHT ? bg.getWidth() - w - x : x;
+                resetBg();
+                Graphics2D g2d = GraphicUtil.getG2d(canvas, getOptions().getRenderQuality());
+                g2d.drawImage(img, offsetX, y, w, h, null);
+                g2d.dispose();
+                CanvasPool.release(img);
+                dirty = null;
+            }
+
+            /**
+             * 变化区域先恢复成背景，再绘制这一帧的内容，与整帧绘制的结果一致
+             */
+            private void drawPatch(BufferedImage patch, Rectangle area) {
+                if (area.isEmpty()) {
+                    return;
+                }
+
+                Graphics2D g2d = canvas.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.clip(area);
+                g2d.drawImage(bg, 0, 0, null);
+                g2d.dispose();
+
+                if (patch != null) {
+                    g2d = GraphicUtil.getG2d(canvas, getOptions().getRenderQuality());
+                    g2d.drawImage(patch, area.x, area.y, area.width, area.height, null);
+                    g2d.dispose();
+                    CanvasPool.release(patch);
+                }
+            }
+
+            private void resetBg() {
+                Graphics2D g2d = canvas.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(bg, 0, 0, null);
+                g2d.dispose();
+            }
+
+            /**
+             * 所有帧输出之后归还背景，当前帧仍然可以使用
+             */
+            private void close() {
+                if (!closed) {
+                    closed = true;
+                    ready = false;
+                    CanvasPool.release(bg);
+                }
+            }
+
+            /**
+             * 不再使用当前帧时，归还所有画布
+             */
+            void release() {
+                close();
+                CanvasPool.release(canvas);
+            }
+        }
+    }
+
+
+    /**
+     * 动图的一帧
+     */
+    protected static class Frame {
+        /**
+         * 内容区域的图片；只记录变化区域时为变化区域的内容
+         */
+        private final BufferedImage img;
+
+        /**
+         * 变化区域在内容画布上的位置，从右往左绘制时 x 为距离画布右边的偏移；null 表示完整的一帧
+         */
+        private final Rectangle patch;
+
+        Frame(BufferedImage img, Rectangle patch) {
+            this.img = img;
+            this.patch = patch;
+        }
+    }
+
+
+    /**
+     * 逐行输出的帧，前 blocks 个内容块绘制完之后输出
+     */
+    private static class LineFrame {
+        private final int blocks;
+        private final int contentSize;
+
+        LineFrame(int blocks, int contentSize) {
+            this.blocks = blocks;
+            this.contentSize = contentSize;
         }
     }
 
@@ -1,14 +1,21 @@
 package com.github.hui.quick.plugin.image.wrapper.create;
 
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
 import com.github.hui.quick.plugin.image.helper.ImgDrawHelper;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.function.BiFunction;
+import java.util.function.ToIntBiFunction;
 
 /**
  * 逐字绘制的gif图片生成
  * <p>
+ * 每个字只记录相对上一帧变化的区域(新出现的字、扩大的内容区域)，输出时在上一帧的基础上绘制，
+ * 内存占用与编码耗时取决于文字的多少，而不是 文字数 x 画布大小
+ * <p>
  * Created by yihui on 2017/9/15.
  */
 public class WordGifCreateWrapper {
@@ -19,7 +26,26 @@ public class WordGifCreateWrapper {
 
 
     public static class Builder extends LineGifCreateWrapper.Builder {
+
+        /**
+         * 上一帧内容区域在绘制方向上的大小
+         */
+        private int frameSize;
+
+        /**
+         * 上一帧之后已经绘制到画布上、但还没有输出的区域
+         */
+        private Rectangle pending = new Rectangle();
+
+        /**
+         * 计算 pending 时的画布，画布扩容之后位置可能变化
+         */
+        private BufferedImage pendingCanvas;
+
         public ImgCreateWrapper.Builder drawContent(String content) {
+            if (content != null) {
+                expectedFrames += content.length();
+            }
             switch (getOptions().getDrawStyle()) {
                 case HORIZONTAL:
                     return drawHorizontalContent(content);
@@ -34,100 +60,205 @@ public class WordGifCreateWrapper {
 
 
         @Override
-        protected void doDrawContent(String[] strs, int fontHeight) {
+        protected void restart() {
+            super.restart();
+            frameSize = 0;
+            pending = new Rectangle();
+            pendingCanvas = null;
+        }
+
+
+        @Override
+        protected LineGifCreateWrapper.Builder createImgFrame(BufferedImage img, int contentSize) {
+            // 完整的一帧，之后的帧以它为基准
+            frameSize = contentSize;
+            pending = new Rectangle();
+            return super.createImgFrame(img, contentSize);
+        }
+
+
+        @Override
+        protected void doDrawContent(String[] strs, int fontHeight, int offsetY) {
             BufferedImage result = getResult();
-            int contentH = getContentH();
 
             Graphics2D g2d;
-            int index = 0, contentSize;
-            BufferedImage temp;
+            int index = 0;
             for (String str : strs) {
-                ++index;
-                for (int i = 0; i < str.length(); i++) {
-                    temp = GraphicUtil.createImg(result.getWidth(), result.getHeight(), result);
-                    g2d = GraphicUtil.getG2d(temp);
-
-                    contentSize = ImgDrawHelper.drawContent(g2d, str, i,
-                            contentH + (fontHeight + getOptions().getLinePadding()) * index
-                            , getOptions());
-                    createImgFrame(temp, contentSize);
-                }
+                int y = offsetY + (fontHeight + getOptions().getLinePadding()) * (++index);
+                drawFrames(str.length(), false,
+                        (g, i) -> ImgDrawHelper.drawContent(g, str, i, y, getOptions()),
+                        (g, i) -> ImgDrawHelper.charBounds(g, str, i, y, getOptions()));
 
 
-                g2d = GraphicUtil.getG2d(result);
-                ImgDrawHelper.drawContent(g2d, str,
-                        contentH + (fontHeight + getOptions().getLinePadding()) * index
-                        , getOptions());
+                g2d = GraphicUtil.getG2d(result, getOptions().getRenderQuality());
+                ImgDrawHelper.drawContent(g2d, str, y, getOptions());
+                g2d.dispose();
             }
         }
 
 
-        protected void doDrawVerticalLeftContent(String[] strs, int fontSize) {
+        @Override
+        protected void doDrawVerticalLeftContent(String[] strs, int fontSize, int offsetX) {
             BufferedImage result = getResult();
-            int contentW = getContentW();
-
 
-            BufferedImage temp;
             Graphics2D g2d;
             // 绘制文字
-            int index = 0, contentSize;
+            int index = 0;
             for (String str : strs) {
-                for (int i = 0; i < str.length(); i++) {
-                    temp = GraphicUtil.createImg(result.getWidth(), result.getHeight(), result);
-                    g2d = GraphicUtil.getG2d(temp);
+                int x = offsetX + (fontSize + getOptions().getLinePadding()) * (index++);
+                drawFrames(str.length(), true,
+                        (g, i) -> ImgDrawHelper.drawVerticalContent(g, str, i, x, getOptions()),
+                        (g, i) -> ImgDrawHelper.verticalCharBounds(g, str, i, x, getOptions()));
+
 
+                g2d = GraphicUtil.getG2d(result, getOptions().getRenderQuality());
+                ImgDrawHelper.drawVerticalContent(g2d, str, x, getOptions());
+                g2d.dispose();
+            }
+        }
 
-                    contentSize = ImgDrawHelper.drawVerticalContent(g2d, str, i,
-                            contentW + (fontSize + getOptions().getLinePadding()) * (index)
-                            , getOptions());
 
-                    createImgFrame(temp, contentSize);
-                }
+        @Override
+        protected void doDrawVerticalRightContent(String[] strs, int fontSize, int offsetX) {
+            BufferedImage result = getResult();
+
+            Graphics2D g2d;
+            // 绘制文字
+            int index = 0;
+            int startX = result.getWidth() - offsetX;
+            for (String str : strs) {
+                int x = startX - (fontSize + getOptions().getLinePadding()) * (++index);
+                drawFrames(str.length(), true,
+                        (g, i) -> result.getWidth() - ImgDrawHelper.drawVerticalContent(g, str, i, x, getOptions()),
+                        (g, i) -> ImgDrawHelper.verticalCharBounds(g, str, i, x, getOptions()));
 
 
-                g2d = GraphicUtil.getG2d(result);
-                ImgDrawHelper.drawVerticalContent(g2d, str,
-                        contentW + (fontSize + getOptions().getLinePadding()) * (index)
-                        , getOptions());
-                index++;
+                g2d = GraphicUtil.getG2d(result, getOptions().getRenderQuality());
+                ImgDrawHelper.drawVerticalContent(g2d, str, x, getOptions());
+                g2d.dispose();
             }
         }
 
 
-        protected void doDrawVerticalRightContent(String[] strs, int fontSize) {
-
+        /**
+         * 逐字输出一段文字的各帧，每帧只保存相对上一帧变化的区域
+         *
+         * @param len       文字长度，每个字输出一帧
+         * @param inclusive true 表示第 i 帧显示前 i+1 个字，否则显示前 i 个字
+         * @param draw      (画笔, i) -> 绘制第 i 帧的文字，返回内容区域在绘制方向上的大小
+         * @param bounds    (画笔, k) -> 第 k 个字的像素边界
+         */
+        private void drawFrames(int len, boolean inclusive,
+                                ToIntBiFunction<Graphics2D, Integer> draw,
+                                BiFunction<Graphics2D, Integer, Rectangle> bounds) {
             BufferedImage result = getResult();
-            int contentW = getContentW();
-
+            RenderQuality quality = getOptions().getRenderQuality();
 
-            BufferedImage temp;
+            // 每帧只在变化的区域内绘制，整段文字共用一张画布
+            BufferedImage canvas = CanvasPool.lease(result.getWidth(), result.getHeight(), BufferedImage.TYPE_INT_ARGB);
             Graphics2D g2d;
+            int shown = 0;
+            try {
+                for (int i = 0; i < len; i++) {
+                    // 先不落笔，计算内容区域的大小以及新出现的字
+                    g2d = GraphicUtil.getG2d(result, quality);
+                    g2d.clipRect(0, 0, 0, 0);
+                    int size = draw.applyAsInt(g2d, i);
+                    int count = inclusive ? i + 1 : i;
+                    Rectangle dirty = pending.isEmpty() || pendingCanvas == result ? pending : null;
+                    for (int k = shown; k < count && dirty != null; k++) {
+                        dirty = union(dirty, bounds.apply(g2d, k));
+                    }
+                    g2d.dispose();
+                    shown = count;
+
+                    if (dirty == null || size < frameSize) {
+                        // 无法确定变化的区域，整帧输出
+                        BufferedImage temp = GraphicUtil.createImg(result.getWidth(), result.getHeight(), result);
+                        g2d = GraphicUtil.getG2d(temp, quality);
+                        draw.applyAsInt(g2d, i);
+                        g2d.dispose();
+                        createImgFrame(temp, size);
+                        CanvasPool.release(temp);
+                        continue;
+                    }
+
+                    dirty = union(dirty, grownArea(result, size)).intersection(cropArea(result, size));
+                    BufferedImage patch = null;
+                    if (dirty.isEmpty()) {
+                        dirty = new Rectangle();
+                    } else {
+                        // 变化的区域恢复成绘制文字之前的内容，再绘制这一帧
+                        g2d = canvas.createGraphics();
+                        g2d.setComposite(AlphaComposite.Src);
+                        g2d.clip(dirty);
+                        g2d.drawImage(result, 0, 0, null);
+                        g2d.dispose();
+
+                        g2d = GraphicUtil.getG2d(canvas, quality);
+                        g2d.clip(dirty);
+                        draw.applyAsInt(g2d, i);
+                        g2d.dispose();
+                        patch = GraphicUtil.createImg(dirty.width, dirty.height, -dirty.x, -dirty.y, canvas);
+                    }
+
+                    createPatchFrame(patch, dirty, result.getWidth());
+                    frameSize = size;
+                    pending = new Rectangle();
+                }
+            } finally {
+                CanvasPool.release(canvas);
+            }
 
-            // 绘制文字
-            int index = 0, contentSize;
-            int offsetX = result.getWidth() - contentW;
-            for (String str : strs) {
-                ++index;
-                for (int i = 0; i < str.length(); i++) {
-                    temp = GraphicUtil.createImg(result.getWidth(), result.getHeight(), result);
-                    g2d = GraphicUtil.getG2d(temp);
+            // 最后一帧没有显示的字，绘制到画布之后随下一帧输出
+            g2d = GraphicUtil.getG2d(result, quality);
+            for (int k = shown; k < len; k++) {
+                pending = union(pending, bounds.apply(g2d, k));
+            }
+            g2d.dispose();
+            pendingCanvas = result;
+        }
 
 
-                    contentSize = ImgDrawHelper.drawVerticalContent(g2d, str, i,
-                            offsetX - (fontSize + getOptions().getLinePadding()) * index
-                            , getOptions());
-                    contentSize = temp.getWidth() - contentSize;
+        /**
+         * 内容区域从上一帧的大小扩大到 size 时，新露出来的区域
+         */
+        private Rectangle grownArea(BufferedImage result, int size) {
+            switch (getOptions().getDrawStyle()) {
+                case HORIZONTAL:
+                    return new Rectangle(0, frameSize, result.getWidth(), size - frameSize);
+                case VERTICAL_RIGHT:
+                    return new Rectangle(result.getWidth() - size, 0, size - frameSize, result.getHeight());
+                default:
+                    return new Rectangle(frameSize, 0, size - frameSize, result.getHeight());
+            }
+        }
 
 
-                    createImgFrame(temp, contentSize);
-                }
+        /**
+         * 每一帧从画布上截取的内容区域，与 createImgFrame 保持一致
+         */
+        private Rectangle cropArea(BufferedImage result, int size) {
+            Rectangle area;
+            switch (getOptions().getDrawStyle()) {
+                case HORIZONTAL:
+                    area = new Rectangle(0, 0, result.getWidth(), size);
+                    break;
+                case VERTICAL_RIGHT:
+                    area = new Rectangle(result.getWidth() - size, 0, size, result.getHeight());
+                    break;
+                default:
+                    area = new Rectangle(0, 0, size, result.getHeight());
+            }
+            return area.intersection(new Rectangle(result.getWidth(), result.getHeight()));
+        }
 
 
-                g2d = GraphicUtil.getG2d(result);
-                ImgDrawHelper.drawVerticalContent(g2d, str,
-                        offsetX - (fontSize + getOptions().getLinePadding()) * index
-                        , getOptions());
+        private static Rectangle union(Rectangle a, Rectangle b) {
+            if (a.isEmpty()) {
+                return b;
             }
+            return b.isEmpty() ? a : a.union(b);
         }
     }
 
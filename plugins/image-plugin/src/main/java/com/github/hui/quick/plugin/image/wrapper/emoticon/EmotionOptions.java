@@ -1,5 +1,7 @@
 package com.github.hui.quick.plugin.image.wrapper.emoticon;
 
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.gif.FrameBudget;
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 import lombok.Data;
 
@@ -56,6 +58,15 @@ public class EmotionOptions {
      */
     private int delay;
 
+    /**
+     * true 表示输出apng，否则输出gif
+     */
+    private boolean apng;
+
+    /**
+     * 帧预算，null 表示不限制
+     */
+    private FrameBudget frameBudget;
 
 
     private ImgCreateOptions.DrawStyle drawStyle;
@@ -70,4 +81,9 @@ public class EmotionOptions {
     private int bottomPadding;
 
     private int linePadding;
+
+    /**
+     * 渲染质量
+     */
+    private RenderQuality renderQuality = RenderQuality.QUALITY;
 }
@@ -2,12 +2,18 @@ package com.github.hui.quick.plugin.image.wrapper.emoticon;
 
 
 import com.github.hui.quick.plugin.base.Base64Util;
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.ColorUtil;
 import com.github.hui.quick.plugin.base.FileReadUtil;
 import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.gif.FrameBudget;
 import com.github.hui.quick.plugin.base.gif.GifDecoder;
 import com.github.hui.quick.plugin.base.gif.GifHelper;
+import com.github.hui.quick.plugin.base.gif.GifSink;
+import com.github.hui.quick.plugin.base.resample.Resampler;
 import com.github.hui.quick.plugin.image.helper.CalculateHelper;
+import com.github.hui.quick.plugin.image.helper.GlyphCache;
 import com.github.hui.quick.plugin.image.util.PunctuationUtil;
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 import com.github.hui.quick.plugin.image.wrapper.create.LineGifCreateWrapper;
@@ -18,8 +24,14 @@ import org.apache.commons.lang3.StringUtils;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * 表情包封装类，目前只支持静态文字，动态图片
@@ -32,6 +44,16 @@ public class EmotionWrapper {
 
     private EmotionOptions options;
 
+    /**
+     * 背景与文字组成的静态底图，多次输出时复用
+     */
+    private BufferedImage base;
+
+    /**
+     * 图片在底图上的位置
+     */
+    private int imgX, imgY;
+
     private EmotionWrapper(EmotionOptions options) {
         this.options = options;
     }
@@ -61,14 +83,74 @@ public class EmotionWrapper {
         return Base64Util.encode(outputStream);
     }
 
+    /**
+     * 背景与文字只绘制一次，每一帧只有图片区域变化：
+     * 各帧的图片区域(缩放 + 叠加到背景上)并行生成，再按顺序贴到同一张画布上交给编码器
+     */
     private void draw(OutputStream outputStream) {
+        BufferedImage base = getBase();
+        int w = base.getWidth(), h = base.getHeight();
+        List<BufferedImage> imgs = options.getImgs();
+        // 每一帧相对上一帧变化的区域
+        Rectangle area = new Rectangle(imgX, imgY, options.getGifW(), options.getGifH()).intersection(new Rectangle(w, h));
+
+        int window = GifHelper.isParallel() && imgs.size() > 1 ? ForkJoinPool.getCommonPoolParallelism() + 1 : 1;
+        Deque<Future<BufferedImage>> layers = new ArrayDeque<>();
+        int next = 0;
+
+        BufferedImage frame = GraphicUtil.createImg(w, h, base);
+        try (GifSink sink = GifHelper.newSink(outputStream, true, options.isApng(), options.getFrameBudget())) {
+            sink.setExpectedFrames(imgs.size() + 1);
+            boolean ok = true;
+            for (int i = 0; ok && i < imgs.size(); i++) {
+                while (next < imgs.size() && layers.size() < window) {
+                    BufferedImage img = imgs.get(next++);
+                    layers.addLast(window > 1 ? ForkJoinPool.commonPool().submit(() -> drawLayer(base, img))
+                            : CompletableFuture.completedFuture(drawLayer(base, img)));
+                }
+
+                BufferedImage layer = layers.pollFirst().get();
+                Graphics2D g2d = frame.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(layer, imgX, imgY, null);
+                g2d.dispose();
+                CanvasPool.release(layer);
+                ok = sink.accept(frame, options.getDelay(), i == 0 ? null : area);
+            }
+            // 最后一帧再输出一次，与 GifHelper.saveGif 的效果保持一致
+            ok = ok && sink.accept(frame, options.getDelay());
+            if (!sink.finish() || !ok) {
+                throw new IllegalStateException("draw emotion gif error!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("draw emotion gif interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("draw emotion gif error!", e.getCause());
+        } finally {
+            for (Future<BufferedImage> layer : layers) {
+                layer.cancel(false);
+            }
+            CanvasPool.release(frame);
+        }
+    }
+
+
+    /**
+     * 背景与文字组成的静态底图，首次输出时绘制，之后直接复用
+     */
+    private synchronized BufferedImage getBase() {
+        if (base != null) {
+            return base;
+        }
+
         int w = options.getW(), h = options.getH();
         int gifW = options.getGifW(), gifH = options.getGifH();
         int leftPadding = options.getLeftPadding(), rightPadding = options.getRightPadding(), topPadding = options.getTopPadding(), bottomPadding = options.getBottomPadding();
         int contentSize = options.getContentSize();
 
         BufferedImage result = new BufferedImage(options.getW(), options.getH(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = GraphicUtil.getG2d(result);
+        Graphics2D g2d = GraphicUtil.getG2d(result, options.getRenderQuality());
         // 先绘制背景
         g2d.setFont(options.getFont());
         g2d.fillRect(0, 0, w, h);
@@ -113,14 +195,12 @@ public class EmotionWrapper {
         drawContent(g2d, contentX, contentY, options.getDrawStyle());
 
 
-        // 绘制图片
-        List<BufferedImage> frames = new ArrayList<>();
-        for (BufferedImage img : options.getImgs()) {
-            frames.add(drawImage(result, img, imgX, imgY, gifW, gifH));
-        }
-
+        g2d.dispose();
 
-        GifHelper.saveGif(frames, options.getDelay(), outputStream);
+        this.imgX = imgX;
+        this.imgY = imgY;
+        this.base = result;
+        return result;
     }
 
 
@@ -145,12 +225,24 @@ public class EmotionWrapper {
     }
 
 
-    private BufferedImage drawImage(BufferedImage bg, BufferedImage source, int x, int y, int w, int h) {
-        BufferedImage copy = GraphicUtil.createImg(bg.getWidth(), bg.getHeight(), bg);
-        Graphics2D g2d = GraphicUtil.getG2d(copy);
-        g2d.drawImage(source, x, y, w, h, null);
+    /**
+     * 一帧中变化的部分：底图上图片区域的内容，叠加缩放之后的图片
+     */
+    private BufferedImage drawLayer(BufferedImage base, BufferedImage source) {
+        int w = options.getGifW(), h = options.getGifH();
+        BufferedImage layer = GraphicUtil.createImg(w, h, -imgX, -imgY, base);
+
+        BufferedImage scaled = Resampler.resize(source, w, h, options.getRenderQuality());
+        if (scaled == null) {
+            return layer;
+        }
+        Graphics2D g2d = GraphicUtil.getG2d(layer, options.getRenderQuality());
+        g2d.drawImage(scaled, 0, 0, null);
         g2d.dispose();
-        return copy;
+        if (scaled != source) {
+            CanvasPool.release(scaled);
+        }
+        return layer;
     }
 
 
@@ -161,7 +253,7 @@ public class EmotionWrapper {
         int lineWidth = linePadding + g2d.getFontMetrics().getHeight();
         for (String tmp : strs) {
             x = (lineSize - g2d.getFontMetrics().stringWidth(tmp)) >> 1;
-            g2d.drawString(tmp, options.getLeftPadding() + x, y + lineWidth * index);
+            GlyphCache.drawString(g2d, tmp, options.getLeftPadding() + x, y + lineWidth * index);
             index++;
         }
         return y + lineWidth * index;
@@ -195,7 +287,7 @@ public class EmotionWrapper {
             for (int i = 0; i < tmp.length(); i++) {
                 tmpCharOffsetX = PunctuationUtil.isPunctuation(tmp.charAt(i)) ? fontSize >> 1 : 0;
 
-                g2d.drawString(tmp.charAt(i) + "",
+                GlyphCache.drawString(g2d, String.valueOf(tmp.charAt(i)),
                         lastX + tmpCharOffsetX,
                         startY + lastY);
 
@@ -342,12 +434,43 @@ public class EmotionWrapper {
             return this;
         }
 
+        /**
+         * 输出真彩色的apng，不做颜色量化
+         *
+         * @param apng
+         * @return
+         */
+        public Builder setApng(boolean apng) {
+            this.options.setApng(apng);
+            return this;
+        }
+
+        /**
+         * 限制输出的帧数、大小或耗时，相同的连续帧会合并，超出预算时按比例抽帧
+         *
+         * @param frameBudget
+         * @return
+         */
+        public Builder setFrameBudget(FrameBudget frameBudget) {
+            this.options.setFrameBudget(frameBudget);
+            return this;
+        }
+
+        public Builder setRenderQuality(String renderQuality) {
+            return setRenderQuality(RenderQuality.getQuality(renderQuality));
+        }
+
+        public Builder setRenderQuality(RenderQuality renderQuality) {
+            this.options.setRenderQuality(renderQuality);
+            return this;
+        }
+
         public void calRealSize() {
             int realW, realH;
             int gifW, gifH;
 
             BufferedImage result = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = GraphicUtil.getG2d(result);
+            Graphics2D g2d = GraphicUtil.getG2d(result, options.getRenderQuality());
             g2d.setFont(options.getFont());
 
             FontMetrics fontMetrics = g2d.getFontMetrics();
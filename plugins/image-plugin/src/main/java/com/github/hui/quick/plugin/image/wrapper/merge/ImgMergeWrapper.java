@@ -1,7 +1,9 @@
 package com.github.hui.quick.plugin.image.wrapper.merge;
 
 
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
 import com.github.hui.quick.plugin.image.wrapper.merge.cell.IMergeCell;
 import com.github.hui.quick.plugin.image.wrapper.merge.cell.RectFillCell;
 
@@ -16,14 +18,24 @@ import java.util.List;
 public class ImgMergeWrapper {
 
     public static BufferedImage merge(List<IMergeCell> list, int w, int h) {
-        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = GraphicUtil.getG2d(img);
+        return merge(list, w, h, RenderQuality.QUALITY);
+    }
+
+
+    public static BufferedImage merge(List<IMergeCell> list, int w, int h, RenderQuality quality) {
+        BufferedImage img = CanvasPool.lease(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = GraphicUtil.getG2d(img, quality);
         list.forEach(cell -> cell.draw(g2d));
         return img;
     }
 
 
     public static BufferedImage merge(List<IMergeCell> list, int w, int h, Color bgColor) {
+        return merge(list, w, h, bgColor, RenderQuality.QUALITY);
+    }
+
+
+    public static BufferedImage merge(List<IMergeCell> list, int w, int h, Color bgColor, RenderQuality quality) {
         RectFillCell rectFillCell = RectFillCell.builder()
                 .x(0)
                 .y(0)
@@ -35,7 +47,7 @@ public class ImgMergeWrapper {
         List<IMergeCell> l = new ArrayList<>(1 + list.size());
         l.add(rectFillCell);
         l.addAll(list);
-        return merge(l, w, h);
+        return merge(l, w, h, quality);
     }
 
 }
@@ -3,6 +3,7 @@ package com.github.hui.quick.plugin.image.wrapper.merge.cell;
 
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 import com.github.hui.quick.plugin.image.helper.CalculateHelper;
+import com.github.hui.quick.plugin.image.helper.GlyphCache;
 import com.github.hui.quick.plugin.image.util.FontUtil;
 import com.github.hui.quick.plugin.image.util.PunctuationUtil;
 import lombok.Data;
@@ -63,7 +64,7 @@ public class TextCell implements IMergeCell {
         List<String> splitText = batchSplitText(texts, fontMetrics);
         for (String info : splitText) {
             if (drawStyle == ImgCreateOptions.DrawStyle.HORIZONTAL) {
-                g2d.drawString(info, calculateX(info, fontMetrics), tmpY);
+                GlyphCache.drawString(g2d, info, calculateX(info, fontMetrics), tmpY);
 
                 // 换行，y坐标递增一位
                 tmpY += fontMetrics.getHeight() + lineSpace;
@@ -73,7 +74,7 @@ public class TextCell implements IMergeCell {
                 tmpY = calculateY(info, fontMetrics);
                 for (int i = 0; i < chars.length; i++) {
                     tmpX = PunctuationUtil.isPunctuation(chars[i]) ? tmpW : 0;
-                    g2d.drawString(chars[i] + "",
+                    GlyphCache.drawString(g2d, String.valueOf(chars[i]),
                             tmpX + (PunctuationUtil.isPunctuation(chars[i]) ? tmpW : 0),
                             tmpY);
                     tmpY += tmpHeight;
@@ -1,5 +1,6 @@
 package com.github.hui.quick.plugin.image.wrapper.wartermark;
 
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
 import lombok.Data;
 
 import java.awt.image.BufferedImage;
@@ -25,7 +26,7 @@ public class WaterMarkOptions {
 
     private float opacity;
 
-    private int basicW ;
+    private RenderQuality renderQuality;
 
 
     public enum WaterStyle {
@@ -0,0 +1,261 @@
+package com.github.hui.quick.plugin.image.wrapper.wartermark;
+
+import com.github.hui.quick.plugin.base.CanvasPool;
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 编译好的水印模板，logo缩放、文字测量与绘制、旋转只做一次，之后可以并发地给任意多张图片加水印
+ * <p>
+ * - 模板创建之后不再修改，{@link #apply(BufferedImage)} 不会修改传入的原图
+ * - 全背景水印的平铺单元只与第二行的错位有关，按错位缓存，尺寸相近的图片共用同一个平铺单元
+ * <p>
+ * Created by @author yihui in 01:40 26/10/20.
+ */
+@Getter
+public class WaterMarkTemplate {
+
+    /**
+     * 缓存的平铺单元数量上限
+     */
+    private static final int MAX_TILES = 16;
+
+    /**
+     * 基础水印；非全背景水印时已经旋转
+     */
+    private final BufferedImage water;
+
+    private final WaterMarkOptions.WaterStyle style;
+
+    private final float opacity;
+
+    private final RenderQuality renderQuality;
+
+    /**
+     * 指定的水印位置，都不大于0时按 style 计算
+     */
+    private final int x;
+
+    private final int y;
+
+    private final int rotate;
+
+    private final int paddingX;
+
+    private final int paddingY;
+
+    /**
+     * 全背景水印的平铺单元，key 为第二行水印的错位
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, BufferedImage> tiles = new ConcurrentHashMap<>();
+
+    WaterMarkTemplate(BufferedImage water, WaterMarkOptions.WaterStyle style, float opacity, RenderQuality renderQuality,
+                      int x, int y, int rotate, int paddingX, int paddingY) {
+        this.water = water;
+        this.style = style;
+        this.opacity = opacity;
+        this.renderQuality = renderQuality;
+        this.x = x;
+        this.y = y;
+        this.rotate = rotate;
+        this.paddingX = paddingX;
+        this.paddingY = paddingY;
+    }
+
+
+    /**
+     * 生成加了水印的新图片，原图保持不变
+     *
+     * @param source
+     * @return
+     */
+    public BufferedImage apply(BufferedImage source) {
+        BufferedImage img = new BufferedImage(source.getWidth(), source.getHeight(), imageType(source));
+        render(source, img);
+        return img;
+    }
+
+
+    /**
+     * 并行给一批图片加水印，加载、绘制、编码输出都在工作线程中完成，不需要同时持有所有图片
+     * <p>
+     * loader、target 会被多个线程同时调用
+     *
+     * @param inputs  待处理的图片，如文件名
+     * @param loader  加载原图
+     * @param options 输出格式、压缩质量，为null时输出png
+     * @param target  加了水印的图片输出到的文件，已存在时覆盖
+     * @param <T>
+     * @throws IOException 任意一张图片输出失败
+     */
+    public <T> void applyAll(Collection<T> inputs, Function<T, BufferedImage> loader, EncodeOptions options,
+                             Function<T, File> target) throws IOException {
+        try {
+            inputs.parallelStream().forEach(input -> {
+                BufferedImage source = loader.apply(input);
+                BufferedImage img = CanvasPool.lease(source.getWidth(), source.getHeight(), imageType(source));
+                try {
+                    render(source, img);
+                    ImageEncoder.write(img, options, target.apply(input));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    CanvasPool.release(img);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * 直接在图片上绘制水印
+     *
+     * @param target
+     */
+    public void drawOn(BufferedImage target) {
+        Graphics2D g2d = GraphicUtil.getG2d(target, renderQuality);
+        // 设置透明度
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, opacity));
+        if (style != WaterMarkOptions.WaterStyle.FILL_BG) {
+            Point point = position(target.getWidth(), target.getHeight());
+            g2d.drawImage(water, point.x, point.y, null);
+        } else {
+            fill(g2d, target.getWidth(), target.getHeight());
+        }
+        g2d.dispose();
+    }
+
+
+    private void render(BufferedImage source, BufferedImage target) {
+        Graphics2D g2d = target.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+        drawOn(target);
+    }
+
+
+    private static int imageType(BufferedImage source) {
+        return source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+
+    /**
+     * 非全背景水印时，水印在 sW x sH 的图片上的位置
+     */
+    public Point position(int sW, int sH) {
+        if (x > 0 || y > 0) {
+            return new Point(x, y);
+        }
+
+        // 边距
+        int padding = 10;
+
+        int wW = water.getWidth();
+        int wH = water.getHeight();
+
+        switch (style) {
+            case OVERRIDE_CENTER:
+                return new Point((sW - wW) >> 1, (sH - wH) >> 1);
+            case OVERRIDE_LEFT_BOTTOM:
+                return new Point(padding, sH - wH - padding);
+            case OVERRIDE_LEFT_CENTER:
+                return new Point(padding, (sH - wH) >> 1);
+            case OVERRIDE_LEFT_TOP:
+                return new Point(padding, padding);
+            case OVERRIDE_RIGHT_BOTTOM:
+                return new Point(sW - wW - padding, sH - wH - padding);
+            case OVERRIDE_RIGHT_CENTER:
+                return new Point(sW - wW - padding, (sH - wH) >> 1);
+            case OVERRIDE_RIGHT_TOP:
+                return new Point(sW - wW - padding, padding);
+            case OVERRIDE_TOP_CENTER:
+                return new Point((sW - wW) >> 1, padding);
+            case OVERRIDE_BOTTOM_CENTER:
+                return new Point((sW - wW) >> 1, sH - wH - padding);
+            default:
+                return new Point(x, y);
+        }
+    }
+
+
+    /**
+     * 全背景水印：平铺单元作为纹理，在旋转之后的坐标系中填充原图覆盖的区域
+     */
+    private void fill(Graphics2D g2d, int sW, int sH) {
+        int wW = water.getWidth();
+        int wH = water.getHeight();
+
+        // 旋转前平铺区域的大小，只用来确定旋转中心与第二行的错位
+        int newSize = Math.max(sW, sH) + (wW + paddingX) * 2;
+
+        int offsetX = wW + paddingX;
+        int offsetY = wH + paddingY;
+
+        // 第一行从 paddingX / 2 开始，之后的行交替错开
+        int firstX = paddingX >> 1;
+        int secondX = Math.floorMod(newSize - firstX, offsetX);
+        BufferedImage tile = tiles.get(secondX);
+        if (tile == null) {
+            if (tiles.size() >= MAX_TILES) {
+                tiles.clear();
+            }
+            tile = createTile(firstX, secondX);
+            tiles.put(secondX, tile);
+        }
+
+        int offset = (int) (-1.5 * wW);
+        AffineTransform tx = AffineTransform.getTranslateInstance(offset, offset);
+        // AffineTransformOp 以像素左上角取样，换算到以像素中心取样时，旋转中心偏移半个像素
+        double center = (newSize >> 1) - 0.5;
+        tx.rotate(Math.toRadians(rotate), center, center);
+
+        Shape area;
+        try {
+            area = tx.createInverse().createTransformedShape(new Rectangle(sW, sH));
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalStateException("fill water transform error! " + tx, e);
+        }
+        g2d.transform(tx);
+        g2d.setPaint(new TexturePaint(tile, new Rectangle(0, paddingY, offsetX, offsetY << 1)));
+        g2d.fill(area);
+    }
+
+
+    /**
+     * 水印平铺的最小单元：两行水印，第二行错开
+     */
+    private BufferedImage createTile(int firstX, int secondX) {
+        int offsetX = water.getWidth() + paddingX;
+        int offsetY = water.getHeight() + paddingY;
+
+        BufferedImage tile = new BufferedImage(offsetX, offsetY << 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = GraphicUtil.getG2d(tile, renderQuality);
+        // 超出单元右边的部分，绕回左边
+        g2d.drawImage(water, firstX, 0, null);
+        g2d.drawImage(water, firstX - offsetX, 0, null);
+        g2d.drawImage(water, secondX, offsetY, null);
+        g2d.drawImage(water, secondX - offsetX, offsetY, null);
+        g2d.dispose();
+        return tile;
+    }
+}
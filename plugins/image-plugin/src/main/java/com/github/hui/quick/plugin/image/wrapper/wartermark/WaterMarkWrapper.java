@@ -1,7 +1,10 @@
 package com.github.hui.quick.plugin.image.wrapper.wartermark;
 
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.GraphicUtil;
 import com.github.hui.quick.plugin.base.ImageLoadUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.resample.Resampler;
 import com.github.hui.quick.plugin.image.helper.ImgDrawHelper;
 import com.github.hui.quick.plugin.image.util.FontUtil;
 import com.google.common.base.Splitter;
@@ -23,8 +26,11 @@ public class WaterMarkWrapper {
 
     private WaterMarkOptions options;
 
-    private WaterMarkWrapper(WaterMarkOptions options) {
+    private WaterMarkTemplate template;
+
+    private WaterMarkWrapper(WaterMarkOptions options, WaterMarkTemplate template) {
         this.options = options;
+        this.template = template;
     }
 
     public static Builder of(String source) throws IOException {
@@ -36,18 +42,13 @@ public class WaterMarkWrapper {
     }
 
 
+    /**
+     * 在原图上直接绘制水印，返回的就是原图；不希望修改原图时，使用 {@link Builder#compile()} 生成的模板
+     *
+     * @return
+     */
     public BufferedImage asImage() {
-        Graphics2D g2d = GraphicUtil.getG2d(options.getSource());
-
-        // 设置透明度
-        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, options.getOpacity()));
-        if (options.getStyle() != WaterMarkOptions.WaterStyle.FILL_BG) {
-            g2d.drawImage(options.getWater(), options.getX(), options.getY(), null);
-        } else {
-            int offset = (int) (-1.5 * options.getBasicW());
-            g2d.drawImage(options.getWater(), offset, offset, null);
-        }
-
+        template.drawOn(options.getSource());
         return options.getSource();
     }
 
@@ -121,6 +122,11 @@ public class WaterMarkWrapper {
 
         private BufferedImage tmpWater;
 
+        /**
+         * 渲染质量
+         */
+        private RenderQuality renderQuality = RenderQuality.QUALITY;
+
 
         public Builder setX(int x) {
             this.x = x;
@@ -205,28 +211,43 @@ public class WaterMarkWrapper {
             return this;
         }
 
+        public Builder setRenderQuality(String renderQuality) {
+            return setRenderQuality(RenderQuality.getQuality(renderQuality));
+        }
+
+        public Builder setRenderQuality(RenderQuality renderQuality) {
+            this.renderQuality = renderQuality;
+            return this;
+        }
+
         public WaterMarkWrapper build() {
+            WaterMarkTemplate template = compile();
+            BufferedImage water = template.getWater();
+
             WaterMarkOptions options = new WaterMarkOptions();
             options.setSource(source);
-            BufferedImage water = buildBasicWater();
-            options.setBasicW(water.getWidth());
-
-            if (style == WaterMarkOptions.WaterStyle.FILL_BG) {
-                water = buildBgWater();
-            }
             options.setWater(water);
-
             options.setOpacity(waterOpacity);
-
             options.setStyle(style);
+            options.setRenderQuality(renderQuality);
 
-            // 重新设置水印位置
-            updatePosition();
-            options.setX(x);
-            options.setY(y);
+            // 按原图的大小确定水印位置，不修改 builder 中指定的位置，同一个 builder 可以给不同尺寸的图片加水印
+            Point point = style == WaterMarkOptions.WaterStyle.FILL_BG ? new Point(x, y) : template.position(source.getWidth(), source.getHeight());
+            options.setX(point.x);
+            options.setY(point.y);
+
+
+            return new WaterMarkWrapper(options, template);
+        }
 
 
-            return new WaterMarkWrapper(options);
+        /**
+         * 生成水印模板：logo、文字只绘制一次，之后可以并发地给多张图片加水印，不需要设置原图
+         *
+         * @return
+         */
+        public WaterMarkTemplate compile() {
+            return new WaterMarkTemplate(buildBasicWater(), style, waterOpacity, renderQuality, x, y, rotate, paddingX, paddingY);
         }
 
 
@@ -269,13 +290,19 @@ public class WaterMarkWrapper {
 
 
             // 生成水印画布
-            tmpWater = new BufferedImage(waterW, waterH, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = GraphicUtil.getG2d(tmpWater);
+            tmpWater = CanvasPool.lease(waterW, waterH, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = GraphicUtil.getG2d(tmpWater, renderQuality);
 
 
             // 绘制logo
             if (waterLogo != null) {
-                g2d.drawImage(waterLogo, waterX, 0, logoW, logoH, null);
+                BufferedImage logo = Resampler.resize(waterLogo, logoW, logoH, renderQuality);
+                if (logo != null) {
+                    g2d.drawImage(logo, waterX, 0, null);
+                    if (logo != waterLogo) {
+                        CanvasPool.release(logo);
+                    }
+                }
             }
 
 
@@ -295,112 +322,16 @@ public class WaterMarkWrapper {
             // 旋转一定的角度
             if (style != WaterMarkOptions.WaterStyle.FILL_BG
                     && rotate != 0) {
-                tmpWater = ImgDrawHelper.rotateImg(tmpWater, rotate);
-            }
-
-
-            return tmpWater;
-        }
-
-
-        /**
-         * 背景填充时，需要扩充
-         *
-         * @return
-         */
-        private BufferedImage buildBgWater() {
-            int wW = tmpWater.getWidth();
-            int wH = tmpWater.getHeight();
-
-
-            // 水印图片的大小， 因为旋转的缘故，所以需要放大一些，保证旋转后也不会出现留白问题
-            int newSize = Math.max(source.getWidth(), source.getHeight()) + (wW + paddingX) * 2;
-
-            int tmpX = (paddingX >> 1), tmpY = -wH;
-
-            int offsetX = wW + paddingX;
-            int offsetY = wH + paddingY;
-
-            BufferedImage water = new BufferedImage(newSize, newSize, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = GraphicUtil.getG2d(water);
-            while (true) {
-                tmpY += offsetY;
-                while (true) {
-                    g2d.drawImage(tmpWater, tmpX, tmpY, null);
-
-                    if (tmpX + offsetX >= newSize) {
-                        tmpX = newSize - tmpX - offsetX;
-                        break;
-                    } else {
-                        tmpX += offsetX;
-                    }
-                }
-
-                if (tmpY >= newSize) {
-                    break;
+                BufferedImage origin = tmpWater;
+                tmpWater = ImgDrawHelper.rotateImg(origin, rotate);
+                if (tmpWater != origin) {
+                    CanvasPool.release(origin);
                 }
             }
 
 
-            this.tmpWater = ImgDrawHelper.rotateImg(water, rotate);
             return tmpWater;
         }
-
-        private void updatePosition() {
-            if (x > 0 || y > 0) {
-                return;
-            }
-
-            // 边距
-            int padding = 10;
-
-            int sW = source.getWidth();
-            int sH = source.getHeight();
-
-            int wW = tmpWater.getWidth();
-            int wH = tmpWater.getHeight();
-
-            switch (style) {
-                case OVERRIDE_CENTER:
-                    x = (sW - wW) >> 1;
-                    y = (sH - wH) >> 1;
-                    break;
-                case OVERRIDE_LEFT_BOTTOM:
-                    x = padding;
-                    y = sH - wH - padding;
-                    break;
-                case OVERRIDE_LEFT_CENTER:
-                    x = padding;
-                    y = (sH - wH) >> 1;
-                    break;
-                case OVERRIDE_LEFT_TOP:
-                    x = padding;
-                    y = padding;
-                    break;
-                case OVERRIDE_RIGHT_BOTTOM:
-                    x = sW - wW - padding;
-                    y = sH - wH - padding;
-                    break;
-                case OVERRIDE_RIGHT_CENTER:
-                    x = sW - wW - padding;
-                    y = (sH - wH) >> 1;
-                    break;
-                case OVERRIDE_RIGHT_TOP:
-                    x = sW - wW - padding;
-                    y = padding;
-                    break;
-                case OVERRIDE_TOP_CENTER:
-                    x = (sW - wW) >> 1;
-                    y = padding;
-                    break;
-                case OVERRIDE_BOTTOM_CENTER:
-                    x = (sW - wW) >> 1;
-                    y = sH - wH - padding;
-                    break;
-                case FILL_BG:
-                    return;
-            }
-        }
     }
 
 }
@@ -0,0 +1,79 @@
+package com.github.hui.quick.plugin.test;
+
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.image.helper.CalculateHelper;
+import com.github.hui.quick.plugin.image.helper.CharWidthCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * Created by @author yihui in 23:40 26/10/19.
+ */
+public class CharWidthCacheTest {
+
+    private static final String TEXT = "春眠不觉晓，处处闻啼鸟。夜来风雨声，花落知多少。The quick brown fox jumps over the lazy dog! 1234567890 ¥€ ﾊﾝｶｸ";
+
+    private String randomText(Random random, int len) {
+        StringBuilder builder = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            builder.append(TEXT.charAt(random.nextInt(TEXT.length())));
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testSameAsFontMetrics() {
+        Random random = new Random(42);
+        for (RenderQuality quality : RenderQuality.values()) {
+            for (int size : new int[]{12, 18, 27}) {
+                Graphics2D g2d = GraphicUtil.getG2d(null, quality);
+                g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, size));
+                FontMetrics fontMetrics = g2d.getFontMetrics();
+                CharWidthCache cache = CharWidthCache.of(fontMetrics);
+                for (int i = 0; i < 200; i++) {
+                    String str = randomText(random, random.nextInt(80) + 1);
+                    Assert.assertEquals(quality + ": " + str, fontMetrics.stringWidth(str), cache.stringWidth(str));
+                    Assert.assertEquals(fontMetrics.charWidth(str.charAt(0)), cache.charWidth(str.charAt(0)));
+                }
+                // 需要复杂排版的文本交给 FontMetrics
+                String arabic = "مرحبا بالعالم";
+                Assert.assertEquals(fontMetrics.stringWidth(arabic), cache.stringWidth(arabic));
+                g2d.dispose();
+            }
+        }
+    }
+
+    @Test
+    public void testSplitLongText() {
+        Graphics2D g2d = GraphicUtil.getG2d(null, RenderQuality.QUALITY);
+        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18));
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        String str = randomText(new Random(7), 200_000);
+
+        long start = System.currentTimeMillis();
+        int width = 0;
+        for (int i = 0; i < str.length(); i++) {
+            width += fontMetrics.charWidth(str.charAt(i));
+        }
+        System.out.println("FontMetrics charWidth: " + (System.currentTimeMillis() - start) + "ms " + width);
+
+        start = System.currentTimeMillis();
+        String[] lines = CalculateHelper.splitStr(str, 560, fontMetrics);
+        int lineNum = CalculateHelper.calLineNum(new String[]{str}, 560, fontMetrics);
+        System.out.println("split: " + lines.length + " lines, estimate " + lineNum + ", cost "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        StringBuilder joined = new StringBuilder();
+        CharWidthCache cache = CharWidthCache.of(fontMetrics);
+        for (String line : lines) {
+            Assert.assertTrue(cache.stringWidth(line) <= 560 + fontMetrics.getMaxAdvance());
+            joined.append(line);
+        }
+        Assert.assertEquals(str, joined.toString());
+        g2d.dispose();
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.hui.quick.plugin.test;
+
+import com.github.hui.quick.plugin.base.gif.GifDecoder;
+import com.github.hui.quick.plugin.base.gif.GifHelper;
+import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
+import com.github.hui.quick.plugin.image.wrapper.emoticon.EmotionWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Created by @author yihui in 01:30 26/10/20.
+ */
+public class EmotionWrapperTest {
+
+    private ByteArrayInputStream gif(int count, int w, int h) {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setColor(new Color(255, i * 5 % 256, 0));
+            g2d.fillOval(i * w / count, 0, w / 2, h);
+            g2d.dispose();
+            frames.add(img);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifHelper.saveGif(frames, 80, out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * 多帧的表情包，背景与文字只绘制一次，各帧只重新生成图片区域
+     */
+    @Test
+    public void testManyFrames() {
+        EmotionWrapper wrapper = EmotionWrapper.ofContent("春眠不觉晓\n处处闻啼鸟")
+                .setW(400)
+                .setH(400)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 24))
+                .setFontColor(Color.BLACK)
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .setGif(gif(60, 600, 400))
+                .build();
+
+        String last = null;
+        for (int i = 0; i < 3; i++) {
+            long start = System.currentTimeMillis();
+            String str = wrapper.asString();
+            System.out.println("emotion gif: " + (System.currentTimeMillis() - start) + "ms");
+
+            // 底图复用，多次输出的结果一致
+            if (last != null) {
+                Assert.assertEquals(last, str);
+            }
+            last = str;
+        }
+
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(new ByteArrayInputStream(Base64.getDecoder().decode(last)));
+        // 原图 61 帧(saveGif 会重复最后一帧) + 最后一帧
+        Assert.assertEquals(62, decoder.getFrameCount());
+    }
+}
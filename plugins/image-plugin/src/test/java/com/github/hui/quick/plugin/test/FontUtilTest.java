@@ -0,0 +1,62 @@
+package com.github.hui.quick.plugin.test;
+
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.image.util.FontUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+/**
+ * Created by @author yihui in 00:20 26/10/20.
+ */
+public class FontUtilTest {
+
+    @Test
+    public void testFontMetric() {
+        String text = "春眠不觉晓，处处闻啼鸟。The quick brown fox jumps over the lazy dog.";
+        for (RenderQuality quality : RenderQuality.values()) {
+            Font font = FontUtil.deriveFont(FontUtil.DEFAULT_FONT, Font.BOLD, 24);
+            Assert.assertSame(font, FontUtil.deriveFont(FontUtil.DEFAULT_FONT, Font.BOLD, 24));
+
+            Graphics2D g2d = GraphicUtil.getG2d(null, quality);
+            g2d.setFont(font);
+            FontMetrics expect = g2d.getFontMetrics();
+            FontMetrics fontMetrics = FontUtil.getFontMetric(font, quality);
+            Assert.assertSame(fontMetrics, FontUtil.getFontMetric(font, quality));
+            Assert.assertEquals(expect.getFontRenderContext(), fontMetrics.getFontRenderContext());
+            Assert.assertEquals(expect.getFontRenderContext(), FontUtil.getFontRenderContext(quality));
+            Assert.assertEquals(expect.getHeight(), fontMetrics.getHeight());
+            Assert.assertEquals(expect.stringWidth(text), fontMetrics.stringWidth(text));
+            g2d.dispose();
+        }
+
+        Font font = FontUtil.DEFAULT_FONT;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            Graphics2D g2d = GraphicUtil.getG2d(null);
+            g2d.setFont(font);
+            g2d.getFontMetrics();
+            g2d.dispose();
+        }
+        System.out.println("new graphics: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            FontUtil.getFontMetric(font);
+        }
+        System.out.println("registry: " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Test
+    public void testDeriveManyFonts() {
+        // 超出缓存上限之后清空重新缓存，派生的字体不受影响
+        for (int i = 0; i < 1000; i++) {
+            float size = 10 + i * 0.25f;
+            Font font = FontUtil.deriveFont(FontUtil.DEFAULT_FONT, Font.PLAIN, size);
+            Assert.assertEquals(size, font.getSize2D(), 0);
+            Assert.assertSame(font, FontUtil.deriveFont(FontUtil.DEFAULT_FONT, Font.PLAIN, size));
+        }
+    }
+}
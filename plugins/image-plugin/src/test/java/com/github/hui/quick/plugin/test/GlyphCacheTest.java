@@ -0,0 +1,129 @@
+package com.github.hui.quick.plugin.test;
+
+import com.github.hui.quick.plugin.base.GraphicUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.image.helper.GlyphCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Created by @author yihui in 01:10 26/10/20.
+ */
+public class GlyphCacheTest {
+
+    private static final String TEXT = "春眠不觉晓，处处闻啼鸟。";
+
+    private static final String LINE = "The quick brown fox jumps over the lazy dog";
+
+    private BufferedImage bg(int size) {
+        // 画布只覆盖文字所在的区域
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        FontMetrics fm = g.getFontMetrics(new Font(Font.SANS_SERIF, Font.PLAIN, size));
+        g.dispose();
+        int w = Math.max(40 + 2 * size + 10, 10 + fm.stringWidth(LINE)) + 20;
+        int h = lineY(size) + fm.getDescent() + 10;
+
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.WHITE, w, h, new Color(90, 160, 220)));
+        g2d.fillRect(0, 0, w, h);
+        g2d.dispose();
+        return img;
+    }
+
+    private int lineY(int size) {
+        return 7 * size + 60;
+    }
+
+    private void drawString(Graphics2D g2d, String str, int x, int y, boolean cache) {
+        if (cache) {
+            GlyphCache.drawString(g2d, str, x, y);
+        } else {
+            g2d.drawString(str, x, y);
+        }
+    }
+
+    /**
+     * 逐字竖排绘制
+     */
+    private void draw(BufferedImage img, RenderQuality quality, Color color, int size, boolean cache) {
+        Graphics2D g2d = GraphicUtil.getG2d(img, quality);
+        draw(g2d, color, size, cache);
+    }
+
+    private void draw(Graphics2D g2d, Color color, int size, boolean cache) {
+        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, size));
+        g2d.setColor(color);
+        for (int i = 0; i < TEXT.length(); i++) {
+            int x = 20 + i / 6 * (size + 10), y = size + i % 6 * (size + 8);
+            drawString(g2d, String.valueOf(TEXT.charAt(i)), x, y, cache);
+        }
+        drawString(g2d, LINE, 10, lineY(size), cache);
+        g2d.dispose();
+    }
+
+    private void assertSimilar(String msg, BufferedImage expect, BufferedImage img, int tolerance) {
+        int w = expect.getWidth(), h = expect.getHeight();
+        int[] p = expect.getRGB(0, 0, w, h, null, 0, w), q = img.getRGB(0, 0, w, h, null, 0, w);
+        for (int i = 0; i < p.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                if (Math.abs((p[i] >>> shift & 0xff) - (q[i] >>> shift & 0xff)) > tolerance) {
+                    Assert.fail(msg + " at (" + i % w + ", " + i / w + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsDrawString() {
+        for (RenderQuality quality : RenderQuality.values()) {
+            for (Color color : new Color[]{Color.BLACK, new Color(200, 30, 60), new Color(20, 20, 200, 150)}) {
+                for (int size : new int[]{20, 120}) {
+                    BufferedImage expect = bg(size), img = bg(size);
+                    draw(expect, quality, color, size, false);
+                    // 第二次绘制命中缓存
+                    draw(img, quality, color, size, true);
+                    draw(img = bg(size), quality, color, size, true);
+                    // 小字号直接 drawString，结果完全一致；大字号贴图，允许个别像素有细微差别
+                    int tolerance = size > GlyphCache.OUTLINE_THRESHOLD ? 8 : 0;
+                    assertSimilar(quality + " " + color + " " + size, expect, img, tolerance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRenderingHints() {
+        // 关闭文字抗锯齿时，大字号按轮廓填充，抗锯齿、描边控制都会影响光栅化结果，而 FontRenderContext 相同，
+        // 不能命中其他渲染参数下缓存的贴图
+        int size = 120;
+        for (Object aa : new Object[]{RenderingHints.VALUE_ANTIALIAS_ON, RenderingHints.VALUE_ANTIALIAS_OFF}) {
+            for (Object stroke : new Object[]{RenderingHints.VALUE_STROKE_PURE, RenderingHints.VALUE_STROKE_NORMALIZE}) {
+                BufferedImage expect = bg(size), img = bg(size);
+                for (boolean cache : new boolean[]{false, true}) {
+                    Graphics2D g2d = (cache ? img : expect).createGraphics();
+                    g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+                    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aa);
+                    g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, stroke);
+                    draw(g2d, Color.BLACK, size, cache);
+                }
+                assertSimilar(aa + " " + stroke, expect, img, 8);
+            }
+        }
+    }
+
+    @Test
+    public void testRepeatDraw() {
+        BufferedImage img = bg(120);
+        for (boolean cache : new boolean[]{false, true, false, true}) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 20; i++) {
+                draw(img, RenderQuality.QUALITY, Color.BLACK, 120, cache);
+            }
+            System.out.println((cache ? "glyph cache: " : "drawString: ") + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+}
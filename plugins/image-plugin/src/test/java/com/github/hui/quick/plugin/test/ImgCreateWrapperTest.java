@@ -2,6 +2,7 @@ package com.github.hui.quick.plugin.test;
 
 
 import com.github.hui.quick.plugin.base.Base64Util;
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.FileReadUtil;
 import com.github.hui.quick.plugin.base.GraphicUtil;
 import com.github.hui.quick.plugin.base.ImageLoadUtil;
@@ -9,16 +10,20 @@ import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateWrapper;
 import com.github.hui.quick.plugin.image.util.FontUtil;
 import com.sun.imageio.plugins.common.ImageUtil;
+import org.junit.Assert;
 import org.junit.Test;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Created by yihui on 2017/8/17.
@@ -156,4 +161,164 @@ public class ImgCreateWrapperTest {
         BufferedImage img = build.asImage();
         ImageIO.write(img, "png", new File("/tmp/2out.png"));
     }
+
+
+    /**
+     * 长文本：先测量所有内容块，最后一次性申请画布再绘制
+     */
+    @Test
+    public void testLongContent() {
+        ImgCreateWrapper.Builder build = ImgCreateWrapper.build()
+                .setImgW(600)
+                .setLeftPadding(20)
+                .setRightPadding(20)
+                .setTopPadding(20)
+                .setBottomPadding(20)
+                .setLinePadding(8)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18))
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .setBgColor(Color.WHITE);
+
+        BufferedImage pic = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            build.drawContent("第" + i + "段：春眠不觉晓，处处闻啼鸟。夜来风雨声，花落知多少。The quick brown fox jumps over the lazy dog.");
+            if (i % 50 == 0) {
+                build.drawImage(pic);
+            }
+        }
+        BufferedImage img = build.asImage();
+        System.out.println("long content: " + img.getWidth() + "x" + img.getHeight() + " cost "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 分段绘制输出的png以及分页结果，与整张绘制的图片逐像素一致
+     */
+    @Test
+    public void testStripPng() throws IOException {
+        ImgCreateWrapper.Builder build = ImgCreateWrapper.build()
+                .setImgW(600)
+                .setLeftPadding(20)
+                .setRightPadding(20)
+                .setTopPadding(20)
+                .setBottomPadding(20)
+                .setLinePadding(8)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18))
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .setBorder(true)
+                .setBorderColor(0xFFF7EED6)
+                .setBgColor(Color.WHITE);
+
+        BufferedImage pic = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = pic.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.ORANGE, 400, 200, Color.BLUE));
+        g2d.fillRect(0, 0, 400, 200);
+        g2d.dispose();
+        for (int i = 0; i < 300; i++) {
+            build.drawContent("第" + i + "段：春眠不觉晓，处处闻啼鸟。夜来风雨声，花落知多少。The quick brown fox jumps over the lazy dog.");
+            if (i % 30 == 0) {
+                build.drawImage(pic);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        build.asPng(out, 256);
+        System.out.println("strip png: " + out.size() + "B cost " + (System.currentTimeMillis() - start) + "ms");
+        BufferedImage png = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+        start = System.currentTimeMillis();
+        List<BufferedImage> pages = build.asPages(1000);
+        System.out.println("pages: " + pages.size() + " cost " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        BufferedImage img = build.asImage();
+        System.out.println("full image: " + img.getWidth() + "x" + img.getHeight() + " cost "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        Assert.assertEquals(img.getWidth(), png.getWidth());
+        Assert.assertEquals(img.getHeight(), png.getHeight());
+        int pageH = 0;
+        for (BufferedImage page : pages) {
+            pageH += page.getHeight();
+        }
+        Assert.assertEquals(img.getHeight(), pageH);
+        for (int y = 0; y < img.getHeight(); y++) {
+            BufferedImage page = pages.get(y / 1000);
+            for (int x = 0; x < img.getWidth(); x++) {
+                Assert.assertEquals(img.getRGB(x, y), png.getRGB(x, y));
+                Assert.assertEquals(img.getRGB(x, y), page.getRGB(x, y % 1000));
+            }
+        }
+    }
+
+    /**
+     * 过宽或过高的图片，缩放之后的尺寸为 0，跳过绘制而不是抛异常
+     */
+    @Test
+    public void testThinImage() {
+        BufferedImage wide = new BufferedImage(1000, 1, BufferedImage.TYPE_INT_RGB);
+        BufferedImage img = ImgCreateWrapper.build()
+                .setImgW(600)
+                .setLeftPadding(20)
+                .setRightPadding(20)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18))
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .setBgColor(Color.WHITE)
+                .drawContent("过宽的图片")
+                .drawImage(wide)
+                .asImage();
+        Assert.assertEquals(600, img.getWidth());
+
+        BufferedImage high = new BufferedImage(1, 1000, BufferedImage.TYPE_INT_RGB);
+        img = ImgCreateWrapper.build()
+                .setImgH(600)
+                .setTopPadding(20)
+                .setBottomPadding(20)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18))
+                .setDrawStyle(ImgCreateOptions.DrawStyle.VERTICAL_RIGHT)
+                .setBgColor(Color.WHITE)
+                .drawContent("过高的图片")
+                .drawImage(high)
+                .asImage();
+        Assert.assertEquals(600, img.getHeight());
+    }
+
+    /**
+     * getResult 返回的画布在后续扩容之后仍然可用，不会被归还到缓存池
+     */
+    @Test
+    public void testResultNotReleased() {
+        ImgCreateWrapper.Builder build = ImgCreateWrapper.build()
+                .setImgW(400)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18))
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .drawContent("春眠不觉晓，处处闻啼鸟");
+        BufferedImage first = build.getResult();
+        int painted = countPainted(first);
+        Assert.assertTrue(painted > 0);
+
+        for (int i = 0; i < 100; i++) {
+            build.drawContent("第" + i + "段：夜来风雨声，花落知多少");
+        }
+        Assert.assertNotSame(first, build.getResult());
+
+        BufferedImage leased = CanvasPool.lease(first.getWidth(), first.getHeight(), first.getType());
+        Assert.assertNotSame(first, leased);
+        CanvasPool.release(leased);
+        Assert.assertEquals(painted, countPainted(first));
+    }
+
+    private int countPainted(BufferedImage img) {
+        int count = 0;
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                if (img.getRGB(x, y) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
 }
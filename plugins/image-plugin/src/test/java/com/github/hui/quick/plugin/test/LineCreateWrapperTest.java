@@ -3,15 +3,22 @@ package com.github.hui.quick.plugin.test;
 import com.github.hui.quick.plugin.base.DomUtil;
 import com.github.hui.quick.plugin.base.FileReadUtil;
 import com.github.hui.quick.plugin.base.constants.MediaType;
+import com.github.hui.quick.plugin.base.gif.GifHelper;
 import com.github.hui.quick.plugin.image.wrapper.create.ImgCreateOptions;
 import com.github.hui.quick.plugin.image.wrapper.create.LineGifCreateWrapper;
 import com.github.hui.quick.plugin.image.wrapper.create.WordGifCreateWrapper;
 import com.github.hui.quick.plugin.image.util.FontUtil;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Created by yihui on 2017/9/15.
@@ -102,4 +109,67 @@ public class LineCreateWrapperTest {
         System.out.println(dom);
     }
 
+
+    /**
+     * 长文本逐字绘制，每帧只保存新出现的字
+     */
+    @Test
+    public void testLongWordGif() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 500) {
+            text.append("春眠不觉晓，处处闻啼鸟。夜来风雨声，花落知多少。");
+        }
+
+        long start = System.currentTimeMillis();
+        WordGifCreateWrapper.Builder build = (WordGifCreateWrapper.Builder) WordGifCreateWrapper.build()
+                .setDelay(100)
+                .setImgW(800)
+                .setImgH(800)
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .setAlignStyle(ImgCreateOptions.AlignStyle.LEFT)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 24))
+                .setBgColor(Color.WHITE);
+        build.drawContent(text.substring(0, 500));
+        byte[] gif = build.asBytes();
+        System.out.println("word gif: " + (System.currentTimeMillis() - start) + "ms, size: " + gif.length);
+
+        // 背景 + 每个字一帧 + 最后一帧
+        List<BufferedImage> frames = new ArrayList<>();
+        GifHelper.loadGif(new ByteArrayInputStream(gif), frames);
+        Assert.assertEquals(502, frames.size());
+    }
+
+
+    /**
+     * 逐行绘制几百行文字，输出时才逐块绘制，边绘制边编码
+     */
+    @Test
+    public void testLongLineGif() {
+        LineGifCreateWrapper.Builder build = (LineGifCreateWrapper.Builder) LineGifCreateWrapper.build()
+                .setDelay(100)
+                .setImgW(600)
+                .setImgH(600)
+                .setDrawStyle(ImgCreateOptions.DrawStyle.HORIZONTAL)
+                .setAlignStyle(ImgCreateOptions.AlignStyle.LEFT)
+                .setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18))
+                .setBgColor(Color.WHITE);
+        for (int i = 0; i < 200; i++) {
+            build.drawContent("第" + i + "行：春眠不觉晓，处处闻啼鸟。");
+        }
+
+        long start = System.currentTimeMillis();
+        byte[] gif = build.asBytes();
+        System.out.println("line gif: " + (System.currentTimeMillis() - start) + "ms, size: " + gif.length);
+
+        // 再次输出时从头重新绘制，结果一致
+        Assert.assertArrayEquals(gif, build.asBytes());
+
+        // 背景 + 每行一帧，帧画布复用，不保留之前的帧
+        int count = 0;
+        for (Iterator<BufferedImage> it = build.asFrames(); it.hasNext(); it.next()) {
+            count++;
+        }
+        Assert.assertEquals(201, count);
+    }
+
 }
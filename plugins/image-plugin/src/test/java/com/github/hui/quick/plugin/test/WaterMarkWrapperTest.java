@@ -3,8 +3,11 @@ package com.github.hui.quick.plugin.test;
 import com.github.hui.quick.plugin.base.DomUtil;
 import com.github.hui.quick.plugin.base.ImageLoadUtil;
 import com.github.hui.quick.plugin.base.constants.MediaType;
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
 import com.github.hui.quick.plugin.image.wrapper.wartermark.WaterMarkOptions;
+import com.github.hui.quick.plugin.image.wrapper.wartermark.WaterMarkTemplate;
 import com.github.hui.quick.plugin.image.wrapper.wartermark.WaterMarkWrapper;
+import org.junit.Assert;
 import org.junit.Test;
 
 import javax.imageio.ImageIO;
@@ -14,6 +17,9 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  *
@@ -91,4 +97,125 @@ public class WaterMarkWrapperTest {
         bufferedImage = op.filter(bufferedImage, null);
         System.out.println("--------");
     }
+
+
+    /**
+     * 大图全背景水印，平铺单元作为纹理填充，不需要申请比原图更大的画布；四角也都有水印
+     */
+    @Test
+    public void testFillLargeImage() {
+        int w = 4000, h = 3000;
+        BufferedImage source = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = source.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, w, h);
+        g2d.dispose();
+
+        long start = System.currentTimeMillis();
+        BufferedImage img = WaterMarkWrapper.of(source)
+                .setWaterInfo("图文小工具 By 小灰灰Blog")
+                .setStyle(WaterMarkOptions.WaterStyle.FILL_BG)
+                .setWaterColor(Color.WHITE)
+                .setWaterOpacity(0.5f)
+                .setRotate(30)
+                .build()
+                .asImage();
+        System.out.println("fill water: " + (System.currentTimeMillis() - start) + "ms");
+
+        Assert.assertSame(source, img);
+        int quarter = Math.min(w, h) >> 2;
+        for (Point corner : new Point[]{new Point(0, 0), new Point(w - quarter, 0), new Point(0, h - quarter), new Point(w - quarter, h - quarter)}) {
+            boolean marked = false;
+            for (int x = corner.x; x < corner.x + quarter && !marked; x++) {
+                for (int y = corner.y; y < corner.y + quarter && !marked; y++) {
+                    marked = (img.getRGB(x, y) & 0xffffff) != 0;
+                }
+            }
+            Assert.assertTrue("corner " + corner, marked);
+        }
+    }
+
+
+    private BufferedImage photo(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, new Color(30, 60, 90), w, h, new Color(200, 180, 120)));
+        g2d.fillRect(0, 0, w, h);
+        g2d.dispose();
+        return img;
+    }
+
+    private boolean same(BufferedImage a, BufferedImage b) {
+        for (int x = 0; x < a.getWidth(); x++) {
+            for (int y = 0; y < a.getHeight(); y++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 编译好的水印模板，不修改原图，结果与直接加水印一致
+     */
+    @Test
+    public void testTemplate() {
+        for (WaterMarkOptions.WaterStyle style : new WaterMarkOptions.WaterStyle[]{WaterMarkOptions.WaterStyle.FILL_BG,
+                WaterMarkOptions.WaterStyle.OVERRIDE_CENTER, WaterMarkOptions.WaterStyle.OVERRIDE_RIGHT_BOTTOM}) {
+            WaterMarkWrapper.Builder builder = WaterMarkWrapper.of(photo(640, 480))
+                    .setWaterInfo("图文小工具\nBy 小灰灰Blog")
+                    .setStyle(style)
+                    .setWaterColor(Color.WHITE)
+                    .setWaterOpacity(0.6f)
+                    .setRotate(30);
+            WaterMarkTemplate template = builder.compile();
+
+            for (int[] size : new int[][]{{640, 480}, {500, 900}}) {
+                BufferedImage source = photo(size[0], size[1]);
+                BufferedImage img = template.apply(source);
+                Assert.assertTrue(same(source, photo(size[0], size[1])));
+                Assert.assertFalse(same(source, img));
+
+                BufferedImage expect = builder.setSource(photo(size[0], size[1])).build().asImage();
+                Assert.assertTrue(style + " " + size[0], same(expect, img));
+            }
+        }
+    }
+
+
+    /**
+     * 批量加水印，多线程并行处理
+     */
+    @Test
+    public void testApplyAll() throws IOException {
+        WaterMarkTemplate template = new WaterMarkWrapper.Builder()
+                .setWaterInfo("图文小工具 By 小灰灰Blog")
+                .setStyle(WaterMarkOptions.WaterStyle.FILL_BG)
+                .setWaterColor(Color.WHITE)
+                .setWaterOpacity(0.5f)
+                .setRotate(45)
+                .compile();
+
+        List<Integer> photos = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            photos.add(i);
+        }
+
+        File dir = Files.createTempDirectory("water").toFile();
+        long start = System.currentTimeMillis();
+        template.applyAll(photos, i -> photo(1200 + i * 10, 900), EncodeOptions.of("png"), i -> new File(dir, i + ".png"));
+        System.out.println("apply all: " + (System.currentTimeMillis() - start) + "ms");
+
+        for (Integer i : photos) {
+            File file = new File(dir, i + ".png");
+            BufferedImage out = ImageIO.read(file);
+            BufferedImage img = template.apply(photo(1200 + i * 10, 900));
+            Assert.assertEquals(img.getWidth(), out.getWidth());
+            Assert.assertEquals(img.getRGB(img.getWidth() >> 1, img.getHeight() >> 1), out.getRGB(out.getWidth() >> 1, out.getHeight() >> 1));
+            Assert.assertTrue(file.delete());
+        }
+        Assert.assertTrue(dir.delete());
+    }
 }
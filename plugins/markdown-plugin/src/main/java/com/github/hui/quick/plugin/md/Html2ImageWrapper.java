@@ -3,6 +3,8 @@ package com.github.hui.quick.plugin.md;
 import com.github.hui.quick.plugin.base.Base64Util;
 import com.github.hui.quick.plugin.base.ColorUtil;
 import com.github.hui.quick.plugin.base.FileWriteUtil;
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
 import com.github.hui.quick.plugin.md.entity.HtmlRenderOptions;
 import com.github.hui.quick.plugin.md.entity.MarkdownEntity;
 import com.github.hui.quick.plugin.md.helper.HtmlRenderHelper;
@@ -12,7 +14,6 @@ import org.cyberneko.html.HTMLConfiguration;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -92,9 +93,7 @@ public class Html2ImageWrapper {
         FileWriteUtil.mkDir(file.getParentFile());
 
         BufferedImage bufferedImage = asImage();
-        if (!ImageIO.write(bufferedImage, options.getOutType(), file)) {
-            throw new IOException("save image error!");
-        }
+        ImageEncoder.write(bufferedImage, EncodeOptions.of(options.getOutType()), file);
 
         return true;
     }
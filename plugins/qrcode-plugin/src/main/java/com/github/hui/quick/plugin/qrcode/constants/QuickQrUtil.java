@@ -1,6 +1,7 @@
 package com.github.hui.quick.plugin.qrcode.constants;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 
 import java.awt.*;
@@ -35,11 +36,30 @@ public class QuickQrUtil {
         fontCache.put(Triple.of(DEFAULT_FONT_NAME, DEFAULT_FONT_STYLE, 5), DEFAULT_FONT);
     }
 
+    private static Map<Pair<Font, Integer>, Font> derivedFontCache = new ConcurrentHashMap<>();
+
     public static Font font(String name, int style, int fontSize) {
         Triple<String, Integer, Integer> triple = Triple.of(name, style, fontSize);
         return fontCache.computeIfAbsent(triple, (k) -> new Font(k.getLeft(), k.getMiddle(), k.getRight()));
     }
 
+    /**
+     * 从已有字体派生指定大小的字体并缓存，保留原字体(包括从字体文件加载的字体)的样式
+     *
+     * @param font
+     * @param fontSize
+     * @return
+     */
+    public static Font font(Font font, int fontSize) {
+        if (font.getSize() == fontSize) {
+            return font;
+        }
+        if (derivedFontCache.size() > 256) {
+            derivedFontCache.clear();
+        }
+        return derivedFontCache.computeIfAbsent(Pair.of(font, fontSize), (k) -> font.deriveFont((float) fontSize));
+    }
+
 
     private static Random RANDOM = new Random();
 
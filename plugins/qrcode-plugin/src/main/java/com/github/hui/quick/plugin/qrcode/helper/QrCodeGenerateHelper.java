@@ -1,5 +1,8 @@
 package com.github.hui.quick.plugin.qrcode.helper;
 
+import com.github.hui.quick.plugin.base.CanvasPool;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.resample.Resampler;
 import com.github.hui.quick.plugin.qrcode.wrapper.BitMatrixEx;
 import com.github.hui.quick.plugin.qrcode.wrapper.QrCodeOptions;
 import com.google.zxing.BarcodeFormat;
@@ -18,6 +21,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * 二维码生成辅助类，主要两个方法，一个是生成二维码矩阵，一个是渲染矩阵为图片
@@ -165,10 +169,9 @@ public class QrCodeGenerateHelper {
         int realQrCodeWidth = qrCodeConfig.getW();
         int realQrCodeHeight = qrCodeConfig.getH();
         if (qrCodeWidth != realQrCodeWidth || qrCodeHeight != realQrCodeHeight) {
-            BufferedImage tmp = new BufferedImage(realQrCodeWidth, realQrCodeHeight, BufferedImage.TYPE_INT_RGB);
-            tmp.getGraphics()
-                    .drawImage(qrCode.getScaledInstance(realQrCodeWidth, realQrCodeHeight, Image.SCALE_SMOOTH), 0, 0,
-                            null);
+            BufferedImage tmp = Resampler.resize(qrCode, realQrCodeWidth, realQrCodeHeight,
+                    qrCodeConfig.getRenderQuality());
+            CanvasPool.release(qrCode);
             qrCode = tmp;
         }
 
@@ -184,17 +187,23 @@ public class QrCodeGenerateHelper {
             if (qrCodeConfig.getBgImgOptions().getBgImgStyle() == QrCodeOptions.BgImgStyle.FILL &&
                     qrCodeConfig.getLogoOptions() != null) {
                 // 此种模式，先绘制logo
-                qrCode = QrCodeRenderHelper.drawLogo(qrCode, qrCodeConfig.getLogoOptions());
+                qrCode = QrCodeRenderHelper.drawLogo(qrCode, qrCodeConfig.getLogoOptions(), qrCodeConfig.getRenderQuality());
                 logoAlreadyDraw = true;
             }
 
-            qrCode = QrCodeRenderHelper.drawBackground(qrCode, qrCodeConfig.getBgImgOptions());
+            BufferedImage bg = QrCodeRenderHelper.drawBackground(qrCode, qrCodeConfig.getBgImgOptions(),
+                    qrCodeConfig.getRenderQuality());
+            if (bg != qrCode) {
+                // 二维码已经绘制到背景图上
+                CanvasPool.release(qrCode);
+            }
+            qrCode = bg;
         }
 
 
         // 插入logo
         if (qrCodeConfig.getLogoOptions() != null && !logoAlreadyDraw) {
-            qrCode = QrCodeRenderHelper.drawLogo(qrCode, qrCodeConfig.getLogoOptions());
+            qrCode = QrCodeRenderHelper.drawLogo(qrCode, qrCodeConfig.getLogoOptions(), qrCodeConfig.getRenderQuality());
         }
 
         return qrCode;
@@ -203,6 +212,21 @@ public class QrCodeGenerateHelper {
 
     public static List<ImmutablePair<BufferedImage, Integer>> toGifImages(QrCodeOptions qrCodeConfig,
             BitMatrixEx bitMatrix) {
+        List<ImmutablePair<BufferedImage, Integer>> result = new ArrayList<>();
+        toGifImages(qrCodeConfig, bitMatrix, (frame, delay) -> result.add(ImmutablePair.of(frame, delay)));
+        return result;
+    }
+
+
+    /**
+     * 逐帧生成动态二维码，每画好一帧就交给consumer，不需要先生成所有帧
+     *
+     * @param qrCodeConfig
+     * @param bitMatrix
+     * @param consumer     接收生成的帧及其延时，帧的所有权交给consumer
+     */
+    public static void toGifImages(QrCodeOptions qrCodeConfig, BitMatrixEx bitMatrix,
+            BiConsumer<BufferedImage, Integer> consumer) {
         if (qrCodeConfig.getBgImgOptions() == null ||
                 qrCodeConfig.getBgImgOptions().getGifDecoder().getFrameCount() <= 0) {
             throw new IllegalArgumentException("animated background image should not be null!");
@@ -216,10 +240,9 @@ public class QrCodeGenerateHelper {
         int realQrCodeWidth = qrCodeConfig.getW();
         int realQrCodeHeight = qrCodeConfig.getH();
         if (qrCodeWidth != realQrCodeWidth || qrCodeHeight != realQrCodeHeight) {
-            BufferedImage tmp = new BufferedImage(realQrCodeWidth, realQrCodeHeight, BufferedImage.TYPE_INT_RGB);
-            tmp.getGraphics()
-                    .drawImage(qrCode.getScaledInstance(realQrCodeWidth, realQrCodeHeight, Image.SCALE_SMOOTH), 0, 0,
-                            null);
+            BufferedImage tmp = Resampler.resize(qrCode, realQrCodeWidth, realQrCodeHeight,
+                    qrCodeConfig.getRenderQuality());
+            CanvasPool.release(qrCode);
             qrCode = tmp;
         }
 
@@ -227,26 +250,17 @@ public class QrCodeGenerateHelper {
         if (qrCodeConfig.getBgImgOptions().getBgImgStyle() == QrCodeOptions.BgImgStyle.FILL &&
                 qrCodeConfig.getLogoOptions() != null) {
             // 此种模式，先绘制logo
-            qrCode = QrCodeRenderHelper.drawLogo(qrCode, qrCodeConfig.getLogoOptions());
+            qrCode = QrCodeRenderHelper.drawLogo(qrCode, qrCodeConfig.getLogoOptions(), qrCodeConfig.getRenderQuality());
             logoAlreadyDraw = true;
         }
 
 
-        // 绘制动态背景图
-        List<ImmutablePair<BufferedImage, Integer>> bgList =
-                QrCodeRenderHelper.drawGifBackground(qrCode, qrCodeConfig.getBgImgOptions());
-
-        // 插入logo
-
-        if (qrCodeConfig.getLogoOptions() != null && !logoAlreadyDraw) {
-            List<ImmutablePair<BufferedImage, Integer>> result = new ArrayList<>(bgList.size());
-            for (ImmutablePair<BufferedImage, Integer> pair : bgList) {
-                result.add(ImmutablePair.of(QrCodeRenderHelper.drawLogo(pair.getLeft(), qrCodeConfig.getLogoOptions()),
-                        pair.getRight()));
-            }
-            return result;
-        } else {
-            return bgList;
-        }
+        // 绘制动态背景图，并插入logo
+        final QrCodeOptions.LogoOptions logoOptions = logoAlreadyDraw ? null : qrCodeConfig.getLogoOptions();
+        final RenderQuality quality = qrCodeConfig.getRenderQuality();
+        QrCodeRenderHelper.drawGifBackground(qrCode, qrCodeConfig.getBgImgOptions(), quality, (frame, delay) ->
+                consumer.accept(logoOptions == null ? frame : QrCodeRenderHelper.drawLogo(frame, logoOptions, quality),
+                        delay));
+        CanvasPool.release(qrCode);
     }
 }
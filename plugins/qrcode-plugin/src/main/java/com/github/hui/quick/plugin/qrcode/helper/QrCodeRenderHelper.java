@@ -1,7 +1,10 @@
 package com.github.hui.quick.plugin.qrcode.helper;
 
+import com.github.hui.quick.plugin.base.CanvasPool;
 import com.github.hui.quick.plugin.base.GraphicUtil;
 import com.github.hui.quick.plugin.base.ImageOperateUtil;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.resample.Resampler;
 import com.github.hui.quick.plugin.qrcode.constants.QuickQrUtil;
 import com.github.hui.quick.plugin.qrcode.entity.DotSize;
 import com.github.hui.quick.plugin.qrcode.wrapper.BitMatrixEx;
@@ -15,6 +18,7 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * 二维码渲染辅助类，主要用于绘制背景，logo，定位点，二维码信息
@@ -32,6 +36,20 @@ public class QrCodeRenderHelper {
      * @return
      */
     public static BufferedImage drawLogo(BufferedImage qrImg, QrCodeOptions.LogoOptions logoOptions) {
+        return drawLogo(qrImg, logoOptions, RenderQuality.QUALITY);
+    }
+
+
+    /**
+     * 绘制logo图片
+     *
+     * @param qrImg
+     * @param logoOptions
+     * @param quality     logo缩放采用的渲染质量
+     * @return
+     */
+    public static BufferedImage drawLogo(BufferedImage qrImg, QrCodeOptions.LogoOptions logoOptions,
+            RenderQuality quality) {
         final int qrWidth = qrImg.getWidth();
         final int qrHeight = qrImg.getHeight();
 
@@ -77,7 +95,13 @@ public class QrCodeRenderHelper {
         if (logoOptions.getOpacity() != null) {
             qrImgGraphic.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, logoOptions.getOpacity()));
         }
-        qrImgGraphic.drawImage(logoImg, logoOffsetX, logoOffsetY, logoWidth, logoHeight, null);
+        BufferedImage scaledLogo = Resampler.resize(logoImg, logoWidth, logoHeight, quality);
+        if (scaledLogo != null) {
+            qrImgGraphic.drawImage(scaledLogo, logoOffsetX, logoOffsetY, null);
+            if (scaledLogo != logoImg) {
+                CanvasPool.release(scaledLogo);
+            }
+        }
         qrImgGraphic.dispose();
         logoImg.flush();
         return qrImg;
@@ -92,6 +116,20 @@ public class QrCodeRenderHelper {
      * @return
      */
     public static BufferedImage drawBackground(BufferedImage qrImg, QrCodeOptions.BgImgOptions bgImgOptions) {
+        return drawBackground(qrImg, bgImgOptions, RenderQuality.QUALITY);
+    }
+
+
+    /**
+     * 绘制背景图
+     *
+     * @param qrImg        二维码图
+     * @param bgImgOptions 背景图信息
+     * @param quality      背景图缩放采用的渲染质量
+     * @return
+     */
+    public static BufferedImage drawBackground(BufferedImage qrImg, QrCodeOptions.BgImgOptions bgImgOptions,
+            RenderQuality quality) {
         final int qrWidth = qrImg.getWidth();
         final int qrHeight = qrImg.getHeight();
 
@@ -103,8 +141,12 @@ public class QrCodeRenderHelper {
         // 背景图缩放
         BufferedImage bgImg = bgImgOptions.getBgImg();
         if (bgImg.getWidth() != bgW || bgImg.getHeight() != bgH) {
-            BufferedImage temp = new BufferedImage(bgW, bgH, BufferedImage.TYPE_INT_ARGB);
-            temp.getGraphics().drawImage(bgImg.getScaledInstance(bgW, bgH, Image.SCALE_SMOOTH), 0, 0, null);
+            BufferedImage temp = CanvasPool.lease(bgW, bgH, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage scaled = Resampler.resize(bgImg, bgW, bgH, quality);
+            Graphics2D g2d = temp.createGraphics();
+            g2d.drawImage(scaled, 0, 0, null);
+            g2d.dispose();
+            CanvasPool.release(scaled);
             bgImg = temp;
         }
 
@@ -139,6 +181,36 @@ public class QrCodeRenderHelper {
      */
     public static List<ImmutablePair<BufferedImage, Integer>> drawGifBackground(BufferedImage qrImg,
             QrCodeOptions.BgImgOptions bgImgOptions) {
+        List<ImmutablePair<BufferedImage, Integer>> result =
+                new ArrayList<>(bgImgOptions.getGifDecoder().getFrameCount());
+        drawGifBackground(qrImg, bgImgOptions, (frame, delay) -> result.add(ImmutablePair.of(frame, delay)));
+        return result;
+    }
+
+
+    /**
+     * 动态背景图逐帧绘制，每画好一帧就交给consumer，不需要先生成所有帧
+     *
+     * @param qrImg
+     * @param bgImgOptions
+     * @param consumer     接收绘制好的帧及其延时，帧的所有权交给consumer
+     */
+    public static void drawGifBackground(BufferedImage qrImg, QrCodeOptions.BgImgOptions bgImgOptions,
+            BiConsumer<BufferedImage, Integer> consumer) {
+        drawGifBackground(qrImg, bgImgOptions, RenderQuality.QUALITY, consumer);
+    }
+
+
+    /**
+     * 动态背景图逐帧绘制，每画好一帧就交给consumer，不需要先生成所有帧
+     *
+     * @param qrImg
+     * @param bgImgOptions
+     * @param quality      背景图各帧缩放采用的渲染质量
+     * @param consumer     接收绘制好的帧及其延时，帧的所有权交给consumer
+     */
+    public static void drawGifBackground(BufferedImage qrImg, QrCodeOptions.BgImgOptions bgImgOptions,
+            RenderQuality quality, BiConsumer<BufferedImage, Integer> consumer) {
         final int qrWidth = qrImg.getWidth();
         final int qrHeight = qrImg.getHeight();
 
@@ -151,16 +223,18 @@ public class QrCodeRenderHelper {
         int bgOffsetX = fillMode ? bgImgOptions.getStartX() : (bgW - qrWidth) >> 1;
         int bgOffsetY = fillMode ? bgImgOptions.getStartY() : (bgH - qrHeight) >> 1;
 
-        int gifImgLen = bgImgOptions.getGifDecoder().getFrameCount();
-        List<ImmutablePair<BufferedImage, Integer>> result = new ArrayList<>(gifImgLen);
         // 背景图缩放
         for (int index = 0, len = bgImgOptions.getGifDecoder().getFrameCount(); index < len; index++) {
             BufferedImage bgImg = bgImgOptions.getGifDecoder().getFrame(index);
             // fixme 当背景图为png时，最终透明的地方会是黑色，这里兼容处理成白色
-            BufferedImage temp = new BufferedImage(bgW, bgH, BufferedImage.TYPE_INT_RGB);
+            BufferedImage temp = CanvasPool.lease(bgW, bgH, BufferedImage.TYPE_INT_RGB);
             temp.getGraphics().setColor(Color.WHITE);
             temp.getGraphics().fillRect(0, 0, bgW, bgH);
-            temp.getGraphics().drawImage(bgImg.getScaledInstance(bgW, bgH, Image.SCALE_SMOOTH), 0, 0, null);
+            BufferedImage scaled = Resampler.resize(bgImg, bgW, bgH, quality);
+            temp.getGraphics().drawImage(scaled, 0, 0, null);
+            if (scaled != bgImg) {
+                CanvasPool.release(scaled);
+            }
             bgImg = temp;
 
             Graphics2D bgGraphic = bgImg.createGraphics();
@@ -179,9 +253,8 @@ public class QrCodeRenderHelper {
             bgGraphic.dispose();
             bgImg.flush();
 
-            result.add(ImmutablePair.of(bgImg, bgImgOptions.getGifDecoder().getDelay(index)));
+            consumer.accept(bgImg, bgImgOptions.getGifDecoder().getDelay(index));
         }
-        return result;
     }
 
 
@@ -196,7 +269,7 @@ public class QrCodeRenderHelper {
         int qrWidth = bitMatrix.getWidth();
         int qrHeight = bitMatrix.getHeight();
         int infoSize = bitMatrix.getMultiple();
-        BufferedImage qrImg = new BufferedImage(qrWidth, qrHeight, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage qrImg = CanvasPool.lease(qrWidth, qrHeight, BufferedImage.TYPE_INT_ARGB);
 
 
         // 绘制的背景色
@@ -221,7 +294,7 @@ public class QrCodeRenderHelper {
         int leftPadding = bitMatrix.getLeftPadding();
         int topPadding = bitMatrix.getTopPadding();
 
-        Graphics2D g2 = GraphicUtil.getG2d(qrImg);
+        Graphics2D g2 = GraphicUtil.getG2d(qrImg, qrCodeConfig.getRenderQuality());
         if (!qrCodeConfig.getDrawOptions().isDiaphaneityFill()) {
             // 当二维码中的透明区域，不填充时，如下设置，可以让图片中的透明度覆盖背景色
             g2.setComposite(AlphaComposite.Src);
@@ -2,8 +2,12 @@ package com.github.hui.quick.plugin.qrcode.wrapper;
 
 import com.github.hui.quick.plugin.base.*;
 import com.github.hui.quick.plugin.base.constants.MediaType;
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.encode.ImageEncoder;
+import com.github.hui.quick.plugin.base.gif.FrameBudget;
 import com.github.hui.quick.plugin.base.gif.GifDecoder;
 import com.github.hui.quick.plugin.base.gif.GifHelper;
+import com.github.hui.quick.plugin.base.gif.GifSink;
 import com.github.hui.quick.plugin.qrcode.constants.QuickQrUtil;
 import com.github.hui.quick.plugin.qrcode.helper.QrCodeGenerateHelper;
 import com.google.zxing.EncodeHintType;
@@ -12,7 +16,6 @@ import com.google.zxing.client.j2se.MatrixToImageConfig;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
@@ -20,7 +23,6 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.List;
 
 /**
  * Created by yihui on 2017/7/17.
@@ -30,13 +32,23 @@ public class QrCodeGenWrapper {
         return new Builder().setMsg(content);
     }
 
-    private static ByteArrayOutputStream asGif(QrCodeOptions qrCodeOptions) throws WriterException {
+    private static ByteArrayOutputStream asGif(QrCodeOptions qrCodeOptions) throws WriterException, IOException {
         try {
             BitMatrixEx bitMatrix = QrCodeGenerateHelper.encode(qrCodeOptions);
-            List<ImmutablePair<BufferedImage, Integer>> list =
-                    QrCodeGenerateHelper.toGifImages(qrCodeOptions, bitMatrix);
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            GifHelper.saveGif(list, outputStream);
+            // 每生成一帧就开始编码，动图的每一帧都是临时生成的背景图，交给编码器之后直接归还
+            try (GifSink sink = GifHelper.newSink(outputStream, false, qrCodeOptions.apngQrCode(),
+                    qrCodeOptions.getFrameBudget())) {
+                sink.setExpectedFrames(qrCodeOptions.getBgImgOptions().getGifDecoder().getFrameCount());
+                boolean[] ok = {true};
+                QrCodeGenerateHelper.toGifImages(qrCodeOptions, bitMatrix, (frame, delay) -> {
+                    ok[0] = sink.accept(frame, delay) && ok[0];
+                    CanvasPool.release(frame);
+                });
+                if (!sink.finish() || !ok[0]) {
+                    throw new IOException("encode gif qrcode error!");
+                }
+            }
             return outputStream;
         } finally {
             QuickQrUtil.clear();
@@ -62,10 +74,7 @@ public class QrCodeGenWrapper {
 
         // 普通二维码，直接输出图
         BufferedImage bufferedImage = asBufferedImage(qrCodeOptions);
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            ImageIO.write(bufferedImage, qrCodeOptions.getPicType(), outputStream);
-            return Base64Util.encode(outputStream);
-        }
+        return ImageEncoder.toBase64(bufferedImage, qrCodeOptions.encodeOptions());
     }
 
     private static boolean asFile(QrCodeOptions qrCodeOptions, String absFileName) throws WriterException, IOException {
@@ -85,9 +94,7 @@ public class QrCodeGenWrapper {
         }
 
         BufferedImage bufferedImage = asBufferedImage(qrCodeOptions);
-        if (!ImageIO.write(bufferedImage, qrCodeOptions.getPicType(), file)) {
-            throw new IOException("save QrCode image to: " + absFileName + " error!");
-        }
+        ImageEncoder.write(bufferedImage, qrCodeOptions.encodeOptions(), file);
 
         return true;
     }
@@ -134,11 +141,29 @@ public class QrCodeGenWrapper {
 
 
         /**
-         * output qrcode image type, default png
+         * output qrcode image type, default png; apng 表示动态二维码输出为apng
          */
         private String picType = "png";
 
 
+        /**
+         * output image quality for lossy type, such as jpg
+         */
+        private Float picQuality;
+
+
+        /**
+         * 动态二维码的帧预算，null 表示不限制
+         */
+        private FrameBudget frameBudget;
+
+
+        /**
+         * render quality, default QUALITY
+         */
+        private RenderQuality renderQuality = RenderQuality.QUALITY;
+
+
         private QrCodeOptions.BgImgOptions.BgImgOptionsBuilder bgImgOptions;
 
         private QrCodeOptions.LogoOptions.LogoOptionsBuilder logoOptions;
@@ -233,11 +258,48 @@ public class QrCodeGenWrapper {
             return this;
         }
 
+        /**
+         * 输出jpg等有损格式时的压缩质量 [0, 1]
+         *
+         * @param picQuality
+         * @return
+         */
+        public Builder setPicQuality(Float picQuality) {
+            this.picQuality = picQuality;
+            return this;
+        }
+
+        /**
+         * 动态二维码限制输出的帧数、大小或耗时，相同的连续帧会合并，超出预算时按比例抽帧
+         *
+         * @param frameBudget
+         * @return
+         */
+        public Builder setFrameBudget(FrameBudget frameBudget) {
+            this.frameBudget = frameBudget;
+            return this;
+        }
+
         public Builder setErrorCorrection(ErrorCorrectionLevel errorCorrection) {
             this.errorCorrection = errorCorrection;
             return this;
         }
 
+        public Builder setRenderQuality(String renderQuality) {
+            return setRenderQuality(RenderQuality.getQuality(renderQuality));
+        }
+
+        /**
+         * 渲染质量，生成缩略图、预览图时可以选择 FAST 模式
+         *
+         * @param renderQuality
+         * @return
+         */
+        public Builder setRenderQuality(RenderQuality renderQuality) {
+            this.renderQuality = renderQuality;
+            return this;
+        }
+
 
         /////////////// logo 相关配置 ///////////////
 
@@ -841,6 +903,11 @@ public class QrCodeGenWrapper {
 
             // 设置输出图片格式
             qrCodeConfig.setPicType(picType);
+            qrCodeConfig.setPicQuality(picQuality);
+            qrCodeConfig.setFrameBudget(frameBudget);
+
+            // 设置渲染质量
+            qrCodeConfig.setRenderQuality(renderQuality);
 
             // 设置精度参数
             Map<EncodeHintType, Object> hints = new HashMap<>(3);
@@ -868,9 +935,7 @@ public class QrCodeGenWrapper {
                 return QrCodeGenWrapper.asGif(options);
             } else {
                 BufferedImage img = QrCodeGenWrapper.asBufferedImage(options);
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                ImageIO.write(img, options.getPicType(), outputStream);
-                return outputStream;
+                return ImageEncoder.toStream(img, options.encodeOptions());
             }
         }
 
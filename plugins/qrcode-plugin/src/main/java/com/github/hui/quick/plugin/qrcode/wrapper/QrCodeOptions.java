@@ -1,5 +1,8 @@
 package com.github.hui.quick.plugin.qrcode.wrapper;
 
+import com.github.hui.quick.plugin.base.constants.RenderQuality;
+import com.github.hui.quick.plugin.base.encode.EncodeOptions;
+import com.github.hui.quick.plugin.base.gif.FrameBudget;
 import com.github.hui.quick.plugin.base.gif.GifDecoder;
 import com.github.hui.quick.plugin.qrcode.constants.QuickQrUtil;
 import com.github.hui.quick.plugin.qrcode.entity.DotSize;
@@ -72,6 +75,34 @@ public class QrCodeOptions {
     private String picType;
 
 
+    /**
+     * 有损压缩格式(jpg)的压缩质量 [0, 1]，为null时采用默认值
+     */
+    private Float picQuality;
+
+
+    /**
+     * 动态二维码的帧预算，null 表示不限制
+     */
+    private FrameBudget frameBudget;
+
+
+    /**
+     * 渲染质量，默认为 {@link RenderQuality#QUALITY}
+     */
+    private RenderQuality renderQuality;
+
+
+    /**
+     * 静态二维码的输出编码参数
+     *
+     * @return
+     */
+    public EncodeOptions encodeOptions() {
+        return EncodeOptions.of(picType, picQuality);
+    }
+
+
     /**
      * true 表示生成的是动图
      *
@@ -82,6 +113,16 @@ public class QrCodeOptions {
     }
 
 
+    /**
+     * true 表示动图输出为apng，否则输出gif
+     *
+     * @return
+     */
+    public boolean apngQrCode() {
+        return EncodeOptions.APNG.equalsIgnoreCase(picType);
+    }
+
+
     /**
      * logo 的配置信息
      */
@@ -627,7 +668,7 @@ public class QrCodeOptions {
             public void draw(Graphics2D g2d, int x, int y, int w, int h, BufferedImage img, String txt) {
                 Font oldFont = g2d.getFont();
                 if (oldFont.getSize() != w) {
-                    Font newFont = QuickQrUtil.font(oldFont.getName(), oldFont.getStyle(), w);
+                    Font newFont = QuickQrUtil.font(oldFont, w);
                     g2d.setFont(newFont);
                 }
                 g2d.drawString(txt, x, y + w);